@@ -25,15 +25,18 @@ package com.mayurrokade.chatapp;
 import android.app.Application;
 import android.arch.lifecycle.ProcessLifecycleOwner;
 
+import com.mayurrokade.chatapp.data.source.local.MediaCache;
+import com.mayurrokade.chatapp.sync.HistorySyncService;
 import com.mayurrokade.chatapp.util.AppLifeCycleObserver;
-import com.mayurrokade.chatapp.util.User;
-
-import java.util.UUID;
+import com.mayurrokade.chatapp.util.NetworkMonitor;
+import com.mayurrokade.chatapp.util.StartupTracer;
 
 public class BaseApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupTracer.mark(StartupTracer.APP_CREATED);
+        MediaCache.init(this);
 
         // Observer to detect if the app is in background or foreground.
         AppLifeCycleObserver lifeCycleObserver
@@ -43,5 +46,11 @@ public class BaseApplication extends Application {
         ProcessLifecycleOwner.get()
                 .getLifecycle()
                 .addObserver(lifeCycleObserver);
+
+        // Reconnects the socket when the device switches networks
+        new NetworkMonitor(getApplicationContext()).start();
+
+        // Keeps history fresh while the app is in the background
+        HistorySyncService.schedule(getApplicationContext());
     }
 }
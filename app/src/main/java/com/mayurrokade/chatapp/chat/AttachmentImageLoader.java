@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.chat;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.widget.ImageView;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.source.local.MediaCache;
+import com.mayurrokade.chatapp.util.schedulers.BaseSchedulerProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Maybe;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Binds attachment images to message rows.
+ *
+ * Bitmaps already in the {@link MediaCache} memory cache are set right
+ * away. Others are decoded on the decode scheduler, and each image is
+ * decoded only once even if several rows ask for it at the same time.
+ *
+ * All methods must be called on the main thread.
+ */
+public class AttachmentImageLoader {
+
+    // Matches the size of ivAttachment in the message rows
+    private static final int IMAGE_SIZE_DP = 200;
+
+    private final MediaCache mMediaCache;
+    private final BaseSchedulerProvider mSchedulerProvider;
+    private final int mImageSize;
+    private final Map<String, Maybe<Bitmap>> mInFlight = new HashMap<>();
+    private final CompositeDisposable mCompositeDisposable = new CompositeDisposable();
+
+    /**
+     * Use this constructor to create a new AttachmentImageLoader.
+     *
+     * @param mediaCache        {@link MediaCache}
+     * @param schedulerProvider {@link BaseSchedulerProvider}
+     * @param density           Display density, to size decoded bitmaps
+     */
+    public AttachmentImageLoader(@NonNull MediaCache mediaCache,
+                                 @NonNull BaseSchedulerProvider schedulerProvider,
+                                 float density) {
+        mMediaCache = mediaCache;
+        mSchedulerProvider = schedulerProvider;
+        mImageSize = (int) (IMAGE_SIZE_DP * density);
+    }
+
+    /**
+     * Show the attachment in the image view. Rows are recycled, so the
+     * image is only set if the view still shows the same attachment.
+     *
+     * @param imageView  ImageView of the row
+     * @param attachment {@link Attachment}
+     */
+    public void bind(@NonNull final ImageView imageView, @NonNull Attachment attachment) {
+        final String hash = attachment.getContentHash();
+        imageView.setTag(hash);
+
+        Bitmap cached = mMediaCache.getBitmap(hash);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        mCompositeDisposable.add(load(hash).subscribe(new Consumer<Bitmap>() {
+            @Override
+            public void accept(Bitmap bitmap) throws Exception {
+                if (hash.equals(imageView.getTag())) {
+                    imageView.setImageBitmap(bitmap);
+                }
+            }
+        }, new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                // Leave the row empty, it's retried on the next bind
+            }
+        }));
+    }
+
+    /**
+     * Cancel pending decodes.
+     */
+    public void clear() {
+        mCompositeDisposable.clear();
+        mInFlight.clear();
+    }
+
+    private Maybe<Bitmap> load(final String hash) {
+        Maybe<Bitmap> inFlight = mInFlight.get(hash);
+        if (inFlight != null) return inFlight;
+
+        inFlight = Maybe.fromCallable(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws Exception {
+                return mMediaCache.loadBitmap(hash, mImageSize, mImageSize);
+            }
+        })
+                .subscribeOn(mSchedulerProvider.decode())
+                .observeOn(mSchedulerProvider.ui())
+                .doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        mInFlight.remove(hash);
+                    }
+                })
+                .cache();
+
+        mInFlight.put(hash, inFlight);
+        return inFlight;
+    }
+}
@@ -24,7 +24,9 @@ package com.mayurrokade.chatapp.chat;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.content.ContextCompat;
@@ -39,6 +41,7 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -48,14 +51,22 @@ import android.widget.TextView;
 import com.mayurrokade.chatapp.R;
 import com.mayurrokade.chatapp.about.AboutActivity;
 import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.Reactions;
+import com.mayurrokade.chatapp.data.source.local.MediaCache;
 import com.mayurrokade.chatapp.util.Injection;
+import com.mayurrokade.chatapp.util.StartupTracer;
 import com.mayurrokade.chatapp.util.TextUtils;
 import com.mayurrokade.chatapp.util.User;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ChatActivity
         extends AppCompatActivity
@@ -64,22 +75,46 @@ public class ChatActivity
     private static final String TAG = ChatActivity.class.getSimpleName();
     private static final long TYPING_TIMER_LENGTH = 3000;
     private static final long ALERT_LENGTH = 2000;
+    private static final int REQUEST_PICK_IMAGE = 1;
     private RecyclerView rvChatMessages;
-    private RecyclerView.LayoutManager mLayoutManager;
+    private static final int LOAD_MORE_THRESHOLD = 5;
+    private LinearLayoutManager mLayoutManager;
     private ChatMessagesAdapter mChatMessagesAdapter;
+    private MessageTextCache mMessageTextCache;
+    private AttachmentImageLoader mAttachmentImageLoader;
     private EditText etSendMessage;
     private ImageView ivSendMessage;
     private LinearLayout llTyping;
-    private TextView tvTyping, tvAlert;
+    private TextView tvTyping, tvAlert, tvNewMessages;
     private ChatContract.Presenter mPresenter;
     private boolean mTyping = false;
     private Handler mTypingHandler = new Handler();
+    private final AtomicBoolean mTypingUpdatePending = new AtomicBoolean();
+    private volatile String mTypingUsername;
+    private String mShownTypingUsername;
     private int mAlerterHeight;
+    private boolean mPinnedToBottom = true;
+    private int mUnreadCount;
+    // Message the open thread started on, null when the chat is shown
+    private ChatMessage mThread;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTracer.mark(StartupTracer.ACTIVITY_CREATED);
         setContentView(R.layout.activity_chat);
+
+        // Views, caches and the adapter live as long as the activity,
+        // a presenter is created for them on every resume
+        findViews();
+        setupChatMessages();
+        setupScrolling();
+        setupSendButton();
+        setupTextWatcher();
+
+        if (!StartupTracer.isFirstFrameDrawn()) {
+            traceFirstFrame();
+        }
     }
 
     @Override
@@ -88,7 +123,29 @@ public class ChatActivity
 
         new ChatPresenter(this, this,
                 Injection.provideSchedulerProvider(),
-                Injection.providesRepository(this));
+                Injection.providesRepository(this),
+                Injection.provideTextAnalyzer(this));
+
+        // The presenter is new, carry the open thread over to it
+        if (mThread != null) {
+            openThread(mThread);
+        }
+
+        mPresenter.subscribe();
+
+        // Receipts that came while paused were kept by the repository.
+        // Watermarks only move forward, so applying them again is harmless.
+        for (Map.Entry<String, String> watermark : mPresenter.getReadWatermarks().entrySet()) {
+            setReadWatermark(watermark.getKey(), watermark.getValue());
+        }
+        mChatMessagesAdapter.onAllReactionsChanged();
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (!closeThread()) {
+            super.onBackPressed();
+        }
     }
 
     @Override
@@ -97,6 +154,18 @@ public class ChatActivity
         mPresenter.unsubscribe();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // A pending stop typing would keep the activity around
+        mTypingHandler.removeCallbacksAndMessages(null);
+
+        mMessageTextCache.clear();
+        mAttachmentImageLoader.clear();
+        ChatViewPool.release();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
@@ -113,6 +182,15 @@ public class ChatActivity
             case R.id.info:
                 showInfo();
                 break;
+            case R.id.send_image:
+                pickImage();
+                break;
+            case R.id.encryption:
+                askPassphrase();
+                break;
+            case android.R.id.home:
+                closeThread();
+                break;
             default:
                 break;
         }
@@ -121,16 +199,21 @@ public class ChatActivity
     }
 
     @Override
-    public void initView() {
-        // Init UI elements
-        rvChatMessages = findViewById(R.id.rvChatMessages);
-        etSendMessage = findViewById(R.id.etSendMessage);
-        ivSendMessage = findViewById(R.id.btnSendMessage);
-        tvTyping = findViewById(R.id.tvTyping);
-        llTyping = findViewById(R.id.llTyping);
-        tvAlert = findViewById(R.id.tvAlert);
-        tvAlert.setTranslationY(-100);
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode != REQUEST_PICK_IMAGE
+                || resultCode != RESULT_OK
+                || data == null
+                || data.getData() == null) {
+            return;
+        }
+
+        sendImage(data.getData());
+    }
 
+    @Override
+    public void initView() {
         getSupportActionBar().setTitle("Realtime MVP Chat");
 
         // Ask the user to set a username,
@@ -138,10 +221,17 @@ public class ChatActivity
         if (!User.isUsernameUpdated()) {
             askUsername();
         }
+    }
 
-        setupChatMessages();
-        setupSendButton();
-        setupTextWatcher();
+    private void findViews() {
+        rvChatMessages = findViewById(R.id.rvChatMessages);
+        etSendMessage = findViewById(R.id.etSendMessage);
+        ivSendMessage = findViewById(R.id.btnSendMessage);
+        tvTyping = findViewById(R.id.tvTyping);
+        llTyping = findViewById(R.id.llTyping);
+        tvAlert = findViewById(R.id.tvAlert);
+        tvNewMessages = findViewById(R.id.tvNewMessages);
+        tvAlert.setTranslationY(-100);
     }
 
     @Override
@@ -214,10 +304,87 @@ public class ChatActivity
     }
 
     private void setupChatMessages() {
-        mChatMessagesAdapter = new ChatMessagesAdapter(new ArrayList<ChatMessage>(), this);
+        mMessageTextCache = new MessageTextCache(Injection.provideSchedulerProvider(),
+                ContextCompat.getColor(this, R.color.colorAccent));
+        mAttachmentImageLoader = new AttachmentImageLoader(
+                MediaCache.getInstance(),
+                Injection.provideSchedulerProvider(),
+                getResources().getDisplayMetrics().density);
+        mChatMessagesAdapter = new ChatMessagesAdapter(this,
+                Injection.provideSchedulerProvider(), mMessageTextCache, mAttachmentImageLoader);
+        mChatMessagesAdapter.setOnMessagesInsertedListener(
+                new ChatMessagesAdapter.OnMessagesInsertedListener() {
+                    @Override
+                    public void onMessagesInserted(int position, int count) {
+                        ChatActivity.this.onMessagesInserted(position, count);
+                    }
+                });
+        mChatMessagesAdapter.setOnMessageLongClickListener(
+                new ChatMessagesAdapter.OnMessageLongClickListener() {
+                    @Override
+                    public void onMessageLongClick(ChatMessage chatMessage) {
+                        if (chatMessage.isDeleted()) return;
+
+                        if (chatMessage.getType() == ChatMessage.TYPE_MESSAGE_SENT
+                                || chatMessage.getParentId() == null) {
+                            pickMessageAction(chatMessage);
+                        } else {
+                            pickReaction(chatMessage);
+                        }
+                    }
+                });
+        mChatMessagesAdapter.setReactionsLookup(
+                new ChatMessagesAdapter.ReactionsLookup() {
+                    @Override
+                    public Reactions getReactions(String messageId) {
+                        return mPresenter.getReactions(messageId);
+                    }
+                });
+        mChatMessagesAdapter.setOnThreadClickListener(
+                new ChatMessagesAdapter.OnThreadClickListener() {
+                    @Override
+                    public void onThreadClick(ChatMessage chatMessage) {
+                        openThread(chatMessage);
+                    }
+                });
         mLayoutManager = new LinearLayoutManager(this);
+        rvChatMessages.setRecycledViewPool(ChatViewPool.acquire());
+
+        // The list is sized by its constraints, not by its rows, so
+        // inserting rows doesn't have to lay out the whole screen again
+        rvChatMessages.setHasFixedSize(true);
         rvChatMessages.setAdapter(mChatMessagesAdapter);
         rvChatMessages.setLayoutManager(mLayoutManager);
+
+        // The list isn't laid out yet, so size the pool to the screen height
+        ChatViewPool.prewarm(rvChatMessages, mChatMessagesAdapter,
+                getResources().getDisplayMetrics().heightPixels);
+    }
+
+    private void setupScrolling() {
+        rvChatMessages.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                mPinnedToBottom = !recyclerView.canScrollVertically(1);
+
+                if (mPinnedToBottom) {
+                    clearUnread();
+                    markLatestRead();
+                }
+
+                if (dy < 0 && mLayoutManager.findFirstVisibleItemPosition() <= LOAD_MORE_THRESHOLD) {
+                    mPresenter.loadMoreMessages();
+                }
+            }
+        });
+
+        tvNewMessages.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                scrollToBottom();
+                clearUnread();
+            }
+        });
     }
 
     private void setupSendButton() {
@@ -236,14 +403,121 @@ public class ChatActivity
             ChatMessage chatMessage = new ChatMessage(
                     User.getUsername(), message, ChatMessage.TYPE_MESSAGE_SENT);
             mPresenter.sendMessage(chatMessage);
-            addMessage(chatMessage);
             etSendMessage.setText("");
         }
     }
 
-    private void addMessage(ChatMessage chatMessage) {
-        mChatMessagesAdapter.addNewMessage(chatMessage);
+    private void pickImage() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("image/*");
+        startActivityForResult(intent, REQUEST_PICK_IMAGE);
+    }
+
+    private void sendImage(Uri uri) {
+        InputStream in;
+
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, e.getMessage());
+            showAlert("Cannot open image", true);
+            return;
+        }
+
+        ChatMessage chatMessage = new ChatMessage(
+                User.getUsername(), "", ChatMessage.TYPE_MESSAGE_SENT);
+        mPresenter.sendAttachment(chatMessage, in, getContentResolver().getType(uri));
+    }
+
+    private void onMessagesInserted(int position, int count) {
+        // Older messages loaded at the top keep the viewport where it is
+        if (position + count != mChatMessagesAdapter.getItemCount()) return;
+
+        traceFirstMessageRendered();
+
+        // The whole list was filled at once, a first load or a switch
+        // between the chat and a thread. None of it is new to the user.
+        if (count == mChatMessagesAdapter.getItemCount()) {
+            clearUnread();
+            scrollToBottom();
+            return;
+        }
+
+        boolean sent = false;
+        for (int i = position; i < position + count; i++) {
+            if (mChatMessagesAdapter.getItem(i).getType() == ChatMessage.TYPE_MESSAGE_SENT) {
+                sent = true;
+                break;
+            }
+        }
+
+        // Follow new messages only while the user is at the bottom,
+        // otherwise leave the viewport alone and count them as unread
+        if (mPinnedToBottom || sent) {
+            scrollToBottom();
+        } else {
+            mUnreadCount += count;
+            tvNewMessages.setText(getResources().getQuantityString(
+                    R.plurals.new_messages, mUnreadCount, mUnreadCount));
+            tvNewMessages.setVisibility(View.VISIBLE);
+        }
+    }
+
+    private void scrollToBottom() {
         rvChatMessages.scrollToPosition(mChatMessagesAdapter.getItemCount() - 1);
+        mPinnedToBottom = true;
+        markLatestRead();
+    }
+
+    /**
+     * The user is at the bottom, so they've seen every message. The
+     * presenter batches these into read receipts.
+     */
+    private void markLatestRead() {
+        int count = mChatMessagesAdapter.getItemCount();
+        if (count == 0) return;
+
+        mPresenter.markRead(mChatMessagesAdapter.getItem(count - 1).getId());
+    }
+
+    private void clearUnread() {
+        if (mUnreadCount == 0) return;
+
+        mUnreadCount = 0;
+        tvNewMessages.setVisibility(View.GONE);
+    }
+
+    /**
+     * Marks the first frame once the window has drawn it. The draw
+     * happens right after onPreDraw, so the marker is posted after it.
+     */
+    private void traceFirstFrame() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        decorView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                StartupTracer.onFirstFrame();
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    private void traceFirstMessageRendered() {
+        if (StartupTracer.getMark(StartupTracer.FIRST_MESSAGE_RENDERED) != -1) return;
+
+        rvChatMessages.post(new Runnable() {
+            @Override
+            public void run() {
+                StartupTracer.mark(StartupTracer.FIRST_MESSAGE_RENDERED);
+            }
+        });
     }
 
     private void askUsername() {
@@ -278,6 +552,156 @@ public class ChatActivity
         dialog.show();
     }
 
+    private void pickMessageAction(final ChatMessage chatMessage) {
+        // Replies can't start threads of their own, and only the
+        // sender can change a message
+        final List<Integer> actions = new ArrayList<>();
+        actions.add(R.string.react);
+        if (chatMessage.getParentId() == null) {
+            actions.add(R.string.reply);
+        }
+        if (chatMessage.getType() == ChatMessage.TYPE_MESSAGE_SENT) {
+            actions.add(R.string.edit);
+            actions.add(R.string.delete);
+        }
+
+        String[] labels = new String[actions.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = getString(actions.get(i));
+        }
+
+        new AlertDialog.Builder(this)
+                .setItems(labels, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        int action = actions.get(which);
+                        if (action == R.string.react) {
+                            pickReaction(chatMessage);
+                        } else if (action == R.string.reply) {
+                            openThread(chatMessage);
+                        } else if (action == R.string.edit) {
+                            editMessage(chatMessage);
+                        } else {
+                            String messageId = chatMessage.getId();
+                            mChatMessagesAdapter.deleteMessage(messageId);
+                            mPresenter.deleteMessage(messageId);
+                        }
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Show the replies to a message. The list is replaced and scrolled
+     * to the bottom once they're loaded.
+     */
+    private void openThread(ChatMessage chatMessage) {
+        mThread = chatMessage;
+        mPresenter.openThread(chatMessage.getId());
+        mPinnedToBottom = true;
+        clearUnread();
+
+        getSupportActionBar().setTitle(R.string.thread);
+        getSupportActionBar().setSubtitle(chatMessage.getMessage());
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+    }
+
+    /**
+     * Go back from a thread to the chat.
+     *
+     * @return false if no thread was open
+     */
+    private boolean closeThread() {
+        if (!mPresenter.closeThread()) return false;
+
+        mThread = null;
+        mPinnedToBottom = true;
+        clearUnread();
+
+        getSupportActionBar().setTitle("Realtime MVP Chat");
+        getSupportActionBar().setSubtitle(null);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(false);
+        return true;
+    }
+
+    private void editMessage(final ChatMessage chatMessage) {
+        final EditText etMessage = new EditText(this);
+        etMessage.setText(chatMessage.getMessage());
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.edit)
+                .setView(etMessage)
+                .setPositiveButton(R.string.save, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String message = etMessage.getText().toString();
+                        if (!TextUtils.isValidString(message)
+                                || message.equals(chatMessage.getMessage())) return;
+
+                        // A single message the user typed, cheap enough to analyze here
+                        ChatMessage edited = new ChatMessage(User.getUsername(), message,
+                                ChatMessage.TYPE_MESSAGE_SENT);
+                        Injection.provideTextAnalyzer(ChatActivity.this).analyze(edited);
+
+                        String messageId = chatMessage.getId();
+                        mChatMessagesAdapter.editMessage(messageId, edited);
+                        mPresenter.editMessage(messageId, message);
+                    }
+                })
+                .show();
+    }
+
+    private void pickReaction(final ChatMessage chatMessage) {
+        final String[] emojis = getResources().getStringArray(R.array.reactions);
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.react)
+                .setItems(emojis, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        // Add the reaction, or remove it if the user had already picked it
+                        String messageId = chatMessage.getId();
+                        Reactions reactions = mPresenter.getReactions(messageId);
+                        boolean added = reactions == null || !reactions.hasOwn(emojis[which]);
+                        mPresenter.react(messageId, emojis[which], added);
+                        mChatMessagesAdapter.onReactionsChanged(messageId);
+                    }
+                })
+                .show();
+    }
+
+    private void askPassphrase() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        View view = getLayoutInflater().inflate(
+                R.layout.dialog_set_passphrase, null);
+        final AlertDialog dialog = builder.setView(view).create();
+
+        Button btnSave = view.findViewById(R.id.btnSave);
+        Button btnTurnOff = view.findViewById(R.id.btnTurnOff);
+        final EditText etPassphrase = view.findViewById(R.id.etPassphrase);
+
+        btnSave.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                String passphrase = etPassphrase.getText().toString();
+                if (TextUtils.isValidString(passphrase)) {
+                    mPresenter.setEncryptionPassphrase(passphrase);
+                    dialog.dismiss();
+                }
+            }
+        });
+
+        btnTurnOff.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                mPresenter.setEncryptionPassphrase(null);
+                dialog.dismiss();
+            }
+        });
+
+        dialog.show();
+    }
+
     private void showInfo() {
         startActivity(new Intent(this, AboutActivity.class));
     }
@@ -330,24 +754,8 @@ public class ChatActivity
 
     @Override
     public void onNewMessage(final Object... args) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                JSONObject data = (JSONObject) args[0];
-                String username;
-                String message;
-                try {
-                    username = data.getString("username");
-                    message = data.getString("message");
-                    ChatMessage chatMessage = new ChatMessage(
-                            username, message, ChatMessage.TYPE_MESSAGE_RECEIVED);
-                    addMessage(chatMessage);
-                } catch (JSONException e) {
-                    Log.e(TAG, e.getMessage());
-                    return;
-                }
-            }
-        });
+        // Received messages are saved by the repository and
+        // show up through showMessages()
     }
 
     @Override
@@ -394,7 +802,6 @@ public class ChatActivity
         }
 
         addTyping(username);
-        Log.i(TAG, "onTyping: " + username);
     }
 
     @Override
@@ -410,11 +817,103 @@ public class ChatActivity
         removeTyping(username);
     }
 
+    @Override
+    public void onRead(Object... args) {
+        JSONObject data = (JSONObject) args[0];
+        final String username;
+        final String messageId;
+        try {
+            username = data.getString("username");
+            messageId = data.getString("messageId");
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+            return;
+        }
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                setReadWatermark(username, messageId);
+            }
+        });
+    }
+
+    private void setReadWatermark(String username, String messageId) {
+        if (username.equals(User.getUsername())) return;
+
+        mChatMessagesAdapter.setReadWatermark(username, messageId);
+    }
+
+    @Override
+    public void onReaction(Object... args) {
+        JSONObject data = (JSONObject) args[0];
+        String messageId;
+        try {
+            messageId = data.getString("messageId");
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+            return;
+        }
+
+        // The repository has counted it already, only the row is updated
+        mChatMessagesAdapter.onReactionsChanged(messageId);
+    }
+
+    @Override
+    public void onMessageEdited(Object... args) {
+        JSONObject data = (JSONObject) args[0];
+        final String messageId;
+        final ChatMessage edited;
+        try {
+            messageId = data.getString("id");
+            edited = new ChatMessage(data.optString("username"), data.getString("message"),
+                    ChatMessage.TYPE_MESSAGE_RECEIVED);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+            return;
+        }
+
+        // Still off the main thread, analyze the new text here
+        Injection.provideTextAnalyzer(this).analyze(edited);
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mChatMessagesAdapter.editMessage(messageId, edited);
+            }
+        });
+    }
+
+    @Override
+    public void onMessageDeleted(Object... args) {
+        JSONObject data = (JSONObject) args[0];
+        final String messageId;
+        try {
+            messageId = data.getString("id");
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+            return;
+        }
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mChatMessagesAdapter.deleteMessage(messageId);
+            }
+        });
+    }
+
     @Override
     public void onMessageDelivered(ChatMessage chatMessage) {
         // Update UI to show the message has been delivered
     }
 
+    @Override
+    public void showMessages(List<ChatMessage> chatMessages) {
+        StartupTracer.mark(StartupTracer.CACHED_MESSAGES_LOADED);
+        mChatMessagesAdapter.submitMessages(chatMessages);
+    }
+
     @Override
     public void updateUsername(String username) {
         User.setUsername(username);
@@ -430,23 +929,45 @@ public class ChatActivity
         }
     };
 
-    private void addTyping(final String username) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                tvTyping.setText(username + " is typing");
-                llTyping.setVisibility(View.VISIBLE);
-            }
-        });
+    /*
+     * Typing events arrive off the main thread, often several a second.
+     * They only replace the user shown as typing, and one runnable at a
+     * time is posted to show it, so busy rooms don't flood the main
+     * thread with runnables and strings.
+     */
+
+    private void addTyping(String username) {
+        mTypingUsername = username;
+        postTypingUpdate();
     }
 
     private void removeTyping(String username) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                tvTyping.setText("");
+        mTypingUsername = null;
+        postTypingUpdate();
+    }
+
+    private void postTypingUpdate() {
+        if (mTypingUpdatePending.compareAndSet(false, true)) {
+            runOnUiThread(mUpdateTyping);
+        }
+    }
+
+    private final Runnable mUpdateTyping = new Runnable() {
+        @Override
+        public void run() {
+            mTypingUpdatePending.set(false);
+            String username = mTypingUsername;
+
+            if (username == null) {
                 llTyping.setVisibility(View.GONE);
+                return;
             }
-        });
-    }
+
+            if (!username.equals(mShownTypingUsername)) {
+                tvTyping.setText(getString(R.string.is_typing, username));
+                mShownTypingUsername = username;
+            }
+            llTyping.setVisibility(View.VISIBLE);
+        }
+    };
 }
\ No newline at end of file
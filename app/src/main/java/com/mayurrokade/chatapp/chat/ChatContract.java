@@ -25,8 +25,13 @@ package com.mayurrokade.chatapp.chat;
 import com.mayurrokade.chatapp.BasePresenter;
 import com.mayurrokade.chatapp.BaseView;
 import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.Reactions;
 import com.mayurrokade.chatapp.eventservice.EventListener;
 
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
 /**
  * This is a contract between chat view and chat presenter.
  *
@@ -37,6 +42,8 @@ public interface ChatContract {
 
         void onMessageDelivered(ChatMessage chatMessage);
 
+        void showMessages(List<ChatMessage> chatMessages);
+
         void updateUsername(String username);
     }
 
@@ -44,10 +51,79 @@ public interface ChatContract {
 
         void sendMessage(ChatMessage chatMessage);
 
+        void sendAttachment(ChatMessage chatMessage, InputStream in, String mimeType);
+
+        void loadMoreMessages();
+
+        void setEncryptionPassphrase(String passphrase);
+
         void changeUsername(String username);
 
         void onTyping();
 
         void onStopTyping();
+
+        /**
+         * Call this when the user has seen the chat up to a message.
+         *
+         * @param messageId Id of the latest message on screen
+         */
+        void markRead(String messageId);
+
+        /**
+         * Get the latest message each user has read, kept while no
+         * screen was listening to read receipts.
+         *
+         * @return Username mapped to message id
+         */
+        Map<String, String> getReadWatermarks();
+
+        /**
+         * Call this when the user adds or removes a reaction.
+         *
+         * @param messageId Id of the message reacted to
+         * @param emoji     Reaction
+         * @param added     true if added, false if removed
+         */
+        void react(String messageId, String emoji, boolean added);
+
+        /**
+         * Get the reactions of a message, kept while no screen was
+         * listening to reactions.
+         *
+         * @param messageId Id of the message
+         * @return Reactions or null if there are none
+         */
+        Reactions getReactions(String messageId);
+
+        /**
+         * Call this when the user changes the text of a message they sent.
+         *
+         * @param messageId Id of the message
+         * @param message   New text
+         */
+        void editMessage(String messageId, String message);
+
+        /**
+         * Call this when the user deletes a message they sent.
+         *
+         * @param messageId Id of the message
+         */
+        void deleteMessage(String messageId);
+
+        /**
+         * Show the replies of a thread instead of the chat. Messages
+         * sent from now on are replies to it.
+         *
+         * @param parentId Id of the message the thread started on
+         */
+        void openThread(String parentId);
+
+        /**
+         * Go back from a thread to the chat.
+         *
+         * @return false if no thread was open
+         */
+        boolean closeThread();
     }
 }
@@ -23,107 +23,829 @@
 package com.mayurrokade.chatapp.chat;
 
 import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.support.v4.widget.TextViewCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.StyleSpan;
+import android.util.SparseArray;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.mayurrokade.chatapp.R;
+import com.mayurrokade.chatapp.data.Attachment;
 import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.Reactions;
+import com.mayurrokade.chatapp.util.schedulers.BaseSchedulerProvider;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import io.reactivex.Scheduler;
+
 /**
  * ChatMessages adapter.
  *
+ * Lists of messages are diffed in background, and only the rows
+ * that changed are inserted, removed or rebound. Read receipts only
+ * rebind the read state of the rows a watermark moved over.
+ *
+ * Reactions are kept by the repository and looked up when a row is
+ * bound. Reaction events are collected per message until the next frame,
+ * and then only the reaction strips of the messages that changed are
+ * rebound.
+ *
+ * Edits and deletes find the row by message id, and change only that
+ * row: an edit rebinds its content, a delete removes it. Deleted messages
+ * aren't shown, unless their thread has replies to lead to.
  */
 public class ChatMessagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-    private List<ChatMessage> mItems;
+    /**
+     * Listens to rows inserted into the list.
+     */
+    public interface OnMessagesInsertedListener {
+        void onMessagesInserted(int position, int count);
+    }
+
+    /**
+     * Listens to long clicks on rows.
+     */
+    public interface OnMessageLongClickListener {
+        void onMessageLongClick(ChatMessage chatMessage);
+    }
+
+    /**
+     * Listens to clicks on the summary of a thread.
+     */
+    public interface OnThreadClickListener {
+        void onThreadClick(ChatMessage chatMessage);
+    }
+
+    /**
+     * Looks up the reactions of a message when its row is bound.
+     */
+    public interface ReactionsLookup {
+        @Nullable
+        Reactions getReactions(String messageId);
+    }
+
+    private static final Object PAYLOAD_READ_STATE = new Object();
+    private static final Object PAYLOAD_REACTIONS = new Object();
+    private static final Object PAYLOAD_CONTENT = new Object();
+    private static final Object PAYLOAD_THREAD = new Object();
+
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ChatMessage>() {
+                @Override
+                public boolean areItemsTheSame(ChatMessage oldItem, ChatMessage newItem) {
+                    return oldItem.getId().equals(newItem.getId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(ChatMessage oldItem, ChatMessage newItem) {
+                    return isSameContent(oldItem, newItem)
+                            && oldItem.getReplyCount() == newItem.getReplyCount();
+                }
+
+                @Override
+                public Object getChangePayload(ChatMessage oldItem, ChatMessage newItem) {
+                    // A new reply only changes the summary of the thread
+                    if (isSameContent(oldItem, newItem)) return PAYLOAD_THREAD;
+
+                    // An edit or a delete only changes the text of the row
+                    boolean sameRow = oldItem.getType() == newItem.getType()
+                            && oldItem.getReplyCount() == newItem.getReplyCount()
+                            && TextUtils.equals(oldItem.getUsername(), newItem.getUsername())
+                            && (newItem.isDeleted()
+                            || TextUtils.equals(contentHash(oldItem), contentHash(newItem)));
+                    return sameRow ? PAYLOAD_CONTENT : null;
+                }
+
+                private boolean isSameContent(ChatMessage oldItem, ChatMessage newItem) {
+                    return oldItem.getType() == newItem.getType()
+                            && oldItem.isEdited() == newItem.isEdited()
+                            && oldItem.isDeleted() == newItem.isDeleted()
+                            && oldItem.isFiltered() == newItem.isFiltered()
+                            && Arrays.equals(oldItem.getHighlights(), newItem.getHighlights())
+                            && TextUtils.equals(oldItem.getUsername(), newItem.getUsername())
+                            && TextUtils.equals(oldItem.getMessage(), newItem.getMessage())
+                            && TextUtils.equals(contentHash(oldItem), contentHash(newItem));
+                }
+            };
+
+    private final Scheduler mDiffScheduler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ReadWatermarks mReadWatermarks;
+    private final MessageIndex mMessageIndex = new MessageIndex();
+    private final ReactionCoalescer mReactionCoalescer = new ReactionCoalescer();
+    // Rows shown, only changed on the main thread. A diff running in
+    // background reads it, so it's copied before it's changed meanwhile.
+    private List<ChatMessage> mMessages = new ArrayList<>();
+    // Only the diff of the latest list submitted is applied
+    private int mGeneration;
+    private int mRunningDiffs;
+    private OnMessagesInsertedListener mOnMessagesInsertedListener;
+    private OnMessageLongClickListener mOnMessageLongClickListener;
+    private OnThreadClickListener mOnThreadClickListener;
+    private ReactionsLookup mReactionsLookup;
     private Context mContext;
+    private MessageTextCache mTextCache;
+    private AttachmentImageLoader mImageLoader;
+    private RecyclerView mRecyclerView;
+    private SparseArray<ArrayDeque<View>> mPreinflatedViews = new SparseArray<>();
 
     /**
      * Constructor to create a new ChatMessagesAdapter
      *
-     * @param items
      * @param context
+     * @param schedulerProvider Lists are diffed on its computation scheduler
+     * @param textCache         Cache of message text measured ahead of time
+     * @param imageLoader       Loader for attachment images
      */
-    public ChatMessagesAdapter(List<ChatMessage> items, Context context) {
-        mItems = items;
+    public ChatMessagesAdapter(Context context,
+                               BaseSchedulerProvider schedulerProvider,
+                               MessageTextCache textCache,
+                               AttachmentImageLoader imageLoader) {
         mContext = context;
+        mDiffScheduler = schedulerProvider.computation();
+        mTextCache = textCache;
+        mImageLoader = imageLoader;
+        mReadWatermarks = new ReadWatermarks(new ReadWatermarks.Callback() {
+            @Override
+            public void onReadStateChanged(int position, int count) {
+                notifyItemRangeChanged(position, count, PAYLOAD_READ_STATE);
+            }
+        });
+    }
+
+    private final ListUpdateCallback mListUpdateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            onListChanged();
+            onMessagesInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            onListChanged();
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            onListChanged();
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            onListChanged();
+            notifyItemRangeChanged(position, count, payload);
+        }
+    };
+
+    private void onListChanged() {
+        mMessageIndex.setMessages(mMessages);
+        mReadWatermarks.setMessages(mMessages);
+
+        // Wait until every change of the diff has been dispatched,
+        // positions in between don't match the new list yet
+        if (mReadWatermarks.hasPending()) {
+            mMainHandler.removeCallbacks(mApplyPendingWatermarks);
+            mMainHandler.post(mApplyPendingWatermarks);
+        }
+    }
+
+    private final Runnable mApplyPendingWatermarks = new Runnable() {
+        @Override
+        public void run() {
+            mReadWatermarks.applyPending();
+        }
+    };
+
+    /**
+     * Use this method when a user has read the chat up to a message.
+     * Must be called on the main thread.
+     *
+     * @param username  User who read the chat
+     * @param messageId Latest message they've read
+     */
+    public void setReadWatermark(@NonNull String username, @NonNull String messageId) {
+        mReadWatermarks.update(username, messageId);
+    }
+
+    /**
+     * Use this method when the reactions of a message changed. May be
+     * called from any thread, the change shows on the next frame.
+     *
+     * @param messageId Id of the message reacted to
+     */
+    public void onReactionsChanged(@NonNull String messageId) {
+        if (mReactionCoalescer.add(messageId)) {
+            mMainHandler.post(mScheduleReactions);
+        }
+    }
+
+    /**
+     * Use this method when reactions may have changed while the adapter
+     * wasn't told, like while the screen was paused. Every reaction strip
+     * is rebound.
+     */
+    @MainThread
+    public void onAllReactionsChanged() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_REACTIONS);
+    }
+
+    private final Runnable mScheduleReactions = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mApplyReactions);
+        }
+    };
+
+    private final Choreographer.FrameCallback mApplyReactions = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            for (String messageId : mReactionCoalescer.drain()) {
+                int position = mMessageIndex.positionOf(messageId);
+                if (position != -1) notifyItemChanged(position, PAYLOAD_REACTIONS);
+            }
+        }
+    };
+
+    /**
+     * Use this method when a message has been edited. Its row is found
+     * by id and only its content is rebound.
+     *
+     * @param messageId Id of the message
+     * @param edited    Message with the new text, already run through
+     *                  {@link TextAnalyzer}
+     * @return false if the message isn't shown
+     */
+    @MainThread
+    public boolean editMessage(@NonNull String messageId, @NonNull ChatMessage edited) {
+        int position = mMessageIndex.positionOf(messageId);
+        if (position == -1) return false;
+
+        // Messages are shared with the lists they were loaded in,
+        // so the row gets a changed copy
+        ChatMessage chatMessage = mMessages.get(position);
+        if (chatMessage.isDeleted()) return false;
+
+        chatMessage = chatMessage.copy();
+        chatMessage.setMessage(edited.getMessage());
+        chatMessage.setHighlights(edited.getHighlights());
+        chatMessage.setFiltered(edited.isFiltered());
+        chatMessage.setEdited(true);
+        mTextCache.precompute(chatMessage, getRowWidth());
+        getMutableMessages().set(position, chatMessage);
+        notifyItemChanged(position, PAYLOAD_CONTENT);
+        return true;
+    }
+
+    /**
+     * Use this method when a message has been deleted. Its row is
+     * removed, or kept as the placeholder of a deleted message while its
+     * thread has replies.
+     *
+     * @param messageId Id of the message
+     * @return false if the message isn't shown
+     */
+    @MainThread
+    public boolean deleteMessage(@NonNull String messageId) {
+        int position = mMessageIndex.positionOf(messageId);
+        if (position == -1) return false;
+
+        ChatMessage chatMessage = mMessages.get(position).copy();
+        chatMessage.delete();
+
+        if (isShown(chatMessage)) {
+            getMutableMessages().set(position, chatMessage);
+            notifyItemChanged(position, PAYLOAD_CONTENT);
+            return true;
+        }
+
+        getMutableMessages().remove(position);
+        onListChanged();
+        notifyItemRemoved(position);
+        return true;
+    }
+
+    private static boolean isShown(ChatMessage chatMessage) {
+        return !chatMessage.isDeleted() || chatMessage.getReplyCount() > 0;
+    }
+
+    private List<ChatMessage> getMutableMessages() {
+        if (mRunningDiffs > 0) {
+            mMessages = new ArrayList<>(mMessages);
+            onListChanged();
+        }
+
+        return mMessages;
+    }
+
+    public void setOnMessagesInsertedListener(OnMessagesInsertedListener listener) {
+        mOnMessagesInsertedListener = listener;
+    }
+
+    public void setOnMessageLongClickListener(OnMessageLongClickListener listener) {
+        mOnMessageLongClickListener = listener;
+    }
+
+    public void setOnThreadClickListener(OnThreadClickListener listener) {
+        mOnThreadClickListener = listener;
+    }
+
+    public void setReactionsLookup(ReactionsLookup lookup) {
+        mReactionsLookup = lookup;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mRecyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        mRecyclerView = null;
     }
 
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         RecyclerView.ViewHolder viewHolder;
-        View view;
+        View view = pollPreinflatedView(viewType);
 
-        if (viewType == ChatMessage.TYPE_MESSAGE_RECEIVED) {
+        if (view == null) {
             view = LayoutInflater.from(mContext)
-                    .inflate(R.layout.item_message_received, parent, false);
+                    .inflate(getLayoutRes(viewType), parent, false);
+        }
+
+        if (viewType == ChatMessage.TYPE_MESSAGE_RECEIVED) {
             viewHolder = new ReceivedMessageViewHolder(view);
         } else {
-            view = LayoutInflater.from(mContext)
-                    .inflate(R.layout.item_message_sent, parent, false);
             viewHolder = new SentMessageViewHolder(view);
         }
 
+        RowClickListener rowClickListener = new RowClickListener(viewHolder);
+        view.setOnLongClickListener(rowClickListener);
+        view.findViewById(R.id.tvReplies).setOnClickListener(rowClickListener);
+
+        // Text metrics have to match the TextView the precomputed
+        // text is set on, so take them from the first row of each type
+        if (!mTextCache.hasParams(viewType)) {
+            TextView tvMessage = view.findViewById(R.id.tvMessage);
+            mTextCache.setParams(viewType, TextViewCompat.getTextMetricsParams(tvMessage));
+        }
+
         return viewHolder;
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !onlyPartial(payloads)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        if (payloads.contains(PAYLOAD_CONTENT)) {
+            bindContent(holder, getItem(position));
+        }
+
+        if (payloads.contains(PAYLOAD_READ_STATE) && holder instanceof SentMessageViewHolder) {
+            bindReadState(((SentMessageViewHolder) holder).tvReadState, position);
+        }
+
+        if (payloads.contains(PAYLOAD_REACTIONS) || payloads.contains(PAYLOAD_CONTENT)) {
+            TextView tvReactions = holder instanceof SentMessageViewHolder
+                    ? ((SentMessageViewHolder) holder).tvReactions
+                    : ((ReceivedMessageViewHolder) holder).tvReactions;
+            bindReactions(tvReactions, getItem(position));
+        }
+
+        if (payloads.contains(PAYLOAD_THREAD)) {
+            TextView tvReplies = holder instanceof SentMessageViewHolder
+                    ? ((SentMessageViewHolder) holder).tvReplies
+                    : ((ReceivedMessageViewHolder) holder).tvReplies;
+            bindReplies(tvReplies, getItem(position));
+        }
+    }
+
+    private static boolean onlyPartial(List<Object> payloads) {
+        for (int i = 0; i < payloads.size(); i++) {
+            Object payload = payloads.get(i);
+            if (payload != PAYLOAD_READ_STATE
+                    && payload != PAYLOAD_REACTIONS
+                    && payload != PAYLOAD_CONTENT
+                    && payload != PAYLOAD_THREAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        ChatMessage chatMessage = mItems.get(position);
+        ChatMessage chatMessage = getItem(position);
+        bindContent(holder, chatMessage);
 
         if (chatMessage.getType() == ChatMessage.TYPE_MESSAGE_RECEIVED) {
-            ((ReceivedMessageViewHolder) holder).tvUsername.setText(chatMessage.getUsername());
-            ((ReceivedMessageViewHolder) holder).tvMessage.setText(chatMessage.getMessage());
+            bindReactions(((ReceivedMessageViewHolder) holder).tvReactions, chatMessage);
+            bindReplies(((ReceivedMessageViewHolder) holder).tvReplies, chatMessage);
         } else {
-            ((SentMessageViewHolder) holder).tvUsername.setText(chatMessage.getUsername());
-            ((SentMessageViewHolder) holder).tvMessage.setText(chatMessage.getMessage());
+            bindReactions(((SentMessageViewHolder) holder).tvReactions, chatMessage);
+            bindReplies(((SentMessageViewHolder) holder).tvReplies, chatMessage);
+            bindReadState(((SentMessageViewHolder) holder).tvReadState, position);
         }
     }
 
+    /**
+     * Bind what the sender can change: the text, the attachment and
+     * whether it was edited.
+     */
+    private void bindContent(RecyclerView.ViewHolder holder, ChatMessage chatMessage) {
+        TextView tvUsername, tvMessage;
+        ImageView ivAttachment;
+
+        if (holder instanceof ReceivedMessageViewHolder) {
+            tvUsername = ((ReceivedMessageViewHolder) holder).tvUsername;
+            tvMessage = ((ReceivedMessageViewHolder) holder).tvMessage;
+            ivAttachment = ((ReceivedMessageViewHolder) holder).ivAttachment;
+        } else {
+            tvUsername = ((SentMessageViewHolder) holder).tvUsername;
+            tvMessage = ((SentMessageViewHolder) holder).tvMessage;
+            ivAttachment = ((SentMessageViewHolder) holder).ivAttachment;
+        }
+
+        tvUsername.setText(chatMessage.isEdited()
+                ? mContext.getString(R.string.username_edited, chatMessage.getUsername())
+                : chatMessage.getUsername());
+        bindMessageText(tvMessage, chatMessage);
+        bindAttachment(ivAttachment, chatMessage);
+    }
+
+    /**
+     * Show each emoji with its count, the user's own ones in bold.
+     */
+    private void bindReactions(TextView tvReactions, ChatMessage chatMessage) {
+        Reactions reactions = chatMessage.isDeleted() || mReactionsLookup == null
+                ? null
+                : mReactionsLookup.getReactions(chatMessage.getId());
+
+        if (reactions == null || reactions.isEmpty()) {
+            tvReactions.setText(null);
+            tvReactions.setVisibility(View.GONE);
+            return;
+        }
+
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        for (int i = 0; i < reactions.size(); i++) {
+            if (i > 0) text.append("  ");
+
+            int start = text.length();
+            text.append(reactions.getEmoji(i))
+                    .append(' ')
+                    .append(String.valueOf(reactions.getCount(i)));
+
+            if (reactions.isOwn(i)) {
+                text.setSpan(new StyleSpan(Typeface.BOLD), start, text.length(),
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+
+        tvReactions.setText(text);
+        tvReactions.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Collapse a thread into the number of replies to it.
+     */
+    private void bindReplies(TextView tvReplies, ChatMessage chatMessage) {
+        int replyCount = chatMessage.getReplyCount();
+
+        if (replyCount == 0) {
+            tvReplies.setVisibility(View.GONE);
+            return;
+        }
+
+        tvReplies.setText(mContext.getResources()
+                .getQuantityString(R.plurals.replies, replyCount, replyCount));
+        tvReplies.setVisibility(View.VISIBLE);
+    }
+
+    private void bindReadState(TextView tvReadState, int position) {
+        int readCount = mReadWatermarks.getReadCount(position);
+
+        if (readCount == 0) {
+            tvReadState.setVisibility(View.GONE);
+            return;
+        }
+
+        tvReadState.setText(mContext.getResources()
+                .getQuantityString(R.plurals.read_by, readCount, readCount));
+        tvReadState.setVisibility(View.VISIBLE);
+    }
+
+    private void bindAttachment(ImageView ivAttachment, ChatMessage chatMessage) {
+        if (chatMessage.getAttachment() == null || chatMessage.isFiltered()) {
+            ivAttachment.setTag(null);
+            ivAttachment.setImageDrawable(null);
+            ivAttachment.setVisibility(View.GONE);
+            return;
+        }
+
+        ivAttachment.setVisibility(View.VISIBLE);
+        mImageLoader.bind(ivAttachment, chatMessage.getAttachment());
+    }
+
+    /**
+     * Set the precomputed message text if it's ready, otherwise fall back
+     * to setText and measure the text in background for the next bind.
+     */
+    private void bindMessageText(TextView tvMessage, ChatMessage chatMessage) {
+        if (chatMessage.isDeleted()) {
+            tvMessage.setText(R.string.message_deleted);
+            tvMessage.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        if (chatMessage.isFiltered()) {
+            tvMessage.setText(R.string.message_filtered);
+            tvMessage.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        // Image messages may come without text
+        tvMessage.setVisibility(TextUtils.isEmpty(chatMessage.getMessage())
+                ? View.GONE : View.VISIBLE);
+
+        int width = getRowWidth();
+        PrecomputedTextCompat precomputed = mTextCache.get(chatMessage, width);
+
+        if (precomputed != null) {
+            TextViewCompat.setPrecomputedText(tvMessage, precomputed);
+        } else {
+            tvMessage.setText(mTextCache.getText(chatMessage));
+            mTextCache.precompute(chatMessage, width);
+        }
+    }
+
+    private int getRowWidth() {
+        return mRecyclerView != null ? mRecyclerView.getWidth() : 0;
+    }
+
     @Override
     public int getItemCount() {
-        return mItems.size();
+        return mMessages.size();
     }
 
     @Override
     public int getItemViewType(int position) {
-        return mItems.get(position).getType();
+        return getItem(position).getType();
+    }
+
+    public ChatMessage getItem(int position) {
+        return mMessages.get(position);
+    }
+
+    /**
+     * Use this method to show a new list of chat messages. The list is
+     * compared with the current one in background, and only the changes
+     * are applied. Deleted messages without replies are left out.
+     *
+     * @param chatMessages List that mustn't be modified afterwards
+     */
+    @MainThread
+    public void submitMessages(@NonNull final List<ChatMessage> chatMessages) {
+        final int generation = ++mGeneration;
+        final List<ChatMessage> oldMessages = mMessages;
+        mRunningDiffs++;
+
+        mDiffScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                final List<ChatMessage> messages = new ArrayList<>(chatMessages.size());
+                for (int i = 0; i < chatMessages.size(); i++) {
+                    ChatMessage chatMessage = chatMessages.get(i);
+                    if (isShown(chatMessage)) messages.add(chatMessage);
+                }
+
+                final DiffUtil.DiffResult result =
+                        DiffUtil.calculateDiff(new MessagesDiff(oldMessages, messages));
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mRunningDiffs--;
+                        if (generation != mGeneration) return;
+
+                        // A row was edited or removed during the diff
+                        if (oldMessages != mMessages) {
+                            submitMessages(chatMessages);
+                            return;
+                        }
+
+                        mMessages = messages;
+                        result.dispatchUpdatesTo(mListUpdateCallback);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Compares two lists of rows with {@link #DIFF_CALLBACK}.
+     */
+    private static final class MessagesDiff extends DiffUtil.Callback {
+        private final List<ChatMessage> mOldMessages;
+        private final List<ChatMessage> mNewMessages;
+
+        MessagesDiff(List<ChatMessage> oldMessages, List<ChatMessage> newMessages) {
+            mOldMessages = oldMessages;
+            mNewMessages = newMessages;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldMessages.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewMessages.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return DIFF_CALLBACK.areItemsTheSame(
+                    mOldMessages.get(oldPosition), mNewMessages.get(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return DIFF_CALLBACK.areContentsTheSame(
+                    mOldMessages.get(oldPosition), mNewMessages.get(newPosition));
+        }
+
+        @Override
+        public Object getChangePayload(int oldPosition, int newPosition) {
+            return DIFF_CALLBACK.getChangePayload(
+                    mOldMessages.get(oldPosition), mNewMessages.get(newPosition));
+        }
+    }
+
+    private void onMessagesInserted(int position, int count) {
+        // Start measuring text of the new rows before they're bound
+        int width = getRowWidth();
+        for (int i = position; i < position + count; i++) {
+            mTextCache.precompute(getItem(i), width);
+        }
+
+        notifyItemRangeInserted(position, count);
+
+        if (mOnMessagesInsertedListener != null) {
+            mOnMessagesInsertedListener.onMessagesInserted(position, count);
+        }
+    }
+
+    private static String contentHash(ChatMessage chatMessage) {
+        Attachment attachment = chatMessage.getAttachment();
+        return attachment != null ? attachment.getContentHash() : null;
+    }
+
+    /**
+     * Use this method to hand over a row inflated ahead of time. The next
+     * {@link #onCreateViewHolder(ViewGroup, int)} for the view type uses it
+     * instead of inflating.
+     *
+     * @param viewType {@link ChatMessage#getType()}
+     * @param view     Row inflated from {@link #getLayoutRes(int)}
+     */
+    public void offerPreinflatedView(int viewType, @NonNull View view) {
+        ArrayDeque<View> views = mPreinflatedViews.get(viewType);
+
+        if (views == null) {
+            views = new ArrayDeque<>();
+            mPreinflatedViews.put(viewType, views);
+        }
+
+        views.add(view);
+    }
+
+    private View pollPreinflatedView(int viewType) {
+        ArrayDeque<View> views = mPreinflatedViews.get(viewType);
+        return views != null ? views.poll() : null;
     }
 
     /**
-     * Use this method to add new chat message to to the RecyclerView.
+     * Returns the row layout used for a view type.
      *
-     * @param chatMessage
+     * @param viewType {@link ChatMessage#getType()}
+     * @return layout resource
      */
-    public void addNewMessage(@NonNull ChatMessage chatMessage) {
-        mItems.add(chatMessage);
-        notifyItemInserted(mItems.size() - 1);
+    @LayoutRes
+    public static int getLayoutRes(int viewType) {
+        if (viewType == ChatMessage.TYPE_MESSAGE_RECEIVED) {
+            return R.layout.item_message_received;
+        } else {
+            return R.layout.item_message_sent;
+        }
+    }
+
+    /**
+     * Handles clicks on a row. Rows are pooled and may be shown by
+     * another screen's adapter later, so the adapter is looked up through
+     * the RecyclerView showing the row on every click, never kept.
+     */
+    private static final class RowClickListener
+            implements View.OnLongClickListener, View.OnClickListener {
+        private final RecyclerView.ViewHolder mViewHolder;
+
+        RowClickListener(RecyclerView.ViewHolder viewHolder) {
+            mViewHolder = viewHolder;
+        }
+
+        @Override
+        public boolean onLongClick(View view) {
+            ChatMessagesAdapter adapter = getAdapter();
+            int position = mViewHolder.getAdapterPosition();
+            if (adapter == null
+                    || position == RecyclerView.NO_POSITION
+                    || adapter.mOnMessageLongClickListener == null) return false;
+
+            adapter.mOnMessageLongClickListener.onMessageLongClick(adapter.getItem(position));
+            return true;
+        }
+
+        @Override
+        public void onClick(View view) {
+            ChatMessagesAdapter adapter = getAdapter();
+            int position = mViewHolder.getAdapterPosition();
+            if (adapter == null
+                    || position == RecyclerView.NO_POSITION
+                    || adapter.mOnThreadClickListener == null) return;
+
+            adapter.mOnThreadClickListener.onThreadClick(adapter.getItem(position));
+        }
+
+        @Nullable
+        private ChatMessagesAdapter getAdapter() {
+            ViewParent parent = mViewHolder.itemView.getParent();
+            if (!(parent instanceof RecyclerView)) return null;
+
+            RecyclerView.Adapter adapter = ((RecyclerView) parent).getAdapter();
+            return adapter instanceof ChatMessagesAdapter ? (ChatMessagesAdapter) adapter : null;
+        }
     }
 
     static class ReceivedMessageViewHolder extends RecyclerView.ViewHolder {
-        TextView tvUsername, tvMessage;
+        TextView tvUsername, tvMessage, tvReactions, tvReplies;
+        ImageView ivAttachment;
 
         public ReceivedMessageViewHolder(View itemView) {
             super(itemView);
             tvUsername = itemView.findViewById(R.id.tvUsername);
             tvMessage = itemView.findViewById(R.id.tvMessage);
+            tvReactions = itemView.findViewById(R.id.tvReactions);
+            tvReplies = itemView.findViewById(R.id.tvReplies);
+            ivAttachment = itemView.findViewById(R.id.ivAttachment);
         }
     }
 
     static class SentMessageViewHolder extends RecyclerView.ViewHolder {
-        TextView tvUsername, tvMessage;
+        TextView tvUsername, tvMessage, tvReactions, tvReplies, tvReadState;
+        ImageView ivAttachment;
 
         public SentMessageViewHolder(View itemView) {
             super(itemView);
             tvUsername = itemView.findViewById(R.id.tvUsername);
             tvMessage = itemView.findViewById(R.id.tvMessage);
+            tvReactions = itemView.findViewById(R.id.tvReactions);
+            tvReplies = itemView.findViewById(R.id.tvReplies);
+            tvReadState = itemView.findViewById(R.id.tvReadState);
+            ivAttachment = itemView.findViewById(R.id.ivAttachment);
         }
     }
 }
@@ -24,16 +24,31 @@ package com.mayurrokade.chatapp.chat;
 
 import android.support.annotation.NonNull;
 
+import com.mayurrokade.chatapp.data.Attachment;
 import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.Reactions;
 import com.mayurrokade.chatapp.data.source.Repository;
 import com.mayurrokade.chatapp.eventservice.EventListener;
 import com.mayurrokade.chatapp.util.schedulers.BaseSchedulerProvider;
 
+import org.reactivestreams.Publisher;
+
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.PublishProcessor;
 
 /**
  * Listens to user actions and sends data to remote data source.
@@ -43,6 +58,12 @@ import io.reactivex.functions.Consumer;
  */
 public class ChatPresenter implements ChatContract.Presenter {
 
+    private static final int PAGE_SIZE = 50;
+
+    // Read receipts only carry the latest message read, so at most
+    // one is sent per interval however fast messages are read
+    private static final long READ_RECEIPT_INTERVAL_SECONDS = 2;
+
     @NonNull
     private final BaseSchedulerProvider mSchedulerProvider;
 
@@ -58,6 +79,23 @@ public class ChatPresenter implements ChatContract.Presenter {
     @NonNull
     private final EventListener mViewEventListener;
 
+    @NonNull
+    private final TextAnalyzer mTextAnalyzer;
+
+    // Number of messages shown, grows a page at a time as the user scrolls up
+    @NonNull
+    private final BehaviorProcessor<Integer> mLimit = BehaviorProcessor.createDefault(PAGE_SIZE);
+
+    // Ids of messages read, on the main thread
+    @NonNull
+    private final PublishProcessor<String> mReadMessages = PublishProcessor.create();
+
+    // Id of the thread shown, or null for the chat. Only changed on the
+    // main thread, right before the limit, so each change is one query.
+    private String mThread;
+
+    private boolean mHasMoreMessages;
+
     /**
      * Use this constructor to create a new ChatPresenter.
      *
@@ -65,21 +103,18 @@ public class ChatPresenter implements ChatContract.Presenter {
      * @param eventListener     {@link EventListener} listens to server events.
      * @param schedulerProvider {@link BaseSchedulerProvider}
      * @param repository        {@link Repository}
+     * @param textAnalyzer      {@link TextAnalyzer} run on messages before they're shown
      */
     public ChatPresenter(@NonNull ChatContract.View view,
                          @NonNull EventListener eventListener,
                          @NonNull BaseSchedulerProvider schedulerProvider,
-                         @NonNull Repository repository) {
+                         @NonNull Repository repository,
+                         @NonNull TextAnalyzer textAnalyzer) {
         mView = view;
         mViewEventListener = eventListener;
         mSchedulerProvider = schedulerProvider;
         mRepository = repository;
-
-        // Setting the view's eventListener in the repository so that
-        // when server sends events to repository, it passes the
-        // events to the view
-        mRepository.setEventListener(this);
-
+        mTextAnalyzer = textAnalyzer;
         mCompositeDisposable = new CompositeDisposable();
 
         mView.setPresenter(this);
@@ -88,7 +123,13 @@ public class ChatPresenter implements ChatContract.Presenter {
 
     @Override
     public void subscribe() {
-
+        // Setting the view's eventListener in the repository so that
+        // when server sends events to repository, it passes the
+        // events to the view. It's removed on unsubscribe, the
+        // repository must not keep the view alive.
+        mCompositeDisposable.add(mRepository.setEventListener(this));
+        loadMessages();
+        sendReadReceipts();
     }
 
     @Override
@@ -98,9 +139,19 @@ public class ChatPresenter implements ChatContract.Presenter {
 
     @Override
     public void sendMessage(ChatMessage chatMessage) {
+        if (mThread != null && chatMessage.getParentId() == null) {
+            chatMessage.setParentId(mThread);
+        }
+
+        // Attachment uploads block until the last chunk is acked,
+        // keep them off the event loop so other events aren't held up
+        Scheduler scheduler = chatMessage.getAttachment() != null
+                ? mSchedulerProvider.io()
+                : mSchedulerProvider.eventLoop();
+
         Disposable disposable =
                 mRepository.sendMessage(chatMessage)
-                        .subscribeOn(mSchedulerProvider.io())
+                        .subscribeOn(scheduler)
                         .observeOn(mSchedulerProvider.ui())
                         .subscribe(new Consumer<ChatMessage>() {
                             @Override
@@ -117,12 +168,208 @@ public class ChatPresenter implements ChatContract.Presenter {
         mCompositeDisposable.add(disposable);
     }
 
+    /**
+     * Save the attachment locally and stream it to the server.
+     * The message shows up once it's saved, like any other message.
+     *
+     * @param chatMessage {@link ChatMessage} the attachment is sent with
+     * @param in          Stream of the media
+     * @param mimeType    Mime type of the media
+     */
+    @Override
+    public void sendAttachment(final ChatMessage chatMessage, InputStream in, String mimeType) {
+        Disposable disposable =
+                mRepository.saveAttachment(in, mimeType)
+                        .subscribeOn(mSchedulerProvider.io())
+                        .observeOn(mSchedulerProvider.ui())
+                        .subscribe(new Consumer<Attachment>() {
+                            @Override
+                            public void accept(Attachment attachment) throws Exception {
+                                chatMessage.setAttachment(attachment);
+                                sendMessage(chatMessage);
+                            }
+                        }, new Consumer<Throwable>() {
+                            @Override
+                            public void accept(Throwable throwable) throws Exception {
+                                mView.showAlert("Sending image failed", true);
+                            }
+                        });
+
+        mCompositeDisposable.add(disposable);
+    }
+
+    /**
+     * Load one more page of older messages, if there are any.
+     */
+    @Override
+    public void loadMoreMessages() {
+        if (!mHasMoreMessages) return;
+
+        mHasMoreMessages = false;
+        mLimit.onNext(mLimit.getValue() + PAGE_SIZE);
+    }
+
+    @Override
+    public void openThread(String parentId) {
+        mThread = parentId;
+        mHasMoreMessages = false;
+        mLimit.onNext(PAGE_SIZE);
+    }
+
+    @Override
+    public boolean closeThread() {
+        if (mThread == null) return false;
+
+        mThread = null;
+        mHasMoreMessages = false;
+        mLimit.onNext(PAGE_SIZE);
+        return true;
+    }
+
+    /**
+     * Show the messages saved locally. They're shown before the socket
+     * connects, and shown again whenever a message is sent or received.
+     * With a thread open, its replies are shown instead, read off the
+     * store's index of replies rather than picked out of the chat.
+     * Messages are analyzed for highlights and filters on the query's
+     * thread, so the view only renders the results.
+     */
+    private void loadMessages() {
+        Disposable disposable =
+                mLimit.switchMap(new Function<Integer, Publisher<List<ChatMessage>>>() {
+                    @Override
+                    public Publisher<List<ChatMessage>> apply(Integer limit) throws Exception {
+                        Flowable<List<ChatMessage>> messages = mThread != null
+                                ? mRepository.getReplies(mThread, limit)
+                                : mRepository.getMessages(limit);
+
+                        return messages
+                                .doOnNext(mAnalyzeMessages)
+                                .subscribeOn(mSchedulerProvider.io());
+                    }
+                })
+                        .observeOn(mSchedulerProvider.ui())
+                        .subscribe(new Consumer<List<ChatMessage>>() {
+                            @Override
+                            public void accept(List<ChatMessage> chatMessages) throws Exception {
+                                mHasMoreMessages = chatMessages.size() >= mLimit.getValue();
+                                mView.showMessages(chatMessages);
+                            }
+                        }, new Consumer<Throwable>() {
+                            @Override
+                            public void accept(Throwable throwable) throws Exception {
+                                mView.showAlert(throwable.getMessage(), true);
+                            }
+                        });
+
+        mCompositeDisposable.add(disposable);
+    }
+
+    private final Consumer<List<ChatMessage>> mAnalyzeMessages =
+            new Consumer<List<ChatMessage>>() {
+                @Override
+                public void accept(List<ChatMessage> chatMessages) throws Exception {
+                    mTextAnalyzer.analyze(chatMessages);
+                }
+            };
+
+    @Override
+    public void markRead(String messageId) {
+        mReadMessages.onNext(messageId);
+    }
+
+    @Override
+    public Map<String, String> getReadWatermarks() {
+        return mRepository.getReadWatermarks();
+    }
+
+    @Override
+    public void react(String messageId, String emoji, boolean added) {
+        mRepository.sendReaction(messageId, emoji, added);
+    }
+
+    @Override
+    public Reactions getReactions(String messageId) {
+        return mRepository.getReactions(messageId);
+    }
+
+    @Override
+    public void editMessage(final String messageId, final String message) {
+        updateMessage(messageId, new Consumer<ChatMessage>() {
+            @Override
+            public void accept(ChatMessage chatMessage) throws Exception {
+                chatMessage.setMessage(message);
+                chatMessage.setEdited(true);
+            }
+        });
+    }
+
+    @Override
+    public void deleteMessage(String messageId) {
+        updateMessage(messageId, new Consumer<ChatMessage>() {
+            @Override
+            public void accept(ChatMessage chatMessage) throws Exception {
+                chatMessage.delete();
+            }
+        });
+    }
+
+    /**
+     * Change the stored message and send the change, on the io scheduler.
+     * The view has already patched the row it shows.
+     */
+    private void updateMessage(final String messageId, final Consumer<ChatMessage> change) {
+        Disposable disposable =
+                Completable.fromAction(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        ChatMessage chatMessage = mRepository.getMessage(messageId);
+                        if (chatMessage == null || chatMessage.isDeleted()) return;
+
+                        change.accept(chatMessage);
+                        mRepository.updateMessage(chatMessage);
+                    }
+                })
+                        .subscribeOn(mSchedulerProvider.io())
+                        .observeOn(mSchedulerProvider.ui())
+                        .subscribe(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                            }
+                        }, new Consumer<Throwable>() {
+                            @Override
+                            public void accept(Throwable throwable) throws Exception {
+                                mView.showAlert(throwable.getMessage(), true);
+                            }
+                        });
+
+        mCompositeDisposable.add(disposable);
+    }
+
+    private void sendReadReceipts() {
+        Disposable disposable =
+                mReadMessages
+                        .sample(READ_RECEIPT_INTERVAL_SECONDS, TimeUnit.SECONDS,
+                                mSchedulerProvider.computation(), true)
+                        .distinctUntilChanged()
+                        .subscribe(new Consumer<String>() {
+                            @Override
+                            public void accept(String messageId) throws Exception {
+                                mRepository.sendReadReceipt(messageId);
+                            }
+                        });
+
+        mCompositeDisposable.add(disposable);
+    }
+
     @Override
     public void changeUsername(String username) {
         try {
             mRepository.disconnect();
             mRepository.connect(username);
             mView.updateUsername(username);
+            // Run the query again, so messages mention the new name
+            mLimit.onNext(mLimit.getValue());
             mView.showAlert("Username set", false);
         } catch (URISyntaxException e) {
             mView.showAlert("Changing username failed", true);
@@ -130,6 +377,22 @@ public class ChatPresenter implements ChatContract.Presenter {
         }
     }
 
+    /**
+     * Turn end-to-end encryption on, or off with a null passphrase.
+     *
+     * @param passphrase Passphrase shared with the room, or null
+     */
+    @Override
+    public void setEncryptionPassphrase(String passphrase) {
+        mRepository.setEncryptionPassphrase(passphrase);
+
+        if (passphrase != null) {
+            mView.showAlert("End-to-end encryption on", false);
+        } else {
+            mView.showAlert("End-to-end encryption off", false);
+        }
+    }
+
     @Override
     public void onTyping() {
         mRepository.onTyping();
@@ -184,4 +447,24 @@ public class ChatPresenter implements ChatContract.Presenter {
     public void onStopTyping(Object... args) {
         mViewEventListener.onStopTyping(args);
     }
+
+    @Override
+    public void onRead(Object... args) {
+        mViewEventListener.onRead(args);
+    }
+
+    @Override
+    public void onReaction(Object... args) {
+        mViewEventListener.onReaction(args);
+    }
+
+    @Override
+    public void onMessageEdited(Object... args) {
+        mViewEventListener.onMessageEdited(args);
+    }
+
+    @Override
+    public void onMessageDeleted(Object... args) {
+        mViewEventListener.onMessageDeleted(args);
+    }
 }
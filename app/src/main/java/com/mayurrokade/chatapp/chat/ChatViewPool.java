@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.chat;
+
+import android.support.annotation.NonNull;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+/**
+ * Shared {@link RecyclerView.RecycledViewPool} for chat message rows.
+ *
+ * Chat screens set {@link #acquire()} on their RecyclerView and call
+ * {@link #prewarm(RecyclerView, ChatMessagesAdapter, int)} during startup.
+ * Rows are inflated in background with {@link AsyncLayoutInflater}, so the
+ * first screen of messages and sudden bursts don't pay inflation cost
+ * on the main thread.
+ *
+ * A row may be shown by another screen than the one that created it, so
+ * rows never keep the adapter that created them. The pooled rows hold the
+ * context they were inflated with, so every screen that acquired the pool
+ * must call {@link #release()} when it's destroyed. The pool is cleared
+ * once the last of them has.
+ *
+ * Use it on the main thread.
+ */
+public class ChatViewPool {
+
+    private static final int[] VIEW_TYPES = {
+            ChatMessage.TYPE_MESSAGE_RECEIVED,
+            ChatMessage.TYPE_MESSAGE_SENT
+    };
+
+    // Smallest row is a single line of text plus the username
+    private static final int MIN_ROW_HEIGHT_DP = 56;
+
+    // Extra rows on top of one viewport, covering the rows that are
+    // laid out offscreen while scrolling
+    private static final int EXTRA_ROWS = 2;
+
+    private static RecyclerView.RecycledViewPool sPool;
+    // Screens that acquired the pool and haven't released it
+    private static int sUsers;
+
+    // Prevent direct instantiation
+    private ChatViewPool() {}
+
+    /**
+     * Returns the pool shared by every chat screen, creating it if
+     * necessary. Call {@link #release()} once for every call.
+     *
+     * @return {@link RecyclerView.RecycledViewPool}
+     */
+    @NonNull
+    public static RecyclerView.RecycledViewPool acquire() {
+        sUsers++;
+        return getSharedPool();
+    }
+
+    @NonNull
+    private static RecyclerView.RecycledViewPool getSharedPool() {
+        if (sPool == null) {
+            sPool = new RecyclerView.RecycledViewPool();
+        }
+
+        return sPool;
+    }
+
+    /**
+     * Size the shared pool to the viewport and fill it with rows inflated
+     * in background. Types which are already pooled are only topped up.
+     *
+     * @param recyclerView   RecyclerView the rows will be shown in
+     * @param adapter        {@link ChatMessagesAdapter} creating the view holders
+     * @param viewportHeight Height available for message rows in pixels
+     */
+    public static void prewarm(@NonNull final RecyclerView recyclerView,
+                               @NonNull final ChatMessagesAdapter adapter,
+                               int viewportHeight) {
+        final RecyclerView.RecycledViewPool pool = getSharedPool();
+        float density = recyclerView.getResources().getDisplayMetrics().density;
+        int minRowHeight = (int) (MIN_ROW_HEIGHT_DP * density);
+        int rowsPerType = viewportHeight / minRowHeight + EXTRA_ROWS;
+
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(recyclerView.getContext());
+
+        for (final int viewType : VIEW_TYPES) {
+            pool.setMaxRecycledViews(viewType, rowsPerType);
+            int missing = rowsPerType - pool.getRecycledViewCount(viewType);
+
+            for (int i = 0; i < missing; i++) {
+                inflater.inflate(ChatMessagesAdapter.getLayoutRes(viewType), recyclerView,
+                        new AsyncLayoutInflater.OnInflateFinishedListener() {
+                            @Override
+                            public void onInflateFinished(@NonNull View view,
+                                                          int resid,
+                                                          ViewGroup parent) {
+                                // Hand the row to the adapter so the holder goes
+                                // through createViewHolder and gets its view type
+                                adapter.offerPreinflatedView(viewType, view);
+                                pool.putRecycledView(
+                                        adapter.createViewHolder(recyclerView, viewType));
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Release the pool acquired by a screen. Every pooled row is dropped
+     * once no screen uses the pool anymore.
+     */
+    public static void release() {
+        if (sUsers == 0) return;
+
+        if (--sUsers == 0 && sPool != null) {
+            sPool.clear();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.mayurrokade.chatapp.chat;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positions of the rows by message id.
+ *
+ * The map is built on the first lookup after the list changed, one pass
+ * over the list, and every lookup after that is a hash lookup. Lists
+ * change when messages arrive, so most of them are never looked up and
+ * never pay for the map.
+ *
+ * Not thread safe, use it on the main thread.
+ */
+class MessageIndex {
+
+    private List<ChatMessage> mMessages = Collections.emptyList();
+
+    // Null until the first lookup on the current list
+    private Map<String, Integer> mPositions;
+
+    /**
+     * Call this whenever the list of rows changes.
+     *
+     * @param messages Rows currently shown
+     */
+    void setMessages(@NonNull List<ChatMessage> messages) {
+        mMessages = messages;
+        mPositions = null;
+    }
+
+    /**
+     * Returns the position of a message.
+     *
+     * @param messageId {@link ChatMessage#getId()}
+     * @return position or -1 if the message isn't shown
+     */
+    int positionOf(@NonNull String messageId) {
+        if (mPositions == null) {
+            int size = mMessages.size();
+            mPositions = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                mPositions.put(mMessages.get(i).getId(), i);
+            }
+        }
+
+        Integer position = mPositions.get(messageId);
+        return position != null ? position : -1;
+    }
+}
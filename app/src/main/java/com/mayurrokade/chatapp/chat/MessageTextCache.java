@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.chat;
+
+import android.graphics.Typeface;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.util.schedulers.BaseSchedulerProvider;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Styles and measures message text ahead of time on the decode scheduler
+ * and keeps the results in an LRU cache keyed by message id. An entry
+ * remembers the text, highlights, text metrics and row width it was
+ * measured for, and is only used while they match. An edit replaces the
+ * entry of its message. At most one measurement per message is in flight.
+ *
+ * Text is styled with the highlights {@link TextAnalyzer} found:
+ * keywords are bold, and mentions of the user also take the mention color.
+ *
+ * On API 28+ the cached {@link PrecomputedTextCompat} carries the full
+ * text layout, so binding it does no measurement on the main thread. On
+ * older platforms precomputing warms the platform's glyph cache instead.
+ *
+ * All methods except the background work must be called on the main thread.
+ */
+public class MessageTextCache {
+
+    private static final int MAX_ENTRIES = 500;
+
+    private final LruCache<String, Entry> mCache = new LruCache<>(MAX_ENTRIES);
+    private final SparseArray<PrecomputedTextCompat.Params> mParams =
+            new SparseArray<>();
+    // Message id -> entry being measured
+    private final Map<String, Entry> mPending = new HashMap<>();
+    private final BaseSchedulerProvider mSchedulerProvider;
+    private final int mMentionColor;
+
+    /**
+     * Use this constructor to create a new MessageTextCache.
+     *
+     * @param schedulerProvider {@link BaseSchedulerProvider}
+     * @param mentionColor      Color of mentions of the user
+     */
+    public MessageTextCache(@NonNull BaseSchedulerProvider schedulerProvider,
+                            @ColorInt int mentionColor) {
+        mSchedulerProvider = schedulerProvider;
+        mMentionColor = mentionColor;
+    }
+
+    /**
+     * Set the text metrics used to measure messages of a view type. They must
+     * come from the TextView the precomputed text will be set on.
+     *
+     * @param viewType {@link ChatMessage#getType()}
+     * @param params   {@link PrecomputedTextCompat.Params}
+     */
+    public void setParams(int viewType, @NonNull PrecomputedTextCompat.Params params) {
+        mParams.put(viewType, params);
+    }
+
+    public boolean hasParams(int viewType) {
+        return mParams.get(viewType) != null;
+    }
+
+    /**
+     * Returns the precomputed message text if it's ready.
+     *
+     * @param chatMessage {@link ChatMessage}
+     * @param width       Width of the row the text is laid out in
+     * @return {@link PrecomputedTextCompat} or null
+     */
+    @Nullable
+    public PrecomputedTextCompat get(@NonNull ChatMessage chatMessage, int width) {
+        PrecomputedTextCompat.Params params = mParams.get(chatMessage.getType());
+        Entry entry = mCache.get(chatMessage.getId());
+        return entry != null && entry.matches(chatMessage, params, width)
+                ? entry.mPrecomputed
+                : null;
+    }
+
+    /**
+     * Measure message text on the decode scheduler, unless it's already
+     * cached, in flight or the text metrics for its view type are unknown.
+     *
+     * @param chatMessage {@link ChatMessage}
+     * @param width       Width of the row the text is laid out in
+     */
+    public void precompute(@NonNull final ChatMessage chatMessage, int width) {
+        final PrecomputedTextCompat.Params params = mParams.get(chatMessage.getType());
+        if (params == null || chatMessage.getMessage() == null || chatMessage.isFiltered()) {
+            return;
+        }
+
+        final String id = chatMessage.getId();
+        Entry cached = mCache.get(id);
+        if (cached != null && cached.matches(chatMessage, params, width)) return;
+
+        Entry pending = mPending.get(id);
+        if (pending != null) {
+            if (pending.matches(chatMessage, params, width)) return;
+
+            // The message changed since, its old text isn't needed
+            pending.mDisposable.dispose();
+        }
+
+        final Entry entry = new Entry(chatMessage, params, width);
+        mPending.put(id, entry);
+        Consumer<Object> onTerminate = new Consumer<Object>() {
+            @Override
+            public void accept(Object ignored) throws Exception {
+                if (mPending.get(id) == entry) mPending.remove(id);
+            }
+        };
+
+        entry.mDisposable = Single.fromCallable(new Callable<PrecomputedTextCompat>() {
+            @Override
+            public PrecomputedTextCompat call() throws Exception {
+                entry.mPrecomputed = PrecomputedTextCompat.create(
+                        style(entry.mText, entry.mHighlights), params);
+                mCache.put(id, entry);
+                return entry.mPrecomputed;
+            }
+        })
+                .subscribeOn(mSchedulerProvider.decode())
+                .observeOn(mSchedulerProvider.ui())
+                .subscribe(onTerminate, onTerminate);
+    }
+
+    /**
+     * Returns the message text, styled with its highlights.
+     *
+     * @param chatMessage {@link ChatMessage}
+     * @return Text to show
+     */
+    public CharSequence getText(@NonNull ChatMessage chatMessage) {
+        return style(chatMessage.getMessage(), chatMessage.getHighlights());
+    }
+
+    private CharSequence style(String text, int[] highlights) {
+        if (text == null || highlights == null) return text;
+
+        SpannableString styled = new SpannableString(text);
+        for (int i = 0; i < highlights.length; i += 3) {
+            int start = highlights[i];
+            int end = highlights[i + 1];
+            styled.setSpan(new StyleSpan(Typeface.BOLD), start, end,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+            if ((highlights[i + 2] & TextAnalyzer.MATCH_MENTION) != 0) {
+                styled.setSpan(new ForegroundColorSpan(mMentionColor), start, end,
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+
+        return styled;
+    }
+
+    /**
+     * Cancel pending work and drop every cached entry.
+     */
+    public void clear() {
+        for (Entry entry : mPending.values()) {
+            entry.mDisposable.dispose();
+        }
+        mPending.clear();
+        mCache.evictAll();
+    }
+
+    /**
+     * Text of a message measured for a row, with what it was measured for.
+     */
+    private static final class Entry {
+        final String mText;
+        final int[] mHighlights;
+        final PrecomputedTextCompat.Params mParams;
+        final int mWidth;
+        // Set on the decode scheduler once measured
+        volatile PrecomputedTextCompat mPrecomputed;
+        Disposable mDisposable;
+
+        Entry(ChatMessage chatMessage, PrecomputedTextCompat.Params params, int width) {
+            mText = chatMessage.getMessage();
+            mHighlights = chatMessage.getHighlights();
+            mParams = params;
+            mWidth = width;
+        }
+
+        boolean matches(ChatMessage chatMessage, PrecomputedTextCompat.Params params, int width) {
+            return mParams == params
+                    && mWidth == width
+                    && TextUtils.equals(mText, chatMessage.getMessage())
+                    && Arrays.equals(mHighlights, chatMessage.getHighlights());
+        }
+    }
+}
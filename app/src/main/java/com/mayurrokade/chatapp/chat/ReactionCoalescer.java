@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.mayurrokade.chatapp.chat;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the messages whose reactions changed until their rows are
+ * updated, so a burst of reaction events on a message leads to a single
+ * update of its row.
+ *
+ * Messages are added from any thread. The first one after a drain asks
+ * the caller to schedule the next drain, typically on the next frame,
+ * and later ones only join the set already waiting.
+ */
+class ReactionCoalescer {
+
+    private Set<String> mPending = new HashSet<>();
+
+    /**
+     * Add a message whose reactions changed.
+     *
+     * @param messageId Id of the message reacted to
+     * @return true if a drain has to be scheduled
+     */
+    synchronized boolean add(@NonNull String messageId) {
+        boolean first = mPending.isEmpty();
+        mPending.add(messageId);
+        return first;
+    }
+
+    /**
+     * Take the messages waiting.
+     *
+     * @return Ids of the messages whose reactions changed
+     */
+    @NonNull
+    synchronized Set<String> drain() {
+        Set<String> pending = mPending;
+        mPending = new HashSet<>();
+        return pending;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.chat;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read state of the rows, worked out from the latest message each
+ * other user has read.
+ *
+ * A user's watermark means they've read every message up to and
+ * including it. The read count of a row is the number of watermarks at
+ * or after it, found by binary search over their sorted positions, so
+ * nothing is kept per message. When a watermark moves forward only the
+ * rows it passed over change.
+ *
+ * A watermark on a message that isn't in the list yet is held back
+ * until the message shows up.
+ *
+ * Not thread safe, use it on the main thread.
+ */
+class ReadWatermarks {
+
+    /**
+     * Listens to rows whose read count changed.
+     */
+    interface Callback {
+        void onReadStateChanged(int position, int count);
+    }
+
+    private final Callback mCallback;
+    private final Map<String, String> mReadUpTo = new HashMap<>();
+    private final Map<String, String> mPending = new HashMap<>();
+    private List<ChatMessage> mMessages = Collections.emptyList();
+
+    // Sorted positions of the watermarks, null when the list or a watermark changed
+    private int[] mPositions;
+
+    ReadWatermarks(@NonNull Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Call this whenever the list of rows changes.
+     *
+     * @param messages Rows currently shown
+     */
+    void setMessages(@NonNull List<ChatMessage> messages) {
+        mMessages = messages;
+        mPositions = null;
+    }
+
+    boolean hasPending() {
+        return !mPending.isEmpty();
+    }
+
+    /**
+     * Apply the watermarks held back, now that their messages may be in the list.
+     */
+    void applyPending() {
+        for (Map.Entry<String, String> entry : new ArrayList<>(mPending.entrySet())) {
+            update(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Move a user's watermark. Watermarks only move forward.
+     *
+     * @param username  User who has read the chat
+     * @param messageId Latest message they've read
+     */
+    void update(@NonNull String username, @NonNull String messageId) {
+        int to = positionOf(messageId);
+        if (to == -1) {
+            mPending.put(username, messageId);
+            return;
+        }
+
+        mPending.remove(username);
+        int from = positionOf(mReadUpTo.get(username));
+        if (to <= from) return;
+
+        mReadUpTo.put(username, messageId);
+        mPositions = null;
+        mCallback.onReadStateChanged(from + 1, to - from);
+    }
+
+    /**
+     * Returns how many users have read the row.
+     *
+     * @param position Position of the row
+     * @return number of users
+     */
+    int getReadCount(int position) {
+        int[] positions = getPositions();
+
+        int index = Arrays.binarySearch(positions, position);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // Step back over watermarks on the same row
+            while (index > 0 && positions[index - 1] == position) index--;
+        }
+
+        return positions.length - index;
+    }
+
+    private int[] getPositions() {
+        if (mPositions != null) return mPositions;
+
+        int[] positions = new int[mReadUpTo.size()];
+        int count = 0;
+        for (String messageId : mReadUpTo.values()) {
+            int position = positionOf(messageId);
+            if (position != -1) positions[count++] = position;
+        }
+
+        mPositions = Arrays.copyOf(positions, count);
+        Arrays.sort(mPositions);
+        return mPositions;
+    }
+
+    /**
+     * Watermarks are mostly on the latest rows, so look from the end.
+     */
+    private int positionOf(String messageId) {
+        if (messageId == null) return -1;
+
+        for (int i = mMessages.size() - 1; i >= 0; i--) {
+            if (messageId.equals(mMessages.get(i).getId())) return i;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.mayurrokade.chatapp.chat;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.util.PatternMatcher;
+import com.mayurrokade.chatapp.util.User;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds mentions of the user, keywords and blocked words in message text,
+ * in one pass of a {@link PatternMatcher} over each message. Mentions and
+ * keywords are highlighted, and received messages with blocked words
+ * are filtered. Runs off the main thread, before messages are shown.
+ *
+ * The username is read each time messages are analyzed. When it has
+ * changed, only the mention pattern is replaced in the matcher's trie
+ * before the matcher is built again.
+ */
+public class TextAnalyzer {
+
+    public static final int MATCH_MENTION = 1;
+    public static final int MATCH_KEYWORD = 1 << 1;
+    public static final int MATCH_BLOCKED = 1 << 2;
+
+    private static final int MATCH_HIGHLIGHTED = MATCH_MENTION | MATCH_KEYWORD;
+
+    private static TextAnalyzer INSTANCE;
+
+    // Matches of the message being analyzed, one collector per thread
+    private static final ThreadLocal<Collector> sCollector = new ThreadLocal<Collector>() {
+        @Override
+        protected Collector initialValue() {
+            return new Collector();
+        }
+    };
+
+    private final PatternMatcher.Builder mBuilder = new PatternMatcher.Builder();
+    private volatile PatternMatcher mMatcher;
+    private volatile String mUsername;
+
+    // Prevent direct instantiation
+    @VisibleForTesting
+    TextAnalyzer(@NonNull String[] keywords, @NonNull String[] blockedWords) {
+        for (String keyword : keywords) {
+            mBuilder.add(keyword, MATCH_KEYWORD);
+        }
+
+        for (String blockedWord : blockedWords) {
+            mBuilder.add(blockedWord, MATCH_BLOCKED);
+        }
+
+        mMatcher = mBuilder.build();
+    }
+
+    /**
+     * Returns single instance of this class, creating it if necessary.
+     *
+     * @param keywords     Words to highlight
+     * @param blockedWords Words that hide received messages
+     * @return
+     */
+    public static TextAnalyzer getInstance(@NonNull String[] keywords,
+                                           @NonNull String[] blockedWords) {
+        if (INSTANCE == null) {
+            INSTANCE = new TextAnalyzer(keywords, blockedWords);
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Used to force {@link #getInstance(String[], String[])} to create
+     * a new instance next time it's called.
+     */
+    @VisibleForTesting
+    public static void destroyInstance() {
+        INSTANCE = null;
+    }
+
+    /**
+     * Analyze each message of a list.
+     *
+     * @param chatMessages messages to analyze
+     */
+    public void analyze(@NonNull List<ChatMessage> chatMessages) {
+        PatternMatcher matcher = getMatcher(User.getUsername());
+        for (int i = 0; i < chatMessages.size(); i++) {
+            analyze(matcher, chatMessages.get(i));
+        }
+    }
+
+    /**
+     * Set the highlights of a message, and whether it's filtered.
+     *
+     * @param chatMessage {@link ChatMessage}
+     */
+    public void analyze(@NonNull ChatMessage chatMessage) {
+        analyze(getMatcher(User.getUsername()), chatMessage);
+    }
+
+    private static void analyze(PatternMatcher matcher, ChatMessage chatMessage) {
+        String text = chatMessage.getMessage();
+        if (text == null || chatMessage.isDeleted()) {
+            chatMessage.setHighlights(null);
+            chatMessage.setFiltered(false);
+            return;
+        }
+
+        Collector collector = sCollector.get();
+        collector.reset();
+        matcher.match(text, collector);
+
+        chatMessage.setHighlights(collector.getHighlights());
+        // Users see what they send themselves
+        chatMessage.setFiltered(collector.mBlocked
+                && chatMessage.getType() == ChatMessage.TYPE_MESSAGE_RECEIVED);
+    }
+
+    private PatternMatcher getMatcher(@NonNull String username) {
+        if (username.equals(mUsername)) return mMatcher;
+
+        synchronized (this) {
+            if (!username.equals(mUsername)) {
+                if (mUsername != null) {
+                    mBuilder.remove(mUsername, MATCH_MENTION);
+                }
+                mBuilder.add(username, MATCH_MENTION);
+                // Published before the username, so whoever sees
+                // the new username also sees its matcher
+                mMatcher = mBuilder.build();
+                mUsername = username;
+            }
+
+            return mMatcher;
+        }
+    }
+
+    private static class Collector implements PatternMatcher.OnMatchListener {
+
+        private int[] mHighlights = new int[3 * 8];
+        private int mSize;
+        private boolean mBlocked;
+
+        void reset() {
+            mSize = 0;
+            mBlocked = false;
+        }
+
+        @Override
+        public void onMatch(int tags, int start, int end) {
+            if ((tags & MATCH_BLOCKED) != 0) {
+                mBlocked = true;
+            }
+
+            if ((tags & MATCH_HIGHLIGHTED) == 0) return;
+
+            if (mSize == mHighlights.length) {
+                mHighlights = Arrays.copyOf(mHighlights, mSize * 2);
+            }
+            mHighlights[mSize++] = start;
+            mHighlights[mSize++] = end;
+            mHighlights[mSize++] = tags & MATCH_HIGHLIGHTED;
+        }
+
+        int[] getHighlights() {
+            return mSize > 0 ? Arrays.copyOf(mHighlights, mSize) : null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Attachment model. The media itself lives in the media cache,
+ * keyed by its content hash.
+ */
+public class Attachment {
+
+    private final String contentHash;
+    private final String mimeType;
+    private final long size;
+
+    /**
+     * Use this constructor to create a new Attachment.
+     *
+     * @param contentHash SHA-256 of the media, as hex
+     * @param mimeType    Mime type of the media
+     * @param size        Size of the media in bytes
+     */
+    public Attachment(String contentHash, String mimeType, long size) {
+        this.contentHash = contentHash;
+        this.mimeType = mimeType;
+        this.size = size;
+    }
+
+    /**
+     * Create an attachment from the json sent by the server.
+     *
+     * @param data
+     * @return Attachment
+     * @throws JSONException
+     */
+    public static Attachment fromJson(JSONObject data) throws JSONException {
+        return new Attachment(
+                data.getString("hash"),
+                data.getString("mimeType"),
+                data.getLong("size"));
+    }
+
+    /**
+     * Get json to send the attachment to the server.
+     *
+     * @return JSONObject
+     * @throws JSONException
+     */
+    public JSONObject toJson() throws JSONException {
+        return new JSONObject()
+                .put("hash", contentHash)
+                .put("mimeType", mimeType)
+                .put("size", size);
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -22,6 +22,12 @@
 
 package com.mayurrokade.chatapp.data;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * ChatMessage model
  */
@@ -29,9 +35,32 @@ public class ChatMessage {
     public static final int TYPE_MESSAGE_SENT = 393;
     public static final int TYPE_MESSAGE_RECEIVED = 529;
 
+    // Ids only need to be unique. A random prefix per process plus a
+    // counter is unique too, and far cheaper to make than a random UUID
+    // for every message received without an id.
+    private static final char[] ID_PREFIX = newIdPrefix();
+    private static final AtomicLong sIdCounter = new AtomicLong();
+    private static final ThreadLocal<char[]> sIdBuffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            // Room for the prefix, and the counter twice over while it's moved in place
+            char[] buffer = new char[ID_PREFIX.length + 26];
+            System.arraycopy(ID_PREFIX, 0, buffer, 0, ID_PREFIX.length);
+            return buffer;
+        }
+    };
+
+    private String id;
     private String username;
     private String message;
     private int type;
+    private Attachment attachment;
+    private boolean edited;
+    private boolean deleted;
+    private String parentId;
+    private int replyCount;
+    private int[] highlights;
+    private boolean filtered;
 
     /**
      * Use this constructor to create a new ChatMessage.
@@ -41,11 +70,119 @@ public class ChatMessage {
      * @param type          Type of message. Whether it's a SENT or RECEIVED message
      */
     public ChatMessage(String username, String message, int type) {
+        this(newId(), username, message, type);
+    }
+
+    /**
+     * Use this constructor to create a ChatMessage that already has an id,
+     * like one loaded from the local store.
+     *
+     * @param id            Unique id of the message
+     * @param username      Username of the user
+     * @param message       The text message user wants to send
+     * @param type          Type of message. Whether it's a SENT or RECEIVED message
+     */
+    public ChatMessage(String id, String username, String message, int type) {
+        this.id = id;
         this.username = username;
         this.message = message;
         this.type = type;
     }
 
+    /**
+     * Create a chat message from the json sent by the server.
+     *
+     * @param data JSONObject with username, message, an optional id and an optional attachment
+     * @param type Type of message. Whether it's a SENT or RECEIVED message
+     * @return ChatMessage
+     * @throws JSONException
+     */
+    public static ChatMessage fromJson(JSONObject data, int type) throws JSONException {
+        unwrap(data);
+
+        ChatMessage chatMessage = new ChatMessage(
+                data.getString("username"),
+                data.getString("message"),
+                type);
+
+        // Keep the sender's id, so edits, receipts and replies sent by id
+        // find the message. Only old senders leave it out.
+        String id = data.optString("id", null);
+        if (id != null) {
+            chatMessage.setId(id);
+        }
+
+        chatMessage.setParentId(data.optString("parentId", null));
+
+        JSONObject attachment = data.optJSONObject("attachment");
+        if (attachment != null) {
+            chatMessage.setAttachment(Attachment.fromJson(attachment));
+        }
+
+        return chatMessage;
+    }
+
+    /**
+     * Move the fields of a message the server relayed inside the message
+     * field up to the top level. The username the server added is kept.
+     *
+     * @param data JSONObject of a received message, changed in place
+     * @throws JSONException
+     */
+    public static void unwrap(JSONObject data) throws JSONException {
+        JSONObject message = data.optJSONObject("message");
+        if (message == null) return;
+
+        data.put("message", message.getString("message"));
+        data.putOpt("id", message.optString("id", null));
+        data.putOpt("parentId", message.optString("parentId", null));
+    }
+
+    /**
+     * Returns a new unique message id: the prefix of this process and
+     * the counter in base 36. The id is built in a buffer kept per thread,
+     * so the string is the only allocation.
+     *
+     * @return id
+     */
+    static String newId() {
+        long counter = sIdCounter.incrementAndGet();
+        char[] buffer = sIdBuffer.get();
+
+        int start = buffer.length;
+        do {
+            buffer[--start] = Character.forDigit((int) (counter % 36), 36);
+            counter /= 36;
+        } while (counter > 0);
+
+        int length = buffer.length - start;
+        System.arraycopy(buffer, start, buffer, ID_PREFIX.length, length);
+        return new String(buffer, 0, ID_PREFIX.length + length);
+    }
+
+    private static char[] newIdPrefix() {
+        long random = new SecureRandom().nextLong() & Long.MAX_VALUE;
+        return (Long.toString(random, 36) + '-').toCharArray();
+    }
+
+    /**
+     * Get unique id of the chat message.
+     *
+     * @return id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Set unique id for the chat message.
+     *
+     * @param id
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
     /**
      * Get username from the chat message.
      *
@@ -99,4 +236,154 @@ public class ChatMessage {
     public void setType(int type) {
         this.type = type;
     }
+
+    /**
+     * Get attachment of the chat message.
+     *
+     * @return attachment or null if the message is text only
+     */
+    public Attachment getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Set attachment for the chat message.
+     *
+     * @param attachment
+     */
+    public void setAttachment(Attachment attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Whether the sender changed the text after sending the message.
+     *
+     * @return edited
+     */
+    public boolean isEdited() {
+        return edited;
+    }
+
+    /**
+     * Set whether the text was changed after sending.
+     *
+     * @param edited
+     */
+    public void setEdited(boolean edited) {
+        this.edited = edited;
+    }
+
+    /**
+     * Whether the sender deleted the message. A deleted message has
+     * neither text nor attachment, and stays in the chat as a placeholder.
+     *
+     * @return deleted
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Get id of the message whose thread this message replies to.
+     *
+     * @return parentId or null if the message isn't a reply
+     */
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * Set id of the message this message replies to.
+     *
+     * @param parentId
+     */
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
+    /**
+     * Get number of replies in the thread of this message. It's counted
+     * when messages are loaded and isn't stored with the message.
+     *
+     * @return replyCount
+     */
+    public int getReplyCount() {
+        return replyCount;
+    }
+
+    /**
+     * Set number of replies in the thread of this message.
+     *
+     * @param replyCount
+     */
+    public void setReplyCount(int replyCount) {
+        this.replyCount = replyCount;
+    }
+
+    /**
+     * Get the parts of the text to highlight, as start, end and tags of
+     * each. They're found when messages are loaded and aren't stored
+     * with the message.
+     *
+     * @return highlights or null if there are none
+     */
+    public int[] getHighlights() {
+        return highlights;
+    }
+
+    /**
+     * Set the parts of the text to highlight.
+     *
+     * @param highlights
+     */
+    public void setHighlights(int[] highlights) {
+        this.highlights = highlights;
+    }
+
+    /**
+     * Check if the text is hidden by the user's filters. It's decided
+     * when messages are loaded and isn't stored with the message.
+     *
+     * @return filtered
+     */
+    public boolean isFiltered() {
+        return filtered;
+    }
+
+    /**
+     * Set whether the text is hidden by the user's filters.
+     *
+     * @param filtered
+     */
+    public void setFiltered(boolean filtered) {
+        this.filtered = filtered;
+    }
+
+    /**
+     * Turn the message into the placeholder of a deleted message,
+     * dropping its text and attachment.
+     */
+    public void delete() {
+        this.message = null;
+        this.attachment = null;
+        this.deleted = true;
+    }
+
+    /**
+     * Copy the message, so a copy can be changed while the original is
+     * still read elsewhere. The attachment is shared.
+     *
+     * @return ChatMessage
+     */
+    public ChatMessage copy() {
+        ChatMessage copy = new ChatMessage(id, username, message, type);
+        copy.attachment = attachment;
+        copy.edited = edited;
+        copy.deleted = deleted;
+        copy.parentId = parentId;
+        copy.replyCount = replyCount;
+        copy.highlights = highlights;
+        copy.filtered = filtered;
+        return copy;
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.mayurrokade.chatapp.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Reaction counters of a single message.
+ *
+ * Each distinct emoji has a slot holding how many users reacted with
+ * it, in the order the emojis first showed up. Whether the user reacted
+ * with an emoji is a bit of a mask, so no set of usernames is kept. A
+ * slot goes away when its count drops to 0.
+ *
+ * At most {@link #MAX_EMOJIS} distinct emojis are kept per message,
+ * further ones are ignored.
+ *
+ * Not thread safe. The repository keeps the reactions of every message
+ * under a lock and hands out copies.
+ */
+public final class Reactions {
+
+    public static final int MAX_EMOJIS = 32;
+
+    private static final String[] NO_EMOJIS = new String[0];
+    private static final int[] NO_COUNTS = new int[0];
+
+    private String[] mEmojis = NO_EMOJIS;
+    private int[] mCounts = NO_COUNTS;
+    private int mSize;
+
+    // Bit i is set when the user reacted with mEmojis[i]
+    private int mOwn;
+
+    /**
+     * Add reactions of other users.
+     *
+     * @param emoji Reaction
+     * @param delta Number of reactions added, negative if removed
+     * @return true if the counters changed
+     */
+    public boolean add(@NonNull String emoji, int delta) {
+        if (delta == 0) return false;
+
+        int index = indexOf(emoji);
+        if (index == -1) {
+            // Removals of reactions never seen
+            if (delta < 0) return false;
+
+            index = append(emoji);
+            if (index == -1) return false;
+        }
+
+        // Removals may overtake the additions they undo
+        mCounts[index] = Math.max(0, mCounts[index] + delta);
+        if (mCounts[index] == 0) removeAt(index);
+        return true;
+    }
+
+    /**
+     * Add or remove a reaction of the user.
+     *
+     * @param emoji   Reaction
+     * @param reacted true to add it, false to remove it
+     * @return true if the counters changed
+     */
+    public boolean setOwn(@NonNull String emoji, boolean reacted) {
+        if (hasOwn(emoji) == reacted) return false;
+
+        int index = indexOf(emoji);
+        if (reacted) {
+            if (index == -1) index = append(emoji);
+            if (index == -1) return false;
+
+            mCounts[index]++;
+            mOwn |= 1 << index;
+        } else {
+            mOwn &= ~(1 << index);
+            if (--mCounts[index] == 0) removeAt(index);
+        }
+
+        return true;
+    }
+
+    public boolean hasOwn(@NonNull String emoji) {
+        int index = indexOf(emoji);
+        return index != -1 && isOwn(index);
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the number of distinct emojis.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    @NonNull
+    public String getEmoji(int index) {
+        return mEmojis[index];
+    }
+
+    public int getCount(int index) {
+        return mCounts[index];
+    }
+
+    public boolean isOwn(int index) {
+        return (mOwn & (1 << index)) != 0;
+    }
+
+    /**
+     * Copy the counters, to be read while the original keeps changing.
+     *
+     * @return Reactions
+     */
+    @NonNull
+    public Reactions copy() {
+        Reactions copy = new Reactions();
+        copy.mEmojis = Arrays.copyOf(mEmojis, mSize);
+        copy.mCounts = Arrays.copyOf(mCounts, mSize);
+        copy.mSize = mSize;
+        copy.mOwn = mOwn;
+        return copy;
+    }
+
+    private int indexOf(String emoji) {
+        for (int i = 0; i < mSize; i++) {
+            if (mEmojis[i].equals(emoji)) return i;
+        }
+
+        return -1;
+    }
+
+    private int append(String emoji) {
+        if (mSize == MAX_EMOJIS) return -1;
+
+        if (mSize == mEmojis.length) {
+            // Most messages only get a few distinct emojis
+            int capacity = Math.min(MAX_EMOJIS, Math.max(2, mSize * 2));
+            mEmojis = Arrays.copyOf(mEmojis, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+        }
+
+        mEmojis[mSize] = emoji;
+        mCounts[mSize] = 0;
+        return mSize++;
+    }
+
+    private void removeAt(int index) {
+        int moved = mSize - index - 1;
+        System.arraycopy(mEmojis, index + 1, mEmojis, index, moved);
+        System.arraycopy(mCounts, index + 1, mCounts, index, moved);
+        mEmojis[--mSize] = null;
+
+        // Shift the bits above index down by one as well
+        int below = mOwn & ((1 << index) - 1);
+        int above = index + 1 < Integer.SIZE ? (mOwn >>> (index + 1)) << index : 0;
+        mOwn = below | above;
+    }
+}
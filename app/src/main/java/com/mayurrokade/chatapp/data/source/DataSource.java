@@ -22,12 +22,16 @@
 
 package com.mayurrokade.chatapp.data.source;
 
+import com.mayurrokade.chatapp.data.Attachment;
 import com.mayurrokade.chatapp.data.ChatMessage;
 import com.mayurrokade.chatapp.eventservice.EventListener;
 
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.List;
 
 import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
 
 /**
  * Main interface for accessing data. It extends EventListener to receive
@@ -35,7 +39,7 @@ import io.reactivex.Flowable;
  */
 public interface DataSource extends EventListener {
 
-    void setEventListener(EventListener eventListener);
+    Disposable setEventListener(EventListener eventListener);
 
     void connect(String username) throws URISyntaxException;
 
@@ -46,4 +50,37 @@ public interface DataSource extends EventListener {
     void onTyping();
 
     void onStopTyping();
+
+    void sendReadReceipt(String messageId);
+
+    void sendReaction(String messageId, String emoji, boolean added);
+
+    Flowable<List<ChatMessage>> getMessages(int limit);
+
+    Flowable<List<ChatMessage>> getReplies(String parentId, int limit);
+
+    /**
+     * Get the ids of the most recent messages stored, newest first.
+     *
+     * @param limit Maximum number of ids
+     * @return Flowable emitting once
+     */
+    Flowable<List<String>> getRecentMessageIds(int limit);
+
+    void saveMessage(ChatMessage chatMessage);
+
+    boolean hasMessage(String id);
+
+    ChatMessage getMessage(String id);
+
+    /**
+     * Store or send the new content of a message that was edited or deleted.
+     *
+     * @param chatMessage {@link ChatMessage} with the id of an existing message
+     */
+    void updateMessage(ChatMessage chatMessage);
+
+    Flowable<Attachment> saveAttachment(InputStream in, String mimeType);
+
+    void setEncryptionPassphrase(String passphrase);
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.util.BloomFilter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells whether a message id has been seen before, in constant memory.
+ *
+ * Recent ids are kept exactly in a small LRU set, which catches the
+ * duplicates a reconnect or a replay produces. Older ids only leave a
+ * trace in a {@link BloomFilter}. A hit in the filter may be a false
+ * positive, so it's confirmed against the local store before a message
+ * is dropped, and no new message is ever dropped.
+ *
+ * Lookups in the store run on the caller's thread, so the filter must
+ * not fill up. Ids go into one of two filters, and once it holds as
+ * many ids as it's sized for, the older one is cleared and takes over.
+ * Both are checked, so the latest ids are always remembered and false
+ * positives stay at about twice the rate of one filter.
+ *
+ * Both start empty on every launch, so they're seeded with the ids of
+ * the latest stored messages, the ones a replay sends again.
+ */
+class MessageDeduplicator {
+
+    private static final int RECENT_IDS = 1024;
+    static final int SEED_IDS = 2000;
+    private static final int EXPECTED_IDS = 10000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Looks up ids in the persisted history.
+     */
+    interface History {
+        boolean hasMessage(String id);
+    }
+
+    private final History mHistory;
+    private BloomFilter mFilter = new BloomFilter(EXPECTED_IDS, FALSE_POSITIVE_RATE);
+    private BloomFilter mPreviousFilter = new BloomFilter(EXPECTED_IDS, FALSE_POSITIVE_RATE);
+    // Ids added to mFilter since it was last cleared
+    private int mFilterCount;
+    private final Map<String, Boolean> mRecentIds =
+            new LinkedHashMap<String, Boolean>(RECENT_IDS * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_IDS;
+                }
+            };
+
+    MessageDeduplicator(@NonNull History history) {
+        mHistory = history;
+    }
+
+    /**
+     * Record the id of a message, unless it has been seen before.
+     *
+     * @param id {@link com.mayurrokade.chatapp.data.ChatMessage#getId()}
+     * @return true if the id is new, false for a duplicate
+     */
+    synchronized boolean add(@NonNull String id) {
+        // get() rather than containsKey() to refresh the id in the LRU
+        if (mRecentIds.get(id) != null) {
+            return false;
+        }
+
+        if ((mFilter.mightContain(id) || mPreviousFilter.mightContain(id))
+                && mHistory.hasMessage(id)) {
+            return false;
+        }
+
+        addToFilter(id);
+        mRecentIds.put(id, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Record the id of a message known to be in the history, like
+     * those loaded from the local store.
+     *
+     * @param id
+     */
+    synchronized void seen(@NonNull String id) {
+        addToFilter(id);
+    }
+
+    /**
+     * Record the ids of messages stored in earlier runs. The newest ones
+     * are kept exactly, like the ids of messages just received.
+     *
+     * @param ids Ids of stored messages, newest first
+     */
+    synchronized void seed(@NonNull List<String> ids) {
+        // Oldest first, so the newest end up most recently used
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            String id = ids.get(i);
+            addToFilter(id);
+            if (i < RECENT_IDS) mRecentIds.put(id, Boolean.TRUE);
+        }
+    }
+
+    synchronized void clear() {
+        mFilter.clear();
+        mPreviousFilter.clear();
+        mFilterCount = 0;
+        mRecentIds.clear();
+    }
+
+    private void addToFilter(String id) {
+        // Loaded lists are seen again on every query, don't count them twice
+        if (mFilter.mightContain(id)) return;
+
+        if (mFilterCount == EXPECTED_IDS) {
+            BloomFilter filter = mPreviousFilter;
+            filter.clear();
+            mPreviousFilter = mFilter;
+            mFilter = filter;
+            mFilterCount = 0;
+        }
+
+        mFilter.add(id);
+        mFilterCount++;
+    }
+}
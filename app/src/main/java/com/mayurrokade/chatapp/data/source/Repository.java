@@ -23,13 +23,29 @@
 package com.mayurrokade.chatapp.data.source;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
 
+import com.mayurrokade.chatapp.data.Attachment;
 import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.Reactions;
 import com.mayurrokade.chatapp.eventservice.EventListener;
+import com.mayurrokade.chatapp.util.ListenerSlot;
+import com.mayurrokade.chatapp.util.User;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
 
 /**
  * Repository can send events to a remote data source and can listen
@@ -40,17 +56,44 @@ import io.reactivex.Flowable;
  */
 public class Repository implements DataSource {
 
+    private static final String TAG = Repository.class.getSimpleName();
     private static Repository INSTANCE = null;
     private final DataSource mRemoteDataSource;
     private final DataSource mLocalDataSource;
-    private EventListener mPresenterEventListener;
+    private final MessageDeduplicator mDeduplicator;
+    private final ListenerSlot<EventListener> mPresenterEventListener = new ListenerSlot<>();
+    // Username -> id of the latest message they've read, guarded by itself
+    private final Map<String, String> mReadWatermarks = new HashMap<>();
+    // Message id -> reactions of everyone, guarded by itself
+    private final Map<String, Reactions> mReactions = new HashMap<>();
 
     // Prevent direct instantiation
     private Repository(@NonNull DataSource remoteDataSource,
                        @NonNull DataSource localDataSource) {
         mLocalDataSource = localDataSource;
         mRemoteDataSource = remoteDataSource;
+        mDeduplicator = new MessageDeduplicator(new MessageDeduplicator.History() {
+            @Override
+            public boolean hasMessage(String id) {
+                return mLocalDataSource.hasMessage(id);
+            }
+        });
         mRemoteDataSource.setEventListener(this);
+
+        // The deduplicator starts empty, so without the stored ids
+        // replayed messages from earlier runs would look new
+        mLocalDataSource.getRecentMessageIds(MessageDeduplicator.SEED_IDS)
+                .subscribe(new Consumer<List<String>>() {
+                    @Override
+                    public void accept(List<String> ids) throws Exception {
+                        mDeduplicator.seed(ids);
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        Log.e(TAG, "seed: " + throwable.getMessage());
+                    }
+                });
     }
 
     /**
@@ -69,9 +112,27 @@ public class Repository implements DataSource {
         return INSTANCE;
     }
 
+    /**
+     * Used to force {@link #getInstance(DataSource, DataSource)} to create a new instance
+     * next time it's called.
+     */
+    @VisibleForTesting
+    public static void destroyInstance() {
+        INSTANCE = null;
+    }
+
+    /**
+     * Set the listener of server events, usually the presenter. The
+     * repository outlives every screen, so dispose the returned handle
+     * when the presenter unsubscribes or the screen can't be collected.
+     *
+     * @param eventListener
+     * @return Disposable removing the listener
+     */
+    @NonNull
     @Override
-    public void setEventListener(EventListener eventListener) {
-        mPresenterEventListener = eventListener;
+    public Disposable setEventListener(@NonNull EventListener eventListener) {
+        return mPresenterEventListener.set(eventListener);
     }
 
     /**
@@ -102,9 +163,103 @@ public class Repository implements DataSource {
      */
     @Override
     public Flowable<ChatMessage> sendMessage(ChatMessage chatMessage) {
+        // The server may echo our own message back
+        mDeduplicator.add(chatMessage.getId());
+        mLocalDataSource.saveMessage(chatMessage);
         return mRemoteDataSource.sendMessage(chatMessage);
     }
 
+    /**
+     * Get the most recent messages saved locally. Every message sent or
+     * received is saved first, so this is the only source the chat screen
+     * needs. The list is emitted again whenever messages are saved.
+     *
+     * @param limit Maximum number of messages
+     * @return
+     */
+    @Override
+    public Flowable<List<ChatMessage>> getMessages(int limit) {
+        return mLocalDataSource.getMessages(limit).doOnNext(mMarkSeen);
+    }
+
+    /**
+     * Get the most recent replies of a thread saved locally, emitted again
+     * whenever messages are saved, like {@link #getMessages(int)}.
+     *
+     * @param parentId Id of the message the thread started on
+     * @param limit    Maximum number of replies
+     * @return
+     */
+    @Override
+    public Flowable<List<ChatMessage>> getReplies(String parentId, int limit) {
+        return mLocalDataSource.getReplies(parentId, limit).doOnNext(mMarkSeen);
+    }
+
+    private final Consumer<List<ChatMessage>> mMarkSeen = new Consumer<List<ChatMessage>>() {
+        @Override
+        public void accept(List<ChatMessage> chatMessages) throws Exception {
+            for (ChatMessage chatMessage : chatMessages) {
+                mDeduplicator.seen(chatMessage.getId());
+            }
+        }
+    };
+
+    @Override
+    public Flowable<List<String>> getRecentMessageIds(int limit) {
+        return mLocalDataSource.getRecentMessageIds(limit);
+    }
+
+    @Override
+    public void saveMessage(ChatMessage chatMessage) {
+        mLocalDataSource.saveMessage(chatMessage);
+    }
+
+    @Override
+    public boolean hasMessage(String id) {
+        return mLocalDataSource.hasMessage(id);
+    }
+
+    @Override
+    public ChatMessage getMessage(String id) {
+        return mLocalDataSource.getMessage(id);
+    }
+
+    /**
+     * Save an edit or a delete of a message the user sent, and send it
+     * to other users.
+     *
+     * @param chatMessage {@link ChatMessage} as returned by {@link #getMessage(String)}
+     */
+    @Override
+    public void updateMessage(ChatMessage chatMessage) {
+        if (chatMessage.isDeleted()) removeReactions(chatMessage.getId());
+
+        mLocalDataSource.updateMessage(chatMessage);
+        mRemoteDataSource.updateMessage(chatMessage);
+    }
+
+    /**
+     * Save attachment media locally, before sending it.
+     *
+     * @param in
+     * @param mimeType
+     * @return
+     */
+    @Override
+    public Flowable<Attachment> saveAttachment(InputStream in, String mimeType) {
+        return mLocalDataSource.saveAttachment(in, mimeType);
+    }
+
+    /**
+     * Turn end-to-end encryption of sent and received messages on or off.
+     *
+     * @param passphrase Passphrase shared with the peers, or null to turn it off
+     */
+    @Override
+    public void setEncryptionPassphrase(String passphrase) {
+        mRemoteDataSource.setEncryptionPassphrase(passphrase);
+    }
+
     @Override
     public void onTyping() {
         mRemoteDataSource.onTyping();
@@ -115,57 +270,276 @@ public class Repository implements DataSource {
         mRemoteDataSource.onStopTyping();
     }
 
+    /**
+     * Tell other users the chat has been read up to a message.
+     *
+     * @param messageId Id of the latest message read
+     */
+    @Override
+    public void sendReadReceipt(String messageId) {
+        mRemoteDataSource.sendReadReceipt(messageId);
+    }
+
+    /**
+     * Tell other users about a reaction added or removed by the user.
+     *
+     * @param messageId Id of the message reacted to
+     * @param emoji     Reaction
+     * @param added     true if added, false if removed
+     */
+    @Override
+    public void sendReaction(String messageId, String emoji, boolean added) {
+        synchronized (mReactions) {
+            getOrCreateReactions(messageId).setOwn(emoji, added);
+        }
+
+        mRemoteDataSource.sendReaction(messageId, emoji, added);
+    }
+
+    /**
+     * Get the reactions of a message, from the reaction events received
+     * and sent since the app started.
+     *
+     * @param messageId Id of the message
+     * @return Copy of the reactions, or null if there are none
+     */
+    @Nullable
+    public Reactions getReactions(String messageId) {
+        synchronized (mReactions) {
+            Reactions reactions = mReactions.get(messageId);
+            return reactions == null || reactions.isEmpty() ? null : reactions.copy();
+        }
+    }
+
+    private Reactions getOrCreateReactions(String messageId) {
+        Reactions reactions = mReactions.get(messageId);
+
+        if (reactions == null) {
+            reactions = new Reactions();
+            mReactions.put(messageId, reactions);
+        }
+
+        return reactions;
+    }
+
+    private void removeReactions(String messageId) {
+        synchronized (mReactions) {
+            mReactions.remove(messageId);
+        }
+    }
+
     @Override
     public void onConnect(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onConnect(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onConnect(args);
     }
 
     @Override
     public void onDisconnect(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onDisconnect(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onDisconnect(args);
     }
 
     @Override
     public void onConnectError(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onConnectError(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onConnectError(args);
     }
 
     @Override
     public void onConnectTimeout(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onConnectTimeout(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onConnectTimeout(args);
     }
 
+    /**
+     * Save and forward a received message. Duplicates, from a reconnect or
+     * a replay, are dropped here before any UI work is done for them.
+     *
+     * @param args
+     */
     @Override
     public void onNewMessage(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onNewMessage(args);
+        if (!saveReceivedMessage(args)) return;
+
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onNewMessage(args);
+    }
+
+    /**
+     * @return false if the message is a duplicate
+     */
+    private boolean saveReceivedMessage(Object... args) {
+        if (args.length == 0 || !(args[0] instanceof JSONObject)) return true;
+
+        JSONObject data = (JSONObject) args[0];
+        try {
+            ChatMessage chatMessage =
+                    ChatMessage.fromJson(data, ChatMessage.TYPE_MESSAGE_RECEIVED);
+
+            if (!mDeduplicator.add(chatMessage.getId())) {
+                Log.i(TAG, "onNewMessage: dropped duplicate " + chatMessage.getId());
+                return false;
+            }
+
+            mLocalDataSource.saveMessage(chatMessage);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+        }
+
+        return true;
+    }
+
+    /**
+     * Save and forward an edit. Edits of messages that aren't stored, or
+     * that come from someone else than the sender, are dropped.
+     *
+     * @param args
+     */
+    @Override
+    public void onMessageEdited(Object... args) {
+        if (!saveReceivedUpdate(false, args)) return;
+
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onMessageEdited(args);
+    }
+
+    /**
+     * Save and forward a delete, dropped like edits are.
+     *
+     * @param args
+     */
+    @Override
+    public void onMessageDeleted(Object... args) {
+        if (!saveReceivedUpdate(true, args)) return;
+
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onMessageDeleted(args);
+    }
+
+    /**
+     * @return false if the update was dropped
+     */
+    private boolean saveReceivedUpdate(boolean delete, Object... args) {
+        if (args.length == 0 || !(args[0] instanceof JSONObject)) return false;
+
+        JSONObject data = (JSONObject) args[0];
+        try {
+            ChatMessage chatMessage = mLocalDataSource.getMessage(data.getString("id"));
+            if (chatMessage == null
+                    || chatMessage.isDeleted()
+                    || !data.getString("username").equals(chatMessage.getUsername())) {
+                return false;
+            }
+
+            if (delete) {
+                chatMessage.delete();
+                removeReactions(chatMessage.getId());
+            } else {
+                chatMessage.setMessage(data.getString("message"));
+                chatMessage.setEdited(true);
+            }
+
+            mLocalDataSource.updateMessage(chatMessage);
+            return true;
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+            return false;
+        }
     }
 
     @Override
     public void onUserJoined(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onUserJoined(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onUserJoined(args);
     }
 
     @Override
     public void onUserLeft(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onUserLeft(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onUserLeft(args);
     }
 
     @Override
     public void onTyping(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onTyping(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onTyping(args);
     }
 
     @Override
     public void onStopTyping(Object... args) {
-        if (mPresenterEventListener != null)
-            mPresenterEventListener.onStopTyping(args);
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onStopTyping(args);
+    }
+
+    /**
+     * Record and forward a read receipt. Receipts keep coming while no
+     * screen listens, so the repository is where they're kept.
+     *
+     * @param args
+     */
+    @Override
+    public void onRead(Object... args) {
+        saveReadWatermark(args);
+
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onRead(args);
+    }
+
+    private void saveReadWatermark(Object... args) {
+        if (args.length == 0 || !(args[0] instanceof JSONObject)) return;
+
+        JSONObject data = (JSONObject) args[0];
+        String username = data.optString("username", null);
+        String messageId = data.optString("messageId", null);
+        if (username == null || messageId == null) return;
+
+        synchronized (mReadWatermarks) {
+            mReadWatermarks.put(username, messageId);
+        }
+    }
+
+    /**
+     * Get the latest message each user has read, from the read receipts
+     * received since the app started.
+     *
+     * @return Copy mapping username to message id
+     */
+    @NonNull
+    public Map<String, String> getReadWatermarks() {
+        synchronized (mReadWatermarks) {
+            return new HashMap<>(mReadWatermarks);
+        }
+    }
+
+    /**
+     * Record and forward a reaction, kept like read receipts are.
+     *
+     * @param args
+     */
+    @Override
+    public void onReaction(Object... args) {
+        saveReaction(args);
+
+        EventListener listener = mPresenterEventListener.get();
+        if (listener != null) listener.onReaction(args);
+    }
+
+    private void saveReaction(Object... args) {
+        if (args.length == 0 || !(args[0] instanceof JSONObject)) return;
+
+        JSONObject data = (JSONObject) args[0];
+        try {
+            // The user's own reactions are recorded when they're sent
+            if (data.getString("username").equals(User.getUsername())) return;
+
+            String messageId = data.getString("messageId");
+            int delta = data.getBoolean("added") ? 1 : -1;
+            synchronized (mReactions) {
+                getOrCreateReactions(messageId).add(data.getString("emoji"), delta);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage());
+        }
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Provides the key the message store is encrypted with.
+ *
+ * The key is a random AES key. From Marshmallow on, it's saved wrapped by
+ * a key that never leaves the Android Keystore. Before that, it's saved in
+ * private preferences and only protected by the app sandbox. Unwrapping
+ * goes through the Keystore, so it's done once and the key is cached in
+ * memory afterwards.
+ */
+final class DatabaseKeyProvider {
+
+    private static final String PREFS_NAME = "database_key";
+    private static final String PREF_WRAPPED_KEY = "wrapped_key";
+    private static final String PREF_RAW_KEY = "raw_key";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String WRAPPING_KEY_ALIAS = "chat_database_wrapping_key";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+
+    private static SecretKey sKey;
+
+    private DatabaseKeyProvider() {
+    }
+
+    /**
+     * Returns the database key, creating it on first use.
+     *
+     * @param context
+     * @return SecretKey, or null where AES-GCM isn't available
+     */
+    @WorkerThread
+    @Nullable
+    static synchronized SecretKey unlock(@NonNull Context context)
+            throws GeneralSecurityException, IOException {
+        // GCMParameterSpec is only available from KitKat on
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return null;
+        if (sKey != null) return sKey;
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            sKey = unlockWrapped(prefs);
+        } else {
+            sKey = unlockRaw(prefs);
+        }
+
+        return sKey;
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static SecretKey unlockWrapped(SharedPreferences prefs)
+            throws GeneralSecurityException, IOException {
+        SecretKey wrappingKey = getWrappingKey();
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        String saved = prefs.getString(PREF_WRAPPED_KEY, null);
+
+        if (saved != null) {
+            byte[] wrapped = Base64.decode(saved, Base64.NO_WRAP);
+            cipher.init(Cipher.DECRYPT_MODE, wrappingKey,
+                    new GCMParameterSpec(TAG_LENGTH_BITS, wrapped, 0, IV_LENGTH));
+            byte[] key = cipher.doFinal(wrapped, IV_LENGTH, wrapped.length - IV_LENGTH);
+            return new SecretKeySpec(key, "AES");
+        }
+
+        byte[] key = newKey();
+
+        // The Keystore picks the IV
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey);
+        byte[] iv = cipher.getIV();
+        byte[] ciphertext = cipher.doFinal(key);
+        byte[] wrapped = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, wrapped, 0, iv.length);
+        System.arraycopy(ciphertext, 0, wrapped, iv.length, ciphertext.length);
+
+        prefs.edit().putString(PREF_WRAPPED_KEY, Base64.encodeToString(wrapped, Base64.NO_WRAP))
+                .commit();
+        return new SecretKeySpec(key, "AES");
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static SecretKey getWrappingKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+
+        if (keyStore.containsAlias(WRAPPING_KEY_ALIAS)) {
+            return (SecretKey) keyStore.getKey(WRAPPING_KEY_ALIAS, null);
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(WRAPPING_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    private static SecretKey unlockRaw(SharedPreferences prefs) {
+        String saved = prefs.getString(PREF_RAW_KEY, null);
+
+        if (saved != null) {
+            return new SecretKeySpec(Base64.decode(saved, Base64.NO_WRAP), "AES");
+        }
+
+        byte[] key = newKey();
+        prefs.edit().putString(PREF_RAW_KEY, Base64.encodeToString(key, Base64.NO_WRAP)).commit();
+        return new SecretKeySpec(key, "AES");
+    }
+
+    private static byte[] newKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypts the payload of every message with AES-GCM.
+ *
+ * Each row gets its own random IV, stored in front of the ciphertext. The
+ * message id is authenticated along with it, so a payload copied into
+ * another row fails to decrypt. Ciphers are kept per thread, since
+ * creating one costs more than using it.
+ */
+class EncryptedMessageCodec implements MessageCodec {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MessageCodec mPlainCodec;
+    private final SecretKey mKey;
+    private final SecureRandom mRandom = new SecureRandom();
+    private final ThreadLocal<Cipher> mCipher = new ThreadLocal<>();
+
+    /**
+     * Use this constructor to create a new EncryptedMessageCodec.
+     *
+     * @param plainCodec {@link MessageCodec} that produces the plaintext
+     * @param key        AES key, already unlocked
+     */
+    EncryptedMessageCodec(@NonNull MessageCodec plainCodec, @NonNull SecretKey key) {
+        mPlainCodec = plainCodec;
+        mKey = key;
+    }
+
+    @NonNull
+    @Override
+    public byte[] encode(@NonNull ChatMessage chatMessage)
+            throws IOException, GeneralSecurityException {
+        byte[] plaintext = mPlainCodec.encode(chatMessage);
+        byte[] payload = new byte[IV_LENGTH + plaintext.length + TAG_LENGTH_BITS / 8];
+
+        byte[] iv = new byte[IV_LENGTH];
+        mRandom.nextBytes(iv);
+        System.arraycopy(iv, 0, payload, 0, IV_LENGTH);
+
+        Cipher cipher = getCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, mKey, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+        cipher.updateAAD(chatMessage.getId().getBytes(UTF_8));
+        cipher.doFinal(plaintext, 0, plaintext.length, payload, IV_LENGTH);
+
+        return payload;
+    }
+
+    @NonNull
+    @Override
+    public ChatMessage decode(@NonNull String id, int type, @NonNull byte[] payload)
+            throws IOException, GeneralSecurityException {
+        Cipher cipher = getCipher();
+        cipher.init(Cipher.DECRYPT_MODE, mKey,
+                new GCMParameterSpec(TAG_LENGTH_BITS, payload, 0, IV_LENGTH));
+        cipher.updateAAD(id.getBytes(UTF_8));
+        byte[] plaintext = cipher.doFinal(payload, IV_LENGTH, payload.length - IV_LENGTH);
+
+        return mPlainCodec.decode(id, type, plaintext);
+    }
+
+    private Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = mCipher.get();
+
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            mCipher.set(cipher);
+        }
+
+        return cipher;
+    }
+}
@@ -22,29 +22,103 @@
 
 package com.mayurrokade.chatapp.data.source.local;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.mayurrokade.chatapp.data.Attachment;
 import com.mayurrokade.chatapp.data.ChatMessage;
 import com.mayurrokade.chatapp.data.source.DataSource;
 import com.mayurrokade.chatapp.eventservice.EventListener;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Function;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
 
 /**
- * Local data source.
+ * Local data source. Every message sent or received is saved in a
+ * {@link MessageStore}, and the chat screen renders what's stored.
+ *
+ * Writes run one at a time on the write scheduler, never on the thread
+ * that received or sent the message. Queries are observable. Saving,
+ * editing or deleting a message invalidates them and they run again on
+ * the query scheduler. A burst of writes while a query is running only
+ * causes one more query.
+ *
+ * The store is kept within a {@link RetentionPolicy} by compaction on
+ * the write scheduler, every {@value #COMPACT_EVERY_SAVES} saves.
  */
 public class LocalDataSource implements DataSource {
 
+    private static final String TAG = LocalDataSource.class.getSimpleName();
+    private static final Object INVALIDATED = new Object();
+    private static final int COMPACT_EVERY_SAVES = 1000;
     private static LocalDataSource INSTANCE;
+    private final MessageStore mMessageStore;
+    private final MessageArchive mMessageArchive;
+    private final MessageCompactor mMessageCompactor;
+    private final StoreMetrics mStoreMetrics = new StoreMetrics();
+    private final AtomicInteger mSaves = new AtomicInteger();
+    private final AtomicBoolean mCompacting = new AtomicBoolean();
+    private volatile RetentionPolicy mRetentionPolicy = RetentionPolicy.DEFAULT;
+    private final Scheduler mQueryScheduler;
+    private final Scheduler mWriteScheduler;
+    private final FlowableProcessor<Object> mInvalidations =
+            PublishProcessor.create().toSerialized();
+
+    // Prevent direct instantiation
+    private LocalDataSource(@NonNull MessageStore messageStore,
+                            @NonNull Scheduler queryScheduler,
+                            @NonNull Scheduler writeScheduler) {
+        mMessageStore = messageStore;
+        mMessageArchive = new MessageArchive(messageStore, writeScheduler);
+        mMessageCompactor = new MessageCompactor(messageStore, mStoreMetrics);
+        mQueryScheduler = queryScheduler;
+        mWriteScheduler = writeScheduler;
+    }
 
-    public static LocalDataSource getInstance() {
+    /**
+     * Returns single instance of this class, creating it if necessary.
+     *
+     * @param messageStore   {@link MessageStore} messages are saved in
+     * @param queryScheduler Scheduler queries run on
+     * @param writeScheduler Single threaded scheduler writes run on
+     * @return
+     */
+    public static LocalDataSource getInstance(@NonNull MessageStore messageStore,
+                                              @NonNull Scheduler queryScheduler,
+                                              @NonNull Scheduler writeScheduler) {
         if (INSTANCE == null) {
-            INSTANCE = new LocalDataSource();
+            INSTANCE = new LocalDataSource(messageStore, queryScheduler, writeScheduler);
         }
 
         return INSTANCE;
     }
 
+    /**
+     * Used to force {@link #getInstance(MessageStore, Scheduler, Scheduler)}
+     * to create a new instance next time it's called.
+     */
+    @VisibleForTesting
+    public static void destroyInstance() {
+        INSTANCE = null;
+    }
+
     @Override
     public void onConnect(Object... args) {
 
@@ -91,15 +165,300 @@ public class LocalDataSource implements DataSource {
     }
 
     @Override
-    public void setEventListener(EventListener eventListener) {
+    public void onRead(Object... args) {
+
+    }
+
+    @Override
+    public void onReaction(Object... args) {
+
+    }
+
+    @Override
+    public void onMessageEdited(Object... args) {
+
+    }
+
+    @Override
+    public void onMessageDeleted(Object... args) {
 
     }
 
+    @Override
+    public Disposable setEventListener(@NonNull EventListener eventListener) {
+        // Nothing to listen to, the local data source has no server events
+        return Disposables.disposed();
+    }
+
     @Override
     public Flowable<ChatMessage> sendMessage(ChatMessage chatMessage) {
         return null;
     }
 
+    /**
+     * Get the most recent messages, oldest first. The list is emitted
+     * once right away and again each time messages are saved.
+     *
+     * @param limit Maximum number of messages
+     * @return Flowable that never completes
+     */
+    @Override
+    public Flowable<List<ChatMessage>> getMessages(final int limit) {
+        return query(new Callable<List<ChatMessage>>() {
+            @Override
+            public List<ChatMessage> call() throws Exception {
+                return mMessageStore.getLatest(limit);
+            }
+        });
+    }
+
+    /**
+     * Get the most recent replies of a thread, oldest first, emitted
+     * like {@link #getMessages(int)}.
+     *
+     * @param parentId Id of the message the thread started on
+     * @param limit    Maximum number of replies
+     * @return Flowable that never completes
+     */
+    @Override
+    public Flowable<List<ChatMessage>> getReplies(final String parentId, final int limit) {
+        return query(new Callable<List<ChatMessage>>() {
+            @Override
+            public List<ChatMessage> call() throws Exception {
+                return mMessageStore.getReplies(parentId, limit);
+            }
+        });
+    }
+
+    /**
+     * Get the ids of the most recent messages, replies included, read
+     * once on the query scheduler.
+     *
+     * @param limit Maximum number of ids
+     * @return Flowable emitting the ids newest first, then completing
+     */
+    @Override
+    public Flowable<List<String>> getRecentMessageIds(final int limit) {
+        return Flowable.fromCallable(new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                return mMessageStore.getLatestIds(limit);
+            }
+        }).subscribeOn(mQueryScheduler);
+    }
+
+    private Flowable<List<ChatMessage>> query(final Callable<List<ChatMessage>> query) {
+        return mInvalidations
+                .startWith(INVALIDATED)
+                .onBackpressureLatest()
+                .observeOn(mQueryScheduler, false, 1)
+                .map(new Function<Object, List<ChatMessage>>() {
+                    @Override
+                    public List<ChatMessage> apply(Object invalidated) throws Exception {
+                        return query.call();
+                    }
+                });
+    }
+
+    /**
+     * Save a message on the write scheduler, unless it's already saved.
+     *
+     * @param chatMessage {@link ChatMessage}
+     */
+    @Override
+    public void saveMessage(final ChatMessage chatMessage) {
+        mWriteScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                if (!mMessageStore.insert(chatMessage)) return;
+
+                mInvalidations.onNext(INVALIDATED);
+
+                if (mSaves.getAndIncrement() % COMPACT_EVERY_SAVES == 0) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * Save a batch of messages in one transaction on the write scheduler,
+     * skipping the ones already saved. Queries run again once if any were
+     * new. Blocks until the batch is saved.
+     *
+     * @param chatMessages messages, oldest first
+     * @return number of messages saved
+     */
+    public int saveMessages(final List<ChatMessage> chatMessages) {
+        return Single.fromCallable(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int saved = mMessageStore.insertAll(chatMessages);
+                if (saved > 0) {
+                    mInvalidations.onNext(INVALIDATED);
+                }
+
+                return saved;
+            }
+        }).subscribeOn(mWriteScheduler).blockingGet();
+    }
+
+    @Override
+    public boolean hasMessage(String id) {
+        return mMessageStore.contains(id);
+    }
+
+    /**
+     * Read a message once the writes queued before have run, so a message
+     * saved or updated a moment ago is found as it is now. Blocks, and
+     * must not be called on the write scheduler.
+     *
+     * @param id Id of the message
+     * @return {@link ChatMessage} or null if it isn't stored
+     */
+    @Override
+    public ChatMessage getMessage(final String id) {
+        return Maybe.fromCallable(new Callable<ChatMessage>() {
+            @Override
+            public ChatMessage call() throws Exception {
+                return mMessageStore.get(id);
+            }
+        }).subscribeOn(mWriteScheduler).blockingGet();
+    }
+
+    /**
+     * Update a message on the write scheduler. Queries run again, so
+     * one that read the row before the update doesn't have the last say.
+     *
+     * @param chatMessage {@link ChatMessage}
+     */
+    @Override
+    public void updateMessage(final ChatMessage chatMessage) {
+        mWriteScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                if (mMessageStore.update(chatMessage)) {
+                    mInvalidations.onNext(INVALIDATED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Change how much history is kept, and compact the store to it.
+     *
+     * @param retentionPolicy {@link RetentionPolicy}
+     */
+    public void setRetentionPolicy(@NonNull RetentionPolicy retentionPolicy) {
+        mRetentionPolicy = retentionPolicy;
+        compact();
+    }
+
+    /**
+     * Compact the store on the write scheduler, unless a compaction
+     * is running already. Every batch is its own task, so writes queued
+     * meanwhile run between batches. Queries run again if messages were
+     * deleted.
+     */
+    public void compact() {
+        if (!mCompacting.compareAndSet(false, true)) return;
+
+        final MessageCompactor.Compaction compaction =
+                mMessageCompactor.start(mRetentionPolicy, System.currentTimeMillis());
+
+        mWriteScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                boolean more = false;
+                try {
+                    more = compaction.runBatch();
+                } finally {
+                    if (!more) mCompacting.set(false);
+                }
+
+                if (more) {
+                    mWriteScheduler.scheduleDirect(this);
+                    return;
+                }
+
+                int deleted = compaction.getDeleted();
+                if (deleted > 0) {
+                    Log.i(TAG, "compact: deleted " + deleted + " messages in "
+                            + mStoreMetrics.getLastCompactionMillis() + "ms, "
+                            + mStoreMetrics.getSizeBytes() + " bytes left");
+                    mInvalidations.onNext(INVALIDATED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the size of the store and how compaction is doing.
+     *
+     * @return {@link StoreMetrics}
+     */
+    public StoreMetrics getStoreMetrics() {
+        return mStoreMetrics;
+    }
+
+    /**
+     * Export the whole history as line delimited json, for users and support.
+     * Runs on the query scheduler in constant memory.
+     *
+     * @param out  Stream to write the archive to, closed when done
+     * @param gzip Whether to gzip the archive
+     * @return Flowable emitting the number of messages exported so far
+     */
+    public Flowable<Long> exportMessages(OutputStream out, boolean gzip) {
+        return mMessageArchive.export(out, gzip).subscribeOn(mQueryScheduler);
+    }
+
+    /**
+     * Import an archive written by {@link #exportMessages(OutputStream, boolean)}.
+     * It's read on the query scheduler, and each batch is one transaction
+     * and its own task on the write scheduler, so saves run between
+     * batches. Also loads fixtures for performance tests. Queries run
+     * again once it's done.
+     *
+     * @param in Stream of the archive, gzipped or not, closed when done
+     * @return Flowable emitting the number of messages imported so far
+     */
+    public Flowable<Long> importMessages(InputStream in) {
+        return mMessageArchive.importFrom(in)
+                .subscribeOn(mQueryScheduler)
+                .doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        mInvalidations.onNext(INVALIDATED);
+                    }
+                });
+    }
+
+    /**
+     * Copy attachment media into the {@link MediaCache}, so it can be
+     * streamed from disk when sending.
+     *
+     * @param in       Stream of the media, closed when done
+     * @param mimeType Mime type of the media
+     * @return Flowable emitting the {@link Attachment}
+     */
+    @Override
+    public Flowable<Attachment> saveAttachment(final InputStream in, final String mimeType) {
+        return Flowable.fromCallable(new Callable<Attachment>() {
+            @Override
+            public Attachment call() throws Exception {
+                MediaCache mediaCache = MediaCache.getInstance();
+                String hash = mediaCache.put(in);
+                return new Attachment(hash, mimeType, mediaCache.getFile(hash).length());
+            }
+        });
+    }
+
+    @Override
+    public void setEncryptionPassphrase(String passphrase) {
+        // Not required because the local store has its own key.
+    }
+
     @Override
     public void onTyping() {
 
@@ -110,6 +469,16 @@ public class LocalDataSource implements DataSource {
 
     }
 
+    @Override
+    public void sendReadReceipt(String messageId) {
+
+    }
+
+    @Override
+    public void sendReaction(String messageId, String emoji, boolean added) {
+
+    }
+
     @Override
     public void connect(String username) throws URISyntaxException {
 
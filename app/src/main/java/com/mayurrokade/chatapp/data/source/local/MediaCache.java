@@ -0,0 +1,291 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+
+import com.mayurrokade.chatapp.util.Hex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Two level cache for attachment media, keyed by the SHA-256 of the content.
+ *
+ * Media is kept on disk as received, and decoded bitmaps are kept in a
+ * memory LRU bounded by bytes. Bitmaps are downsampled while decoding, so
+ * a large photo never takes more memory than the size it's shown at.
+ */
+public class MediaCache {
+
+    private static final String DIRECTORY = "media";
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static MediaCache INSTANCE;
+
+    private final File mDirectory;
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    private MediaCache(Context context) {
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+
+        // Use an eighth of the app's memory for decoded bitmaps
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Create the single instance of this class. Cheap enough to call
+     * from {@link android.app.Application#onCreate()}, nothing is read
+     * from disk until media is requested.
+     *
+     * @param context
+     */
+    public static synchronized void init(@NonNull Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new MediaCache(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * Returns the single instance of this class.
+     * {@link #init(Context)} must have been called first.
+     *
+     * @return MediaCache
+     */
+    @NonNull
+    public static synchronized MediaCache getInstance() {
+        if (INSTANCE == null) {
+            throw new IllegalStateException("MediaCache.init() has not been called");
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the file holding the media for a content hash.
+     * The file only exists if the media has been cached.
+     *
+     * @param contentHash
+     * @return File
+     */
+    @NonNull
+    public File getFile(@NonNull String contentHash) {
+        return new File(mDirectory, contentHash);
+    }
+
+    public boolean containsFile(@NonNull String contentHash) {
+        return getFile(contentHash).exists();
+    }
+
+    /**
+     * Create an empty file to stream incoming media into. Once complete,
+     * it's moved into the cache with {@link #commit(File, String)}.
+     *
+     * @return File
+     * @throws IOException
+     */
+    @WorkerThread
+    @NonNull
+    public File createTempFile() throws IOException {
+        ensureDirectory();
+        return File.createTempFile("incoming", ".tmp", mDirectory);
+    }
+
+    /**
+     * Move a fully written temp file into the cache, if its content
+     * matches the expected hash. The temp file is deleted either way.
+     *
+     * @param tempFile     File created with {@link #createTempFile()}
+     * @param expectedHash Hash sent along with the media
+     * @return true if the media was cached
+     * @throws IOException
+     */
+    @WorkerThread
+    public boolean commit(@NonNull File tempFile, @NonNull String expectedHash)
+            throws IOException {
+        try {
+            String hash = hash(tempFile);
+            if (!hash.equals(expectedHash)) return false;
+
+            File target = getFile(hash);
+            return target.exists() || tempFile.renameTo(target);
+        } finally {
+            if (tempFile.exists()) tempFile.delete();
+        }
+    }
+
+    /**
+     * Stream media into the cache, hashing it on the way.
+     * The stream is closed when done.
+     *
+     * @param in Stream of the media
+     * @return content hash of the media
+     * @throws IOException
+     */
+    @WorkerThread
+    @NonNull
+    public String put(@NonNull InputStream in) throws IOException {
+        File tempFile = createTempFile();
+        MessageDigest digest = newDigest();
+        OutputStream out = new FileOutputStream(tempFile);
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+
+        String hash = Hex.encode(digest.digest());
+        File target = getFile(hash);
+
+        if (target.exists() || !tempFile.renameTo(target)) {
+            tempFile.delete();
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns the decoded bitmap if it's in memory. Safe to call on the main thread.
+     *
+     * @param contentHash
+     * @return Bitmap or null
+     */
+    @Nullable
+    public Bitmap getBitmap(@NonNull String contentHash) {
+        return mMemoryCache.get(contentHash);
+    }
+
+    /**
+     * Returns the bitmap for a content hash, decoding it from disk if it's
+     * not in memory. The bitmap is downsampled to roughly the requested size.
+     *
+     * @param contentHash
+     * @param reqWidth    Width the bitmap is shown at, in pixels
+     * @param reqHeight   Height the bitmap is shown at, in pixels
+     * @return Bitmap or null if the media isn't cached or can't be decoded
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap loadBitmap(@NonNull String contentHash, int reqWidth, int reqHeight) {
+        Bitmap bitmap = mMemoryCache.get(contentHash);
+        if (bitmap != null) return bitmap;
+
+        File file = getFile(contentHash);
+        if (!file.exists()) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+
+        options.inSampleSize = calculateInSampleSize(
+                options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+
+        if (bitmap != null) {
+            mMemoryCache.put(contentHash, bitmap);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Returns the hex SHA-256 of a file.
+     *
+     * @param file
+     * @return content hash
+     * @throws IOException
+     */
+    @WorkerThread
+    @NonNull
+    public static String hash(@NonNull File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        return Hex.encode(digest.digest());
+    }
+
+    /**
+     * Largest power of two that keeps the decoded size at or above the requested size.
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        while (width / (inSampleSize * 2) >= reqWidth
+                && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    private void ensureDirectory() throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+
+/**
+ * Streams the messages of a {@link MessageStore} to and from an archive.
+ *
+ * An archive has one json object per line, with the same fields the
+ * server sends plus the type, oldest message first. It may be gzipped;
+ * imports detect that on their own. Both directions hold only one batch
+ * of messages at a time, so they run in constant memory however long
+ * the history is. Progress is emitted as the number of messages done
+ * after every batch.
+ */
+class MessageArchive {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final MessageStore mMessageStore;
+    private final Scheduler mWriteScheduler;
+
+    /**
+     * Use this constructor to create a new MessageArchive.
+     *
+     * @param messageStore   {@link MessageStore} to export from or import into
+     * @param writeScheduler Single threaded scheduler imported batches are inserted on
+     */
+    MessageArchive(@NonNull MessageStore messageStore, @NonNull Scheduler writeScheduler) {
+        mMessageStore = messageStore;
+        mWriteScheduler = writeScheduler;
+    }
+
+    /**
+     * Write every stored message to a stream. The stream is closed when done.
+     *
+     * @param out  Stream to write the archive to
+     * @param gzip Whether to gzip the archive
+     * @return Flowable emitting the number of messages written so far
+     */
+    @NonNull
+    Flowable<Long> export(@NonNull final OutputStream out, final boolean gzip) {
+        return Flowable.create(new FlowableOnSubscribe<Long>() {
+            @Override
+            public void subscribe(final FlowableEmitter<Long> emitter) throws Exception {
+                final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out, UTF_8),
+                        BUFFER_SIZE);
+                final long[] count = new long[1];
+
+                try {
+                    mMessageStore.forEach(new MessageStore.Visitor() {
+                        @Override
+                        public boolean visit(@NonNull ChatMessage chatMessage) throws IOException {
+                            if (emitter.isCancelled()) return false;
+
+                            try {
+                                writer.write(toJson(chatMessage).toString());
+                            } catch (JSONException e) {
+                                throw new IOException(e);
+                            }
+                            writer.write('\n');
+
+                            if (++count[0] % BATCH_SIZE == 0) {
+                                emitter.onNext(count[0]);
+                            }
+                            return true;
+                        }
+                    });
+                } finally {
+                    writer.close();
+                }
+
+                emitter.onNext(count[0]);
+                emitter.onComplete();
+            }
+        }, BackpressureStrategy.LATEST);
+    }
+
+    /**
+     * Read an archive into the store, one transaction per batch.
+     * Messages already stored are skipped, so importing twice is harmless.
+     * The stream is closed when done.
+     *
+     * The archive is read on the subscribing thread, and every batch is
+     * inserted as its own task on the write scheduler, so writes queued
+     * meanwhile run between batches.
+     *
+     * If a line can't be read the import fails, but the batches
+     * before it stay imported.
+     *
+     * @param in Stream of the archive, gzipped or not
+     * @return Flowable emitting the number of messages read so far
+     */
+    @NonNull
+    Flowable<Long> importFrom(@NonNull final InputStream in) {
+        return Flowable.create(new FlowableOnSubscribe<Long>() {
+            @Override
+            public void subscribe(FlowableEmitter<Long> emitter) throws Exception {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(decompress(in), UTF_8), BUFFER_SIZE);
+                List<ChatMessage> batch = new ArrayList<>(BATCH_SIZE);
+                long count = 0;
+                long lineNumber = 0;
+
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null && !emitter.isCancelled()) {
+                        lineNumber++;
+                        if (line.isEmpty()) continue;
+
+                        try {
+                            batch.add(fromJson(new JSONObject(line)));
+                        } catch (JSONException e) {
+                            throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                        }
+
+                        if (batch.size() == BATCH_SIZE) {
+                            insertBatch(batch);
+                            count += batch.size();
+                            batch.clear();
+                            emitter.onNext(count);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+
+                if (!batch.isEmpty()) {
+                    insertBatch(batch);
+                    count += batch.size();
+                }
+
+                emitter.onNext(count);
+                emitter.onComplete();
+            }
+        }, BackpressureStrategy.LATEST);
+    }
+
+    /**
+     * Insert a batch on the write scheduler, and wait until it's done.
+     */
+    private void insertBatch(final List<ChatMessage> batch) {
+        Single.fromCallable(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return mMessageStore.insertAll(batch);
+            }
+        }).subscribeOn(mWriteScheduler).blockingGet();
+    }
+
+    @NonNull
+    static JSONObject toJson(@NonNull ChatMessage chatMessage) throws JSONException {
+        JSONObject data = new JSONObject()
+                .put("id", chatMessage.getId())
+                .put("username", chatMessage.getUsername())
+                .put("message", chatMessage.getMessage())
+                .put("type", chatMessage.getType());
+
+        Attachment attachment = chatMessage.getAttachment();
+        if (attachment != null) {
+            data.put("attachment", attachment.toJson());
+        }
+
+        if (chatMessage.getParentId() != null) data.put("parentId", chatMessage.getParentId());
+        if (chatMessage.isEdited()) data.put("edited", true);
+        if (chatMessage.isDeleted()) data.put("deleted", true);
+
+        return data;
+    }
+
+    @NonNull
+    static ChatMessage fromJson(@NonNull JSONObject data) throws JSONException {
+        // Unlike messages from the server, stored ones may lack a text
+        ChatMessage chatMessage = new ChatMessage(
+                data.getString("id"),
+                data.optString("username", null),
+                data.optString("message", null),
+                data.getInt("type"));
+
+        JSONObject attachment = data.optJSONObject("attachment");
+        if (attachment != null) {
+            chatMessage.setAttachment(Attachment.fromJson(attachment));
+        }
+
+        chatMessage.setParentId(data.optString("parentId", null));
+        chatMessage.setEdited(data.optBoolean("edited"));
+        if (data.optBoolean("deleted")) chatMessage.delete();
+
+        return chatMessage;
+    }
+
+    /**
+     * Unwrap gzip if the stream starts with its magic number.
+     */
+    private static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+
+        boolean gzipped = first == (GZIPInputStream.GZIP_MAGIC & 0xff)
+                && second == (GZIPInputStream.GZIP_MAGIC >> 8);
+        return gzipped ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    }
+}
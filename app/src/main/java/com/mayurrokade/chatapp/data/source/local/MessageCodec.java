@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Turns the content of a message into the payload stored in its row,
+ * and back. The id and type are stored in their own columns.
+ */
+interface MessageCodec {
+
+    @NonNull
+    byte[] encode(@NonNull ChatMessage chatMessage)
+            throws IOException, GeneralSecurityException;
+
+    @NonNull
+    ChatMessage decode(@NonNull String id, int type, @NonNull byte[] payload)
+            throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the oldest messages until the store is within a
+ * {@link RetentionPolicy}: first those older than the maximum age,
+ * then those past the maximum count, then as many as it takes to fit
+ * in the maximum size.
+ *
+ * Messages are deleted in small batches, each its own short
+ * transaction, and the pages they freed are given back to the file
+ * system after every batch. A {@link Compaction} runs one batch at a
+ * time, so each batch can be its own task on the write scheduler and
+ * writes queued meanwhile run between batches. A message saved on the
+ * event path then waits for at most one batch.
+ */
+class MessageCompactor {
+
+    static final int BATCH_SIZE = 250;
+
+    private static final int STAGE_AGE = 0;
+    private static final int STAGE_COUNT = 1;
+    private static final int STAGE_SIZE = 2;
+    private static final int STAGE_DONE = 3;
+
+    private final MessageStore mMessageStore;
+    private final StoreMetrics mMetrics;
+
+    /**
+     * Use this constructor to create a new MessageCompactor.
+     *
+     * @param messageStore {@link MessageStore} to compact
+     * @param metrics      {@link StoreMetrics} each compaction is reported to
+     */
+    MessageCompactor(@NonNull MessageStore messageStore, @NonNull StoreMetrics metrics) {
+        mMessageStore = messageStore;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Compact the store now, every batch in a row.
+     *
+     * @param policy {@link RetentionPolicy} to enforce
+     * @param now    Current time, as {@link System#currentTimeMillis()}
+     * @return number of messages deleted
+     */
+    @WorkerThread
+    int compact(@NonNull RetentionPolicy policy, long now) {
+        Compaction compaction = start(policy, now);
+        while (compaction.runBatch()) {
+            // Until the store is within the policy
+        }
+
+        return compaction.getDeleted();
+    }
+
+    /**
+     * Start a compaction, to be run a batch at a time.
+     *
+     * @param policy {@link RetentionPolicy} to enforce
+     * @param now    Current time, as {@link System#currentTimeMillis()}
+     * @return {@link Compaction}
+     */
+    Compaction start(@NonNull RetentionPolicy policy, long now) {
+        return new Compaction(policy, now - policy.getMaxAgeMillis());
+    }
+
+    /**
+     * A compaction of the store: first the messages older than the
+     * maximum age, then those past the maximum count, then those past
+     * the maximum size. Not thread safe, run every batch on the same
+     * single threaded scheduler.
+     */
+    class Compaction {
+        private final RetentionPolicy mPolicy;
+        private final long mCreatedBefore;
+        private final long mStartedAt = System.nanoTime();
+        private int mStage = STAGE_AGE;
+        private int mDeleted;
+
+        private Compaction(RetentionPolicy policy, long createdBefore) {
+            mPolicy = policy;
+            mCreatedBefore = createdBefore;
+        }
+
+        /**
+         * Delete the next batch of messages, in its own transaction.
+         *
+         * @return false once the store is within the policy
+         */
+        @WorkerThread
+        boolean runBatch() {
+            while (mStage != STAGE_DONE) {
+                int batch = deleteNextBatch();
+                if (batch > 0) {
+                    mDeleted += batch;
+                    return true;
+                }
+
+                mStage++;
+            }
+
+            mMetrics.onCompacted(mDeleted,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartedAt),
+                    mMessageStore.getSizeBytes(), mMessageStore.count());
+            return false;
+        }
+
+        /**
+         * Returns the number of messages deleted so far.
+         *
+         * @return deleted
+         */
+        int getDeleted() {
+            return mDeleted;
+        }
+
+        private int deleteNextBatch() {
+            switch (mStage) {
+                case STAGE_AGE:
+                    return deleteBatch(mCreatedBefore, BATCH_SIZE);
+                case STAGE_COUNT:
+                    int excess = mMessageStore.count() - mPolicy.getMaxCount();
+                    return excess > 0
+                            ? deleteBatch(Long.MAX_VALUE, Math.min(excess, BATCH_SIZE))
+                            : 0;
+                default:
+                    return mMessageStore.getSizeBytes() > mPolicy.getMaxBytes()
+                            ? deleteBatch(Long.MAX_VALUE, BATCH_SIZE)
+                            : 0;
+            }
+        }
+    }
+
+    private int deleteBatch(long createdBefore, int limit) {
+        int deleted = mMessageStore.deleteOldest(createdBefore, limit);
+        if (deleted > 0) mMessageStore.reclaimSpace();
+        return deleted;
+    }
+}
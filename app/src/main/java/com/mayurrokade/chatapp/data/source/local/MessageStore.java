@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage behind {@link LocalDataSource}. Messages are kept in the order
+ * they were stored and are unique by {@link ChatMessage#getId()}.
+ */
+public interface MessageStore {
+
+    /**
+     * Receives stored messages one at a time, see {@link #forEach(Visitor)}.
+     */
+    interface Visitor {
+
+        /**
+         * @param chatMessage {@link ChatMessage}
+         * @return false to stop visiting
+         * @throws IOException
+         */
+        boolean visit(@NonNull ChatMessage chatMessage) throws IOException;
+    }
+
+    /**
+     * Store a message, unless a message with the same id is stored already.
+     *
+     * @param chatMessage {@link ChatMessage}
+     * @return true if the message was stored
+     */
+    @WorkerThread
+    boolean insert(@NonNull ChatMessage chatMessage);
+
+    @WorkerThread
+    boolean contains(@NonNull String id);
+
+    /**
+     * Returns the stored message with an id.
+     *
+     * @param id {@link ChatMessage#getId()}
+     * @return message or null if none is stored
+     */
+    @WorkerThread
+    @Nullable
+    ChatMessage get(@NonNull String id);
+
+    /**
+     * Replace the content of a stored message, keeping its place.
+     *
+     * @param chatMessage {@link ChatMessage} with the id of a stored message
+     * @return true if a message was updated
+     */
+    @WorkerThread
+    boolean update(@NonNull ChatMessage chatMessage);
+
+    /**
+     * Returns the most recent messages outside threads, oldest first,
+     * each with its {@link ChatMessage#getReplyCount()}.
+     *
+     * @param limit Maximum number of messages
+     * @return messages
+     */
+    @WorkerThread
+    @NonNull
+    List<ChatMessage> getLatest(int limit);
+
+    /**
+     * Returns the ids of the most recent messages, replies included,
+     * newest first. Nothing is decoded.
+     *
+     * @param limit Maximum number of ids
+     * @return ids
+     */
+    @WorkerThread
+    @NonNull
+    List<String> getLatestIds(int limit);
+
+    /**
+     * Returns the most recent replies of a thread, oldest first. They're
+     * looked up by their parent, not by going through the history.
+     *
+     * @param parentId {@link ChatMessage#getId()} of the message the thread started on
+     * @param limit    Maximum number of replies
+     * @return replies
+     */
+    @WorkerThread
+    @NonNull
+    List<ChatMessage> getReplies(@NonNull String parentId, int limit);
+
+    /**
+     * Store messages in a single transaction, skipping the ones
+     * whose id is stored already.
+     *
+     * @param chatMessages messages in the order they should be stored
+     * @return number of messages stored
+     */
+    @WorkerThread
+    int insertAll(@NonNull List<ChatMessage> chatMessages);
+
+    /**
+     * Visit every stored message, oldest first. Messages are read a page
+     * at a time, so memory doesn't grow with the size of the history.
+     *
+     * @param visitor {@link Visitor}
+     * @throws IOException if the visitor throws
+     */
+    @WorkerThread
+    void forEach(@NonNull Visitor visitor) throws IOException;
+
+    @WorkerThread
+    int count();
+
+    /**
+     * Returns the space stored messages take up on disk.
+     *
+     * @return bytes
+     */
+    @WorkerThread
+    long getSizeBytes();
+
+    /**
+     * Delete the oldest messages stored before a time.
+     *
+     * @param createdBefore Time as {@link System#currentTimeMillis()},
+     *                      or {@link Long#MAX_VALUE} for any message
+     * @param limit         Maximum number of messages to delete
+     * @return number of messages deleted
+     */
+    @WorkerThread
+    int deleteOldest(long createdBefore, int limit);
+
+    /**
+     * Give some of the space freed by deleted messages back to the file
+     * system. Each call does a bounded amount of work.
+     */
+    @WorkerThread
+    void reclaimSpace();
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.source.local.MessagesPersistenceContract.MessageEntry;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+public class MessagesDbHelper extends SQLiteOpenHelper {
+
+    public static final int DATABASE_VERSION = 3;
+
+    public static final String DATABASE_NAME = "Messages.db";
+
+    private static final String TAG = MessagesDbHelper.class.getSimpleName();
+
+    private static final String TEXT_TYPE = " TEXT";
+
+    private static final String INTEGER_TYPE = " INTEGER";
+
+    private static final String BLOB_TYPE = " BLOB";
+
+    private static final String COMMA_SEP = ",";
+
+    // _ID gives the order messages were stored in, message_id is the
+    // id shared with other clients, and parent_id the message_id of the
+    // thread a reply belongs to. Everything else is in the payload,
+    // written by a MessageCodec.
+    private static final String SQL_CREATE_ENTRIES =
+            "CREATE TABLE " + MessageEntry.TABLE_NAME + " (" +
+                    MessageEntry._ID + INTEGER_TYPE + " PRIMARY KEY AUTOINCREMENT" + COMMA_SEP +
+                    MessageEntry.COLUMN_NAME_MESSAGE_ID + TEXT_TYPE + " NOT NULL UNIQUE" + COMMA_SEP +
+                    MessageEntry.COLUMN_NAME_TYPE + INTEGER_TYPE + COMMA_SEP +
+                    MessageEntry.COLUMN_NAME_PAYLOAD + BLOB_TYPE + " NOT NULL" + COMMA_SEP +
+                    MessageEntry.COLUMN_NAME_CREATED_AT + INTEGER_TYPE + COMMA_SEP +
+                    MessageEntry.COLUMN_NAME_PARENT_ID + TEXT_TYPE +
+                    " )";
+
+    // Replies of a thread in the order they were stored, so opening a
+    // thread or counting its replies is a range scan of the index
+    private static final String SQL_CREATE_PARENT_INDEX =
+            "CREATE INDEX " + MessageEntry.INDEX_NAME_PARENT_ID +
+                    " ON " + MessageEntry.TABLE_NAME + " (" +
+                    MessageEntry.COLUMN_NAME_PARENT_ID + COMMA_SEP + MessageEntry._ID + ")";
+
+    // Table of version 1, kept while some of its rows couldn't be moved
+    private static final String PLAINTEXT_TABLE_NAME = MessageEntry.TABLE_NAME + "_v1";
+
+    private final MessageCodec mCodec;
+
+    public MessagesDbHelper(Context context, MessageCodec codec) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mCodec = codec;
+        // Let the UI read history while the socket thread writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Create new databases with incremental auto vacuum, so compaction
+     * can give freed pages back a few at a time. The mode can only be
+     * switched by a VACUUM, which is instant while the database is
+     * still empty. Existing databases are left as they are.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        boolean empty = DatabaseUtils.queryNumEntries(db, "sqlite_master") == 0;
+        if (empty && DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) == 0) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_ENTRIES);
+        db.execSQL(SQL_CREATE_PARENT_INDEX);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Creates the table as it is now, threads included
+            migratePlaintextColumns(db);
+        } else if (oldVersion < 3) {
+            addThreads(db);
+        }
+    }
+
+    /**
+     * Version 2 had no threads. Every message stored so far is outside one.
+     */
+    private void addThreads(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + MessageEntry.TABLE_NAME +
+                " ADD COLUMN " + MessageEntry.COLUMN_NAME_PARENT_ID + TEXT_TYPE);
+        db.execSQL(SQL_CREATE_PARENT_INDEX);
+    }
+
+    /**
+     * Move rows left behind by an earlier migration, once the codec
+     * can encrypt them.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (db.isReadOnly() || DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                "type = 'table' AND name = ?", new String[]{PLAINTEXT_TABLE_NAME}) == 0) {
+            return;
+        }
+
+        db.beginTransaction();
+        try {
+            movePlaintextRows(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Version 1 kept the content of messages in plaintext columns.
+     * Move it into the payload, so it's encrypted from now on.
+     */
+    private void migratePlaintextColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + MessageEntry.TABLE_NAME + " RENAME TO " + PLAINTEXT_TABLE_NAME);
+        onCreate(db);
+        movePlaintextRows(db);
+    }
+
+    /**
+     * Rows that can't be encrypted stay in the old table, and the next
+     * open tries them again. The table is dropped once it's empty.
+     */
+    private void movePlaintextRows(SQLiteDatabase db) {
+        Cursor c = db.query(PLAINTEXT_TABLE_NAME, new String[]{
+                MessageEntry._ID, MessageEntry.COLUMN_NAME_MESSAGE_ID, "username", "message",
+                MessageEntry.COLUMN_NAME_TYPE, "attachment_hash", "attachment_mime_type",
+                "attachment_size", MessageEntry.COLUMN_NAME_CREATED_AT
+        }, null, null, null, null, MessageEntry._ID);
+
+        int failed = 0;
+        try {
+            ContentValues values = new ContentValues();
+
+            while (c.moveToNext()) {
+                ChatMessage chatMessage = new ChatMessage(
+                        c.getString(1), c.getString(2), c.getString(3), c.getInt(4));
+                if (!c.isNull(5)) {
+                    chatMessage.setAttachment(
+                            new Attachment(c.getString(5), c.getString(6), c.getLong(7)));
+                }
+
+                values.clear();
+                values.put(MessageEntry._ID, c.getLong(0));
+                values.put(MessageEntry.COLUMN_NAME_MESSAGE_ID, chatMessage.getId());
+                values.put(MessageEntry.COLUMN_NAME_TYPE, chatMessage.getType());
+                values.put(MessageEntry.COLUMN_NAME_CREATED_AT, c.getLong(8));
+                try {
+                    values.put(MessageEntry.COLUMN_NAME_PAYLOAD, mCodec.encode(chatMessage));
+                } catch (IOException | GeneralSecurityException e) {
+                    // Kept behind in plaintext rather than lost
+                    Log.e(TAG, "movePlaintextRows: " + e.getMessage());
+                    failed++;
+                    continue;
+                }
+
+                db.insertWithOnConflict(MessageEntry.TABLE_NAME, null, values,
+                        SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        } finally {
+            c.close();
+        }
+
+        if (failed == 0) {
+            db.execSQL("DROP TABLE " + PLAINTEXT_TABLE_NAME);
+        } else {
+            // Rows keep their _ID when they're moved
+            db.execSQL("DELETE FROM " + PLAINTEXT_TABLE_NAME + " WHERE " + MessageEntry._ID
+                    + " IN (SELECT " + MessageEntry._ID + " FROM " + MessageEntry.TABLE_NAME + ")");
+        }
+    }
+}
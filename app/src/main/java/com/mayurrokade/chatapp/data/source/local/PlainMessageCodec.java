@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Stores the content of a message as is.
+ *
+ * Flags come last, so payloads stored before they existed still decode.
+ */
+class PlainMessageCodec implements MessageCodec {
+
+    private static final int FLAG_EDITED = 1;
+    private static final int FLAG_DELETED = 1 << 1;
+
+    @NonNull
+    @Override
+    public byte[] encode(@NonNull ChatMessage chatMessage) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        writeNullableString(out, chatMessage.getUsername());
+        writeNullableString(out, chatMessage.getMessage());
+
+        Attachment attachment = chatMessage.getAttachment();
+        out.writeBoolean(attachment != null);
+        if (attachment != null) {
+            out.writeUTF(attachment.getContentHash());
+            writeNullableString(out, attachment.getMimeType());
+            out.writeLong(attachment.getSize());
+        }
+
+        int flags = (chatMessage.isEdited() ? FLAG_EDITED : 0)
+                | (chatMessage.isDeleted() ? FLAG_DELETED : 0);
+        out.writeByte(flags);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @NonNull
+    @Override
+    public ChatMessage decode(@NonNull String id, int type, @NonNull byte[] payload)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        ChatMessage chatMessage = new ChatMessage(
+                id, readNullableString(in), readNullableString(in), type);
+
+        if (in.readBoolean()) {
+            chatMessage.setAttachment(
+                    new Attachment(in.readUTF(), readNullableString(in), in.readLong()));
+        }
+
+        int flags = in.available() > 0 ? in.readByte() : 0;
+        chatMessage.setEdited((flags & FLAG_EDITED) != 0);
+        if ((flags & FLAG_DELETED) != 0) chatMessage.delete();
+
+        return chatMessage;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on how much history the local store keeps. Messages past any
+ * of the limits are deleted oldest first by compaction.
+ */
+public class RetentionPolicy {
+
+    /**
+     * Keeps three months of history, within 50,000 messages and 32 MB.
+     */
+    public static final RetentionPolicy DEFAULT =
+            new RetentionPolicy(TimeUnit.DAYS.toMillis(90), 50000, 32L * 1024 * 1024);
+
+    private final long maxAgeMillis;
+    private final int maxCount;
+    private final long maxBytes;
+
+    /**
+     * Use this constructor to create a new RetentionPolicy.
+     *
+     * @param maxAgeMillis How long messages are kept after being stored
+     * @param maxCount     Maximum number of messages
+     * @param maxBytes     Maximum size of the store on disk
+     */
+    public RetentionPolicy(long maxAgeMillis, int maxCount, long maxBytes) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.source.local.MessagesPersistenceContract.MessageEntry;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+/**
+ * {@link MessageStore} backed by SQLite.
+ *
+ * The content of messages is encrypted at rest with an
+ * {@link EncryptedMessageCodec}. Only the rows a query returns are
+ * decrypted, and queries run on a background scheduler, so loading the
+ * first page doesn't depend on how much history there is. The database
+ * and the key are opened on first use rather than when the store is
+ * created, to keep that work off the main thread.
+ */
+public class SqliteMessageStore implements MessageStore {
+
+    private static final String TAG = SqliteMessageStore.class.getSimpleName();
+
+    // Every query reads these columns first, in this order, see decode()
+    private static final String COLUMNS =
+            MessageEntry._ID + ", " +
+                    MessageEntry.COLUMN_NAME_MESSAGE_ID + ", " +
+                    MessageEntry.COLUMN_NAME_TYPE + ", " +
+                    MessageEntry.COLUMN_NAME_PAYLOAD + ", " +
+                    MessageEntry.COLUMN_NAME_PARENT_ID;
+
+    // Messages outside threads with the number of replies to each,
+    // counted on the parent index. Newest rows first to use the limit,
+    // then flipped back to oldest first.
+    private static final String SQL_LATEST =
+            "SELECT * FROM (SELECT " + COLUMNS + ", " +
+                    "(SELECT COUNT(*) FROM " + MessageEntry.TABLE_NAME + " r" +
+                    " WHERE r." + MessageEntry.COLUMN_NAME_PARENT_ID +
+                    " = m." + MessageEntry.COLUMN_NAME_MESSAGE_ID + ")" +
+                    " FROM " + MessageEntry.TABLE_NAME + " m" +
+                    " WHERE " + MessageEntry.COLUMN_NAME_PARENT_ID + " IS NULL" +
+                    " ORDER BY " + MessageEntry._ID + " DESC LIMIT ?)" +
+                    " ORDER BY " + MessageEntry._ID + " ASC";
+
+    // Latest replies of a thread, straight off the parent index
+    private static final String SQL_REPLIES =
+            "SELECT * FROM (SELECT " + COLUMNS +
+                    " FROM " + MessageEntry.TABLE_NAME +
+                    " WHERE " + MessageEntry.COLUMN_NAME_PARENT_ID + " = ?" +
+                    " ORDER BY " + MessageEntry._ID + " DESC LIMIT ?)" +
+                    " ORDER BY " + MessageEntry._ID + " ASC";
+
+    // Ids of the latest messages, replies included, newest first
+    private static final String SQL_LATEST_IDS =
+            "SELECT " + MessageEntry.COLUMN_NAME_MESSAGE_ID +
+                    " FROM " + MessageEntry.TABLE_NAME +
+                    " ORDER BY " + MessageEntry._ID + " DESC LIMIT ?";
+
+    // Pages are keyed on the last row seen rather than an offset, so
+    // every page is a short range scan on the primary key
+    private static final String SQL_PAGE =
+            "SELECT " + COLUMNS +
+                    " FROM " + MessageEntry.TABLE_NAME +
+                    " WHERE " + MessageEntry._ID + " > ?" +
+                    " ORDER BY " + MessageEntry._ID + " ASC LIMIT ?";
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final String SQL_GET =
+            "SELECT " + COLUMNS +
+                    " FROM " + MessageEntry.TABLE_NAME +
+                    " WHERE " + MessageEntry.COLUMN_NAME_MESSAGE_ID + " = ?";
+
+    // Oldest first, which is also the order of the primary key
+    private static final String SQL_DELETE_OLDEST =
+            "DELETE FROM " + MessageEntry.TABLE_NAME +
+                    " WHERE " + MessageEntry._ID + " IN (SELECT " + MessageEntry._ID +
+                    " FROM " + MessageEntry.TABLE_NAME +
+                    " WHERE COALESCE(" + MessageEntry.COLUMN_NAME_CREATED_AT + ", 0) < ?" +
+                    " ORDER BY " + MessageEntry._ID + " ASC LIMIT ?)";
+
+    // Pages given back to the file system per reclaimSpace() call
+    private static final int RECLAIM_PAGES = 256;
+
+    private static SqliteMessageStore INSTANCE;
+
+    private final Context mContext;
+    private MessageCodec mCodec;
+    private MessagesDbHelper mDbHelper;
+
+    // Prevent direct instantiation
+    private SqliteMessageStore(@NonNull Context context) {
+        mContext = context;
+    }
+
+    public static synchronized SqliteMessageStore getInstance(@NonNull Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new SqliteMessageStore(context.getApplicationContext());
+        }
+
+        return INSTANCE;
+    }
+
+    @Override
+    public boolean insert(@NonNull ChatMessage chatMessage) {
+        SQLiteDatabase db = getDbHelper().getWritableDatabase();
+        return insert(db, new ContentValues(), chatMessage, System.currentTimeMillis());
+    }
+
+    @Override
+    public int insertAll(@NonNull List<ChatMessage> chatMessages) {
+        SQLiteDatabase db = getDbHelper().getWritableDatabase();
+        ContentValues values = new ContentValues();
+        long now = System.currentTimeMillis();
+        int inserted = 0;
+
+        db.beginTransaction();
+        try {
+            for (int i = 0, size = chatMessages.size(); i < size; i++) {
+                if (insert(db, values, chatMessages.get(i), now)) inserted++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return inserted;
+    }
+
+    @Override
+    public boolean contains(@NonNull String id) {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+
+        return DatabaseUtils.queryNumEntries(db, MessageEntry.TABLE_NAME,
+                MessageEntry.COLUMN_NAME_MESSAGE_ID + " = ?", new String[]{id}) > 0;
+    }
+
+    /**
+     * Looks the message up by the unique index on its id.
+     */
+    @Nullable
+    @Override
+    public ChatMessage get(@NonNull String id) {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        Cursor c = db.rawQuery(SQL_GET, new String[]{id});
+
+        try {
+            if (!c.moveToFirst()) return null;
+            return decode(c);
+        } catch (IOException | GeneralSecurityException e) {
+            Log.e(TAG, "get: " + e.getMessage());
+            return null;
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public boolean update(@NonNull ChatMessage chatMessage) {
+        SQLiteDatabase db = getDbHelper().getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        try {
+            values.put(MessageEntry.COLUMN_NAME_PAYLOAD, mCodec.encode(chatMessage));
+        } catch (IOException | GeneralSecurityException e) {
+            Log.e(TAG, "update: " + e.getMessage());
+            return false;
+        }
+
+        return db.update(MessageEntry.TABLE_NAME, values,
+                MessageEntry.COLUMN_NAME_MESSAGE_ID + " = ?",
+                new String[]{chatMessage.getId()}) > 0;
+    }
+
+    @NonNull
+    @Override
+    public List<ChatMessage> getLatest(int limit) {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        Cursor c = db.rawQuery(SQL_LATEST, new String[]{String.valueOf(limit)});
+
+        try {
+            List<ChatMessage> chatMessages = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                try {
+                    ChatMessage chatMessage = decode(c);
+                    chatMessage.setReplyCount(c.getInt(5));
+                    chatMessages.add(chatMessage);
+                } catch (IOException | GeneralSecurityException e) {
+                    // Skip rows that fail authentication rather than the whole page
+                    Log.e(TAG, "getLatest: " + e.getMessage());
+                }
+            }
+
+            return chatMessages;
+        } finally {
+            c.close();
+        }
+    }
+
+    @NonNull
+    @Override
+    public List<String> getLatestIds(int limit) {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        Cursor c = db.rawQuery(SQL_LATEST_IDS, new String[]{String.valueOf(limit)});
+
+        try {
+            List<String> ids = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                ids.add(c.getString(0));
+            }
+
+            return ids;
+        } finally {
+            c.close();
+        }
+    }
+
+    @NonNull
+    @Override
+    public List<ChatMessage> getReplies(@NonNull String parentId, int limit) {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        Cursor c = db.rawQuery(SQL_REPLIES, new String[]{parentId, String.valueOf(limit)});
+
+        try {
+            List<ChatMessage> chatMessages = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                try {
+                    chatMessages.add(decode(c));
+                } catch (IOException | GeneralSecurityException e) {
+                    // Skip rows that fail authentication, like getLatest() does
+                    Log.e(TAG, "getReplies: " + e.getMessage());
+                }
+            }
+
+            return chatMessages;
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public void forEach(@NonNull Visitor visitor) throws IOException {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        String[] args = new String[]{"0", String.valueOf(PAGE_SIZE)};
+        int count;
+
+        do {
+            Cursor c = db.rawQuery(SQL_PAGE, args);
+            try {
+                count = c.getCount();
+                while (c.moveToNext()) {
+                    args[0] = String.valueOf(c.getLong(0));
+
+                    ChatMessage chatMessage;
+                    try {
+                        chatMessage = decode(c);
+                    } catch (IOException | GeneralSecurityException e) {
+                        // Skip rows that fail authentication, like getLatest() does
+                        Log.e(TAG, "forEach: " + e.getMessage());
+                        continue;
+                    }
+
+                    if (!visitor.visit(chatMessage)) return;
+                }
+            } finally {
+                c.close();
+            }
+        } while (count == PAGE_SIZE);
+    }
+
+    @Override
+    public int count() {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, MessageEntry.TABLE_NAME);
+    }
+
+    /**
+     * Returns the pages of the database in use, leaving out free ones.
+     */
+    @Override
+    public long getSizeBytes() {
+        SQLiteDatabase db = getDbHelper().getReadableDatabase();
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+
+        return (pageCount - freePages) * pageSize;
+    }
+
+    @Override
+    public int deleteOldest(long createdBefore, int limit) {
+        SQLiteDatabase db = getDbHelper().getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(SQL_DELETE_OLDEST);
+
+        try {
+            statement.bindLong(1, createdBefore);
+            statement.bindLong(2, limit);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Only databases created with incremental auto vacuum can give pages
+     * back, see {@link MessagesDbHelper}. Older ones keep the free pages
+     * and reuse them for new messages.
+     */
+    @Override
+    public void reclaimSpace() {
+        SQLiteDatabase db = getDbHelper().getWritableDatabase();
+        Cursor c = db.rawQuery("PRAGMA incremental_vacuum(" + RECLAIM_PAGES + ")", null);
+
+        try {
+            // The pragma frees a page per step, and counting steps it to the end
+            c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    private boolean insert(SQLiteDatabase db, ContentValues values,
+                           ChatMessage chatMessage, long createdAt) {
+        values.clear();
+        values.put(MessageEntry.COLUMN_NAME_MESSAGE_ID, chatMessage.getId());
+        values.put(MessageEntry.COLUMN_NAME_TYPE, chatMessage.getType());
+        values.put(MessageEntry.COLUMN_NAME_CREATED_AT, createdAt);
+        values.put(MessageEntry.COLUMN_NAME_PARENT_ID, chatMessage.getParentId());
+
+        try {
+            values.put(MessageEntry.COLUMN_NAME_PAYLOAD, mCodec.encode(chatMessage));
+        } catch (IOException | GeneralSecurityException e) {
+            Log.e(TAG, "insert: " + e.getMessage());
+            return false;
+        }
+
+        return db.insertWithOnConflict(MessageEntry.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE) != -1;
+    }
+
+    /**
+     * Decode a row read with {@link #COLUMNS}.
+     */
+    private ChatMessage decode(Cursor c) throws IOException, GeneralSecurityException {
+        ChatMessage chatMessage = mCodec.decode(c.getString(1), c.getInt(2), c.getBlob(3));
+        chatMessage.setParentId(c.getString(4));
+        return chatMessage;
+    }
+
+    /**
+     * Unlock the key and open the database on first use.
+     */
+    private synchronized MessagesDbHelper getDbHelper() {
+        if (mDbHelper != null) return mDbHelper;
+
+        SecretKey key;
+        try {
+            key = DatabaseKeyProvider.unlock(mContext);
+        } catch (IOException | GeneralSecurityException e) {
+            // Never fall back to plaintext once messages may be encrypted
+            throw new IllegalStateException("Cannot unlock the message store", e);
+        }
+
+        MessageCodec plainCodec = new PlainMessageCodec();
+        mCodec = key != null ? new EncryptedMessageCodec(plainCodec, key) : plainCodec;
+        mDbHelper = new MessagesDbHelper(mContext, mCodec);
+        return mDbHelper;
+    }
+}
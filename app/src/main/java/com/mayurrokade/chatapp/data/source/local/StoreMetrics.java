@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.local;
+
+/**
+ * Counters describing the local message store: its size and the
+ * compactions that keep it within the {@link RetentionPolicy}.
+ * All times are in milliseconds.
+ */
+public class StoreMetrics {
+
+    private long mSizeBytes = -1;
+    private int mMessageCount = -1;
+    private long mLastCompactionMillis = -1;
+    private long mTotalCompactionMillis;
+    private int mCompactionCount;
+    private long mDeletedMessages;
+
+    /**
+     * Call this when a compaction has finished.
+     *
+     * @param deleted        Messages deleted by the compaction
+     * @param durationMillis How long the compaction took
+     * @param sizeBytes      Size of the store afterwards
+     * @param messageCount   Messages in the store afterwards
+     */
+    public synchronized void onCompacted(int deleted, long durationMillis,
+                                         long sizeBytes, int messageCount) {
+        mDeletedMessages += deleted;
+        mLastCompactionMillis = durationMillis;
+        mTotalCompactionMillis += durationMillis;
+        mCompactionCount++;
+        mSizeBytes = sizeBytes;
+        mMessageCount = messageCount;
+    }
+
+    /**
+     * Returns the size of the store on disk as of the last compaction.
+     *
+     * @return bytes, or -1 before the first compaction
+     */
+    public synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Returns the number of stored messages as of the last compaction.
+     *
+     * @return messages, or -1 before the first compaction
+     */
+    public synchronized int getMessageCount() {
+        return mMessageCount;
+    }
+
+    /**
+     * Returns how long the last compaction took.
+     *
+     * @return milliseconds, or -1 before the first compaction
+     */
+    public synchronized long getLastCompactionMillis() {
+        return mLastCompactionMillis;
+    }
+
+    /**
+     * Returns the average time a compaction takes.
+     *
+     * @return milliseconds, or -1 before the first compaction
+     */
+    public synchronized long getAverageCompactionMillis() {
+        return mCompactionCount == 0 ? -1 : mTotalCompactionMillis / mCompactionCount;
+    }
+
+    public synchronized int getCompactionCount() {
+        return mCompactionCount;
+    }
+
+    public synchronized long getDeletedMessages() {
+        return mDeletedMessages;
+    }
+}
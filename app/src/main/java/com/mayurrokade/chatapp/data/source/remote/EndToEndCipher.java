@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.data.source.remote;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.mayurrokade.chatapp.util.Hex;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * End-to-end encryption of message text, for everyone in the room who
+ * shares a passphrase.
+ *
+ * The passphrase is stretched into a room key once, which is the slow
+ * part. Every sender then picks a random session id and encrypts with a
+ * session key derived from the room key, the session id and its username.
+ * Session keys of peers are derived the first time one of their messages
+ * arrives and cached after that, so in steady state a message costs one
+ * AES-GCM operation.
+ *
+ * Not thread safe. Use it from a single thread, like the crypto scheduler.
+ */
+public class EndToEndCipher {
+
+    static final String PREFIX = "e2e1:";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String ROOM_SALT = "mvp-realtime-chat/e2e/v1";
+    private static final byte[] SESSION_INFO = "session key".getBytes(UTF_8);
+    private static final int PBKDF2_ITERATIONS = 10000;
+    private static final int KEY_LENGTH_BITS = 256;
+    private static final int SESSION_ID_LENGTH = 8;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final int MAX_CACHED_SESSIONS = 64;
+
+    private final byte[] mRoomKey;
+    private final byte[] mSessionId = new byte[SESSION_ID_LENGTH];
+    private final Cipher mCipher;
+    private final Mac mMac;
+    private final Map<String, SecretKey> mSessionKeys =
+            new LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest) {
+                    return size() > MAX_CACHED_SESSIONS;
+                }
+            };
+    private String mOwnUsername;
+    private SecretKey mOwnKey;
+    private long mIvCounter;
+    private int mDerivedKeys;
+
+    /**
+     * Use this constructor to create a new EndToEndCipher. Stretching
+     * the passphrase is slow, so don't call it on the main thread.
+     *
+     * @param passphrase Passphrase shared by the peers
+     * @throws GeneralSecurityException
+     */
+    @WorkerThread
+    public EndToEndCipher(@NonNull String passphrase) throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+        mRoomKey = factory.generateSecret(new PBEKeySpec(passphrase.toCharArray(),
+                ROOM_SALT.getBytes(UTF_8), PBKDF2_ITERATIONS, KEY_LENGTH_BITS)).getEncoded();
+
+        new SecureRandom().nextBytes(mSessionId);
+        mCipher = Cipher.getInstance(TRANSFORMATION);
+        mMac = Mac.getInstance("HmacSHA256");
+    }
+
+    public static boolean isEncrypted(@Nullable String text) {
+        return text != null && text.startsWith(PREFIX);
+    }
+
+    /**
+     * Encrypt message text sent by this client.
+     *
+     * @param username Username the message is sent as
+     * @param text     Message text
+     * @return text to send in place of the message
+     */
+    @NonNull
+    public String encrypt(@NonNull String username, @NonNull String text)
+            throws GeneralSecurityException {
+        byte[] plaintext = text.getBytes(UTF_8);
+        byte[] payload = new byte[SESSION_ID_LENGTH + IV_LENGTH
+                + plaintext.length + TAG_LENGTH_BITS / 8];
+
+        System.arraycopy(mSessionId, 0, payload, 0, SESSION_ID_LENGTH);
+
+        // The session key is new with every cipher, so a counter
+        // is enough to never repeat an IV under the same key
+        long counter = mIvCounter++;
+        for (int i = 0; i < 8; i++) {
+            payload[SESSION_ID_LENGTH + IV_LENGTH - 1 - i] = (byte) (counter >>> (i * 8));
+        }
+
+        // Own messages all use the same key unless the username changes
+        if (!username.equals(mOwnUsername)) {
+            mOwnKey = getSessionKey(username, mSessionId, 0);
+            mOwnUsername = username;
+        }
+
+        mCipher.init(Cipher.ENCRYPT_MODE, mOwnKey,
+                new GCMParameterSpec(TAG_LENGTH_BITS, payload, SESSION_ID_LENGTH, IV_LENGTH));
+        mCipher.updateAAD(username.getBytes(UTF_8));
+        mCipher.doFinal(plaintext, 0, plaintext.length,
+                payload, SESSION_ID_LENGTH + IV_LENGTH);
+
+        return PREFIX + Hex.encode(payload);
+    }
+
+    /**
+     * Decrypt message text sent by a peer.
+     *
+     * @param username Username the message was sent as
+     * @param text     Text starting with {@link #PREFIX}
+     * @return message text
+     * @throws GeneralSecurityException if the passphrase differs or the text was tampered with
+     */
+    @NonNull
+    public String decrypt(@NonNull String username, @NonNull String text)
+            throws GeneralSecurityException {
+        byte[] payload;
+        try {
+            payload = Hex.decode(text, PREFIX.length());
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Malformed message", e);
+        }
+
+        if (payload.length < SESSION_ID_LENGTH + IV_LENGTH + TAG_LENGTH_BITS / 8) {
+            throw new GeneralSecurityException("Malformed message");
+        }
+
+        mCipher.init(Cipher.DECRYPT_MODE, getSessionKey(username, payload, 0),
+                new GCMParameterSpec(TAG_LENGTH_BITS, payload, SESSION_ID_LENGTH, IV_LENGTH));
+        mCipher.updateAAD(username.getBytes(UTF_8));
+        byte[] plaintext = mCipher.doFinal(payload, SESSION_ID_LENGTH + IV_LENGTH,
+                payload.length - SESSION_ID_LENGTH - IV_LENGTH);
+
+        return new String(plaintext, UTF_8);
+    }
+
+    /**
+     * Returns how many session keys have been derived, to check they're cached.
+     *
+     * @return count
+     */
+    public int getDerivedKeyCount() {
+        return mDerivedKeys;
+    }
+
+    private SecretKey getSessionKey(String username, byte[] sessionId, int offset)
+            throws GeneralSecurityException {
+        String cacheKey = username + '/' + Hex.encode(sessionId, offset, SESSION_ID_LENGTH);
+        SecretKey key = mSessionKeys.get(cacheKey);
+
+        if (key == null) {
+            key = deriveSessionKey(username,
+                    Arrays.copyOfRange(sessionId, offset, offset + SESSION_ID_LENGTH));
+            mSessionKeys.put(cacheKey, key);
+        }
+
+        return key;
+    }
+
+    /**
+     * HKDF-SHA256 with the session id as salt and the username as context.
+     */
+    private SecretKey deriveSessionKey(String username, byte[] sessionId)
+            throws GeneralSecurityException {
+        mMac.init(new SecretKeySpec(sessionId, "HmacSHA256"));
+        byte[] prk = mMac.doFinal(mRoomKey);
+
+        mMac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        mMac.update(SESSION_INFO);
+        mMac.update(username.getBytes(UTF_8));
+        mMac.update((byte) 1);
+        byte[] okm = mMac.doFinal();
+
+        mDerivedKeys++;
+        return new SecretKeySpec(okm, "AES");
+    }
+}
@@ -22,28 +22,80 @@
 
 package com.mayurrokade.chatapp.data.source.remote;
 
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.mayurrokade.chatapp.data.Attachment;
 import com.mayurrokade.chatapp.data.ChatMessage;
 import com.mayurrokade.chatapp.data.source.DataSource;
 import com.mayurrokade.chatapp.eventservice.EventListener;
 import com.mayurrokade.chatapp.eventservice.EventService;
 import com.mayurrokade.chatapp.eventservice.EventServiceImpl;
+import com.mayurrokade.chatapp.util.ListenerSlot;
+import com.mayurrokade.chatapp.util.schedulers.SchedulerProvider;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Function;
 
 /**
  * Remote data source.
  *
+ * When a passphrase is set, message text is end-to-end encrypted with an
+ * {@link EndToEndCipher} on the crypto scheduler before it's sent, and
+ * decrypted before received messages are passed on. Received messages
+ * are queued and decrypted in batches, so a burst costs one task on the
+ * crypto scheduler rather than one per message. Decrypted events are
+ * handed to the event loop, so the repository never saves on the
+ * crypto thread. While anything is queued, every other chat event takes
+ * the same queue, so edits, deletes, reactions, read receipts and typing
+ * never overtake the message they refer to.
  */
 public class RemoteDataSource implements DataSource {
 
+    private static final String TAG = RemoteDataSource.class.getSimpleName();
+    static final String UNDECRYPTABLE_MESSAGE = "Encrypted message";
+    private static final int INBOUND_NEW = 0;
+    private static final int INBOUND_EDITED = 1;
+    private static final int INBOUND_DELETED = 2;
+    private static final int INBOUND_READ = 3;
+    private static final int INBOUND_REACTION = 4;
+    private static final int INBOUND_TYPING = 5;
+    private static final int INBOUND_STOP_TYPING = 6;
+    private static final int INBOUND_USER_JOINED = 7;
+    private static final int INBOUND_USER_LEFT = 8;
     private static RemoteDataSource INSTANCE;
-    private static EventService mEventService = EventServiceImpl.getInstance();
-    private EventListener mRepoEventListener;
+    private final EventService mEventService;
+    private final Scheduler mCryptoScheduler;
+    private final Scheduler mEventLoopScheduler;
+    private final Queue<Inbound> mInbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mInboundWip = new AtomicInteger();
+    private final Queue<Inbound> mDecrypted = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mDecryptedWip = new AtomicInteger();
+    private final ListenerSlot<EventListener> mRepoEventListener = new ListenerSlot<>();
+    private volatile boolean mEncryptionEnabled;
+
+    // Only touched on the crypto scheduler
+    private EndToEndCipher mCipher;
 
     private RemoteDataSource() {
+        mEventService = EventServiceImpl.getInstance();
         mEventService.setEventListener(this);
+        mCryptoScheduler = SchedulerProvider.getInstance().crypto();
+        mEventLoopScheduler = SchedulerProvider.getInstance().eventLoop();
     }
 
     public static RemoteDataSource getInstance() {
@@ -56,66 +108,308 @@ public class RemoteDataSource implements DataSource {
 
     @Override
     public void onConnect(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onConnect(args);
+        EventListener listener = mRepoEventListener.get();
+        if (listener != null) listener.onConnect(args);
     }
 
     @Override
     public void onDisconnect(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onDisconnect(args);
+        EventListener listener = mRepoEventListener.get();
+        if (listener != null) listener.onDisconnect(args);
     }
 
     @Override
     public void onConnectError(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onConnectError(args);
+        EventListener listener = mRepoEventListener.get();
+        if (listener != null) listener.onConnectError(args);
     }
 
     @Override
     public void onConnectTimeout(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onConnectTimeout(args);
+        EventListener listener = mRepoEventListener.get();
+        if (listener != null) listener.onConnectTimeout(args);
+    }
+
+    /**
+     * A received event waiting to be decrypted or dispatched.
+     */
+    private static final class Inbound {
+        final int event;
+        final Object[] args;
+
+        Inbound(int event, Object[] args) {
+            this.event = event;
+            this.args = args;
+        }
     }
 
     @Override
     public void onNewMessage(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onNewMessage(args);
+        // Flatten the message first, so its text can be decrypted
+        // and every listener reads its id at the top level
+        if (args.length > 0 && args[0] instanceof JSONObject) {
+            try {
+                ChatMessage.unwrap((JSONObject) args[0]);
+            } catch (JSONException e) {
+                Log.e(TAG, "onNewMessage: " + e.getMessage());
+            }
+        }
+
+        receive(INBOUND_NEW, args);
+    }
+
+    @Override
+    public void onMessageEdited(Object... args) {
+        receive(INBOUND_EDITED, args);
+    }
+
+    @Override
+    public void onMessageDeleted(Object... args) {
+        receive(INBOUND_DELETED, args);
+    }
+
+    private void receive(int event, Object[] args) {
+        // Keep the order of events queued for decryption. The decrypt
+        // stage hands an event over before it stops counting it, so one
+        // of the two counts is set while anything is in flight.
+        if (!mEncryptionEnabled && mInboundWip.get() == 0 && mDecryptedWip.get() == 0) {
+            dispatch(event, args);
+            return;
+        }
+
+        mInbound.offer(new Inbound(event, args));
+        if (mInboundWip.getAndIncrement() == 0) {
+            mCryptoScheduler.scheduleDirect(mDecryptInbound);
+        }
+    }
+
+    /**
+     * Pass an event on in arrival order, unless it would overtake
+     * messages still being decrypted.
+     */
+    private void receiveInOrder(int event, Object[] args) {
+        if (mInboundWip.get() == 0 && mDecryptedWip.get() == 0) {
+            dispatch(event, args);
+            return;
+        }
+
+        mInbound.offer(new Inbound(event, args));
+        if (mInboundWip.getAndIncrement() == 0) {
+            mCryptoScheduler.scheduleDirect(mDecryptInbound);
+        }
+    }
+
+    private void dispatch(int event, Object[] args) {
+        EventListener listener = mRepoEventListener.get();
+        if (listener == null) return;
+
+        switch (event) {
+            case INBOUND_NEW:
+                listener.onNewMessage(args);
+                break;
+            case INBOUND_EDITED:
+                listener.onMessageEdited(args);
+                break;
+            case INBOUND_DELETED:
+                listener.onMessageDeleted(args);
+                break;
+            case INBOUND_READ:
+                listener.onRead(args);
+                break;
+            case INBOUND_REACTION:
+                listener.onReaction(args);
+                break;
+            case INBOUND_TYPING:
+                listener.onTyping(args);
+                break;
+            case INBOUND_STOP_TYPING:
+                listener.onStopTyping(args);
+                break;
+            case INBOUND_USER_JOINED:
+                listener.onUserJoined(args);
+                break;
+            default:
+                listener.onUserLeft(args);
+                break;
+        }
+    }
+
+    /**
+     * Decrypts every queued event, including ones queued while it runs,
+     * and hands them to the event loop in the same order.
+     */
+    private final Runnable mDecryptInbound = new Runnable() {
+        @Override
+        public void run() {
+            int missed = 1;
+
+            for (; ; ) {
+                Inbound inbound;
+                while ((inbound = mInbound.poll()) != null) {
+                    if (inbound.event == INBOUND_NEW || inbound.event == INBOUND_EDITED) {
+                        decryptMessage(inbound.args);
+                    }
+
+                    mDecrypted.offer(inbound);
+                    if (mDecryptedWip.getAndIncrement() == 0) {
+                        mEventLoopScheduler.scheduleDirect(mDispatchDecrypted);
+                    }
+                }
+
+                missed = mInboundWip.addAndGet(-missed);
+                if (missed == 0) break;
+            }
+        }
+    };
+
+    /**
+     * Dispatches every decrypted event on the event loop.
+     */
+    private final Runnable mDispatchDecrypted = new Runnable() {
+        @Override
+        public void run() {
+            int missed = 1;
+
+            for (; ; ) {
+                Inbound inbound;
+                while ((inbound = mDecrypted.poll()) != null) {
+                    dispatch(inbound.event, inbound.args);
+                }
+
+                missed = mDecryptedWip.addAndGet(-missed);
+                if (missed == 0) break;
+            }
+        }
+    };
+
+    private void decryptMessage(Object... args) {
+        if (mCipher == null || args.length == 0 || !(args[0] instanceof JSONObject)) return;
+
+        JSONObject data = (JSONObject) args[0];
+        String message = data.optString("message", null);
+        if (!EndToEndCipher.isEncrypted(message)) return;
+
+        try {
+            data.put("message", mCipher.decrypt(data.getString("username"), message));
+        } catch (GeneralSecurityException | JSONException e) {
+            // Wrong passphrase or tampered with
+            Log.e(TAG, "decryptMessage: " + e.getMessage());
+            try {
+                data.put("message", UNDECRYPTABLE_MESSAGE);
+            } catch (JSONException ignored) {
+            }
+        }
     }
 
     @Override
     public void onUserJoined(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onUserJoined(args);
+        receiveInOrder(INBOUND_USER_JOINED, args);
     }
 
     @Override
     public void onUserLeft(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onUserLeft(args);
+        receiveInOrder(INBOUND_USER_LEFT, args);
     }
 
     @Override
     public void onTyping(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onTyping(args);
+        receiveInOrder(INBOUND_TYPING, args);
     }
 
     @Override
     public void onStopTyping(Object... args) {
-        if (mRepoEventListener != null)
-            mRepoEventListener.onStopTyping(args);
+        receiveInOrder(INBOUND_STOP_TYPING, args);
+    }
+
+    @Override
+    public void onRead(Object... args) {
+        receiveInOrder(INBOUND_READ, args);
     }
 
     @Override
-    public void setEventListener(EventListener eventListener) {
-        mRepoEventListener = eventListener;
+    public void onReaction(Object... args) {
+        receiveInOrder(INBOUND_REACTION, args);
     }
 
     @Override
-    public Flowable<ChatMessage> sendMessage(ChatMessage chatMessage) {
-        return mEventService.sendMessage(chatMessage);
+    public Disposable setEventListener(@NonNull EventListener eventListener) {
+        return mRepoEventListener.set(eventListener);
+    }
+
+    @Override
+    public Flowable<ChatMessage> sendMessage(final ChatMessage chatMessage) {
+        if (!mEncryptionEnabled) {
+            return mEventService.sendMessage(chatMessage);
+        }
+
+        // Only the copy sent to the server is encrypted,
+        // the message saved locally keeps its text
+        return Flowable.fromCallable(new Callable<ChatMessage>() {
+            @Override
+            public ChatMessage call() throws Exception {
+                return encryptMessage(chatMessage);
+            }
+        })
+                .subscribeOn(mCryptoScheduler)
+                .observeOn(mEventLoopScheduler)
+                .flatMap(new Function<ChatMessage, Flowable<ChatMessage>>() {
+                    @Override
+                    public Flowable<ChatMessage> apply(ChatMessage encrypted) throws Exception {
+                        return mEventService.sendMessage(encrypted);
+                    }
+                })
+                .map(new Function<ChatMessage, ChatMessage>() {
+                    @Override
+                    public ChatMessage apply(ChatMessage encrypted) throws Exception {
+                        return chatMessage;
+                    }
+                });
+    }
+
+    private ChatMessage encryptMessage(ChatMessage chatMessage) throws GeneralSecurityException {
+        String message = chatMessage.getMessage();
+        if (message == null || message.isEmpty()) return chatMessage;
+
+        // Encryption is on but the passphrase couldn't be stretched,
+        // never fall back to sending the text in the clear
+        if (mCipher == null) {
+            throw new GeneralSecurityException("No cipher for the passphrase");
+        }
+
+        ChatMessage encrypted = new ChatMessage(chatMessage.getId(), chatMessage.getUsername(),
+                mCipher.encrypt(chatMessage.getUsername(), message), chatMessage.getType());
+        encrypted.setAttachment(chatMessage.getAttachment());
+        encrypted.setParentId(chatMessage.getParentId());
+        return encrypted;
+    }
+
+    /**
+     * Turn end-to-end encryption on, or off with a null passphrase. The
+     * passphrase is stretched on the crypto scheduler, and messages sent
+     * in the meantime wait for it.
+     *
+     * @param passphrase Passphrase shared with the peers, or null
+     */
+    @Override
+    public void setEncryptionPassphrase(final String passphrase) {
+        mEncryptionEnabled = passphrase != null;
+
+        mCryptoScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                if (passphrase == null) {
+                    mCipher = null;
+                    return;
+                }
+
+                try {
+                    mCipher = new EndToEndCipher(passphrase);
+                } catch (GeneralSecurityException e) {
+                    Log.e(TAG, "setEncryptionPassphrase: " + e.getMessage());
+                    mCipher = null;
+                }
+            }
+        });
     }
 
     @Override
@@ -128,6 +422,88 @@ public class RemoteDataSource implements DataSource {
         mEventService.onStopTyping();
     }
 
+    @Override
+    public void sendReadReceipt(String messageId) {
+        mEventService.sendReadReceipt(messageId);
+    }
+
+    @Override
+    public void sendReaction(String messageId, String emoji, boolean added) {
+        mEventService.sendReaction(messageId, emoji, added);
+    }
+
+    @Override
+    public Flowable<List<ChatMessage>> getMessages(int limit) {
+        // The chat server only relays live events, it doesn't keep history.
+        return Flowable.empty();
+    }
+
+    @Override
+    public Flowable<List<ChatMessage>> getReplies(String parentId, int limit) {
+        // Threads are kept locally, like the rest of the history.
+        return Flowable.empty();
+    }
+
+    @Override
+    public Flowable<List<String>> getRecentMessageIds(int limit) {
+        // Not required because messages are only saved locally.
+        return Flowable.empty();
+    }
+
+    @Override
+    public void saveMessage(ChatMessage chatMessage) {
+        // Not required because messages are only saved locally.
+    }
+
+    @Override
+    public boolean hasMessage(String id) {
+        // Not required because messages are only saved locally.
+        return false;
+    }
+
+    @Override
+    public ChatMessage getMessage(String id) {
+        // Not required because messages are only saved locally.
+        return null;
+    }
+
+    /**
+     * Send an edit or a delete of a message the user sent. Edited text
+     * is encrypted like the message was.
+     *
+     * @param chatMessage {@link ChatMessage}
+     */
+    @Override
+    public void updateMessage(final ChatMessage chatMessage) {
+        if (chatMessage.isDeleted()) {
+            mEventService.deleteMessage(chatMessage.getId());
+            return;
+        }
+
+        if (!mEncryptionEnabled) {
+            mEventService.editMessage(chatMessage.getId(), chatMessage.getMessage());
+            return;
+        }
+
+        mCryptoScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mEventService.editMessage(
+                            chatMessage.getId(), encryptMessage(chatMessage).getMessage());
+                } catch (GeneralSecurityException e) {
+                    Log.e(TAG, "updateMessage: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public Flowable<Attachment> saveAttachment(InputStream in, String mimeType) {
+        // Not required because attachments are uploaded with sendMessage.
+        return Flowable.empty();
+    }
+
     @Override
     public void connect(String username) throws URISyntaxException {
         mEventService.connect(username);
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.source.local.MediaCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.socket.client.Ack;
+import io.socket.client.Socket;
+
+/**
+ * Streams attachments over the socket in chunks, and reassembles the
+ * chunks of incoming attachments into the {@link MediaCache}.
+ *
+ * An upload is an "attachment start" event carrying the message, a series
+ * of "attachment chunk" events carrying the bytes and an "attachment end"
+ * event. Only a few chunks are in flight at a time, each one waiting for
+ * the server's ack, so the file is never held in memory as a whole.
+ */
+class AttachmentTransfer {
+
+    static final String EVENT_ATTACHMENT_START = "attachment start";
+    static final String EVENT_ATTACHMENT_CHUNK = "attachment chunk";
+    static final String EVENT_ATTACHMENT_END = "attachment end";
+
+    private static final String TAG = AttachmentTransfer.class.getSimpleName();
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_CHUNKS_IN_FLIGHT = 4;
+    private static final long ACK_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Listens to attachments that have been received completely.
+     */
+    interface Callback {
+
+        /**
+         * @param data Message json as sent with "new message", plus the attachment
+         */
+        void onAttachmentReceived(JSONObject data);
+    }
+
+    private final MediaCache mMediaCache;
+    private final Scheduler mDiskScheduler;
+    private final Callback mCallback;
+
+    // Only touched on the disk scheduler
+    private final Map<String, Incoming> mIncoming = new HashMap<>();
+
+    /**
+     * Use this constructor to create a new AttachmentTransfer.
+     *
+     * @param mediaCache    {@link MediaCache} holding the media
+     * @param diskScheduler Single threaded scheduler that incoming chunks are written on
+     * @param callback      {@link Callback}
+     */
+    AttachmentTransfer(@NonNull MediaCache mediaCache,
+                       @NonNull Scheduler diskScheduler,
+                       @NonNull Callback callback) {
+        mMediaCache = mediaCache;
+        mDiskScheduler = diskScheduler;
+        mCallback = callback;
+    }
+
+    /**
+     * Upload the attachment of a chat message. Blocks until the last
+     * chunk has been acked, so call it on a background thread.
+     *
+     * @param socket      Connected socket
+     * @param chatMessage {@link ChatMessage} with an attachment
+     * @throws IOException if the file can't be read or the server stops acking
+     */
+    @WorkerThread
+    void upload(@NonNull Socket socket, @NonNull ChatMessage chatMessage)
+            throws IOException, JSONException, InterruptedException {
+        Attachment attachment = chatMessage.getAttachment();
+        File file = mMediaCache.getFile(attachment.getContentHash());
+        // The message id doubles as the upload id, so receivers can
+        // dedupe the message once it's complete
+        String uploadId = chatMessage.getId();
+        final Semaphore window = new Semaphore(MAX_CHUNKS_IN_FLIGHT);
+
+        socket.emit(EVENT_ATTACHMENT_START, new JSONObject()
+                .put("id", uploadId)
+                .put("username", chatMessage.getUsername())
+                .put("message", chatMessage.getMessage())
+                .put("parentId", chatMessage.getParentId())
+                .put("attachment", attachment.toJson()));
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int index = 0;
+            int read;
+
+            while ((read = readChunk(in, buffer)) > 0) {
+                if (!window.tryAcquire(ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IOException("Uploading attachment timed out");
+                }
+
+                // The socket keeps the bytes until they're written,
+                // so every chunk in flight needs its own copy
+                JSONObject chunk = new JSONObject()
+                        .put("id", uploadId)
+                        .put("index", index++)
+                        .put("data", Arrays.copyOf(buffer, read));
+
+                socket.emit(EVENT_ATTACHMENT_CHUNK, new Object[]{chunk}, new Ack() {
+                    @Override
+                    public void call(Object... args) {
+                        window.release();
+                    }
+                });
+            }
+        } finally {
+            in.close();
+        }
+
+        if (!window.tryAcquire(MAX_CHUNKS_IN_FLIGHT, ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IOException("Uploading attachment timed out");
+        }
+
+        socket.emit(EVENT_ATTACHMENT_END, new JSONObject().put("id", uploadId));
+    }
+
+    void onStart(final JSONObject data) {
+        mDiskScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String id = data.getString("id");
+                    Attachment attachment = Attachment.fromJson(data.getJSONObject("attachment"));
+
+                    // Media we already have is not written again
+                    if (mMediaCache.containsFile(attachment.getContentHash())) {
+                        mIncoming.put(id, new Incoming(data, attachment, null, null));
+                    } else {
+                        File file = mMediaCache.createTempFile();
+                        mIncoming.put(id, new Incoming(data, attachment,
+                                file, new FileOutputStream(file)));
+                    }
+                } catch (JSONException | IOException e) {
+                    Log.e(TAG, "onStart: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    void onChunk(final JSONObject data) {
+        mDiskScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Incoming incoming = mIncoming.get(data.getString("id"));
+                    if (incoming == null || incoming.out == null) return;
+
+                    incoming.out.write((byte[]) data.get("data"));
+                } catch (JSONException | IOException e) {
+                    Log.e(TAG, "onChunk: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    void onEnd(final JSONObject data) {
+        mDiskScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                Incoming incoming = null;
+
+                try {
+                    incoming = mIncoming.remove(data.getString("id"));
+                    if (incoming == null) return;
+
+                    if (incoming.out != null) {
+                        incoming.out.close();
+                        String hash = incoming.attachment.getContentHash();
+                        if (!mMediaCache.commit(incoming.file, hash)) {
+                            Log.e(TAG, "onEnd: attachment does not match " + hash);
+                            return;
+                        }
+                    }
+
+                    JSONObject message = new JSONObject()
+                            .put("id", incoming.start.getString("id"))
+                            .put("username", incoming.start.getString("username"))
+                            .put("message", incoming.start.optString("message"))
+                            .put("parentId", incoming.start.opt("parentId"))
+                            .put("attachment", incoming.attachment.toJson());
+                    mCallback.onAttachmentReceived(message);
+                } catch (JSONException | IOException e) {
+                    Log.e(TAG, "onEnd: " + e.getMessage());
+                    if (incoming != null && incoming.file != null) incoming.file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop partially received attachments, for instance after a disconnect.
+     */
+    void clear() {
+        mDiskScheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                for (Incoming incoming : mIncoming.values()) {
+                    if (incoming.out == null) continue;
+
+                    try {
+                        incoming.out.close();
+                    } catch (IOException ignored) {
+                    }
+                    incoming.file.delete();
+                }
+
+                mIncoming.clear();
+            }
+        });
+    }
+
+    private static int readChunk(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+
+        while (total < buffer.length
+                && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+
+        return total;
+    }
+
+    private static class Incoming {
+        final JSONObject start;
+        final Attachment attachment;
+        final File file;
+        final OutputStream out;
+
+        Incoming(JSONObject start, Attachment attachment, File file, OutputStream out) {
+            this.start = start;
+            this.attachment = attachment;
+            this.file = file;
+            this.out = out;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+import android.os.SystemClock;
+
+/**
+ * Counters describing the connection to the chat server: connect times,
+ * recovery after network switches, round trip times and radio wakeups.
+ * All times are in milliseconds.
+ */
+public class ConnectionMetrics {
+
+    // How long a cellular radio stays powered up after the last packet
+    // before it drops back to idle. Traffic after that wakes it again.
+    private static final long RADIO_TAIL_MILLIS = 10000;
+
+    private final RttEstimator mRtt = new RttEstimator();
+    private long mLastRadioActivityAt = -1;
+    private int mRadioWakeups;
+    private int mHeartbeatWakeups;
+    private long mNetworkChangedAt = -1;
+    private long mLastRecoveryMillis = -1;
+    private long mConnectStartedAt = -1;
+    private long mLastConnectMillis = -1;
+    private long mTotalConnectMillis;
+    private int mConnectCount;
+
+    /**
+     * Call this when a connection attempt starts.
+     */
+    public synchronized void onConnectStarted() {
+        mConnectStartedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Call this when the socket is connected.
+     */
+    public synchronized void onConnected() {
+        if (mNetworkChangedAt != -1) {
+            mLastRecoveryMillis = SystemClock.elapsedRealtime() - mNetworkChangedAt;
+            mNetworkChangedAt = -1;
+        }
+
+        if (mConnectStartedAt == -1) return;
+
+        mLastConnectMillis = SystemClock.elapsedRealtime() - mConnectStartedAt;
+        mTotalConnectMillis += mLastConnectMillis;
+        mConnectCount++;
+        mConnectStartedAt = -1;
+    }
+
+    /**
+     * Returns time from the last connection attempt to connected.
+     *
+     * @return milliseconds, or -1 if never connected
+     */
+    public synchronized long getLastConnectMillis() {
+        return mLastConnectMillis;
+    }
+
+    /**
+     * Returns the average time from connection attempt to connected.
+     *
+     * @return milliseconds, or -1 if never connected
+     */
+    public synchronized long getAverageConnectMillis() {
+        return mConnectCount == 0 ? -1 : mTotalConnectMillis / mConnectCount;
+    }
+
+    public synchronized int getConnectCount() {
+        return mConnectCount;
+    }
+
+    /**
+     * Call this when the device switches to a new network.
+     */
+    public synchronized void onNetworkChanged() {
+        mNetworkChangedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Returns time from the last network switch until the socket was
+     * connected again.
+     *
+     * @return milliseconds, or -1 if it hasn't recovered from a switch yet
+     */
+    public synchronized long getLastRecoveryMillis() {
+        return mLastRecoveryMillis;
+    }
+
+    /**
+     * Call this with every round trip measured on the connection.
+     *
+     * @param rttMillis
+     */
+    public synchronized void onRttSample(long rttMillis) {
+        mRtt.addSample(rttMillis);
+    }
+
+    /**
+     * Returns the smoothed round trip time to the server.
+     *
+     * @return milliseconds, or -1 before the first round trip
+     */
+    public synchronized long getSmoothedRttMillis() {
+        return mRtt.getSmoothedRtt();
+    }
+
+    /**
+     * Returns how much round trips deviate from the smoothed round trip time.
+     *
+     * @return milliseconds, or -1 before the first round trip
+     */
+    public synchronized long getRttJitterMillis() {
+        return mRtt.getJitter();
+    }
+
+    /**
+     * Returns how long a reply may take before it's late.
+     *
+     * @return milliseconds, or -1 before the first round trip
+     */
+    public synchronized long getRttTimeoutMillis() {
+        return mRtt.getTimeout();
+    }
+
+    /**
+     * Call this whenever the connection sends or receives something.
+     * If the radio has been idle for longer than its tail, this
+     * counts as a wakeup.
+     *
+     * @param heartbeat true if the traffic only keeps the connection alive
+     */
+    public synchronized void onRadioActivity(boolean heartbeat) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (mLastRadioActivityAt == -1 || now - mLastRadioActivityAt > RADIO_TAIL_MILLIS) {
+            mRadioWakeups++;
+            if (heartbeat) mHeartbeatWakeups++;
+        }
+
+        mLastRadioActivityAt = now;
+    }
+
+    /**
+     * Returns how often the chat connection woke the radio up.
+     *
+     * @return count
+     */
+    public synchronized int getRadioWakeups() {
+        return mRadioWakeups;
+    }
+
+    /**
+     * Returns how many of the radio wakeups were only to keep the
+     * connection alive, such as pings and probes.
+     *
+     * @return count
+     */
+    public synchronized int getHeartbeatWakeups() {
+        return mHeartbeatWakeups;
+    }
+}
@@ -45,4 +45,33 @@ public interface EventListener {
     void onTyping(Object... args);
 
     void onStopTyping(Object... args);
+
+    /**
+     * A user has read the chat up to a message.
+     *
+     * @param args JSONObject with the username and the id of the message
+     */
+    void onRead(Object... args);
+
+    /**
+     * A user has added or removed a reaction to a message.
+     *
+     * @param args JSONObject with the username, the id of the message,
+     *             the emoji and whether it was added
+     */
+    void onReaction(Object... args);
+
+    /**
+     * A user has changed the text of a message they sent.
+     *
+     * @param args JSONObject with the username, the id of the message and its new text
+     */
+    void onMessageEdited(Object... args);
+
+    /**
+     * A user has deleted a message they sent.
+     *
+     * @param args JSONObject with the username and the id of the message
+     */
+    void onMessageDeleted(Object... args);
 }
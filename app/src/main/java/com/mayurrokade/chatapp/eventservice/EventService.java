@@ -27,6 +27,7 @@ import com.mayurrokade.chatapp.data.ChatMessage;
 import java.net.URISyntaxException;
 
 import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
 
 /**
  * Service layer that connects/disconnects to the server and
@@ -38,11 +39,64 @@ public interface EventService {
 
     void disconnect();
 
-    void setEventListener(EventListener listener);
+    /**
+     * Returns true from {@link #connect(String)} until {@link #disconnect()},
+     * even while the connection is down and being retried.
+     */
+    boolean isConnectionWanted();
+
+    /**
+     * Call this when the device switches to a new default network.
+     */
+    void onNetworkAvailable();
+
+    /**
+     * Call this when the device has no network left.
+     */
+    void onNetworkLost();
+
+    Disposable setEventListener(EventListener listener);
+
+    void setSocketConfig(SocketConfig socketConfig);
+
+    ConnectionMetrics getConnectionMetrics();
 
     Flowable<ChatMessage> sendMessage(ChatMessage chatMessage);
 
     void onTyping();
 
     void onStopTyping();
+
+    /**
+     * Tell the server the chat has been read up to a message.
+     * Only the latest one waiting to be sent is kept.
+     *
+     * @param messageId Id of the latest message read
+     */
+    void sendReadReceipt(String messageId);
+
+    /**
+     * Tell the server the user has added or removed a reaction.
+     *
+     * @param messageId Id of the message reacted to
+     * @param emoji     Reaction
+     * @param added     true if added, false if removed
+     */
+    void sendReaction(String messageId, String emoji, boolean added);
+
+    /**
+     * Send the new text of a message the user sent. It's queued with
+     * messages, so it can't overtake the message it edits.
+     *
+     * @param messageId Id of the message
+     * @param message   New text
+     */
+    void editMessage(String messageId, String message);
+
+    /**
+     * Tell the server the user deleted a message they sent.
+     *
+     * @param messageId Id of the message
+     */
+    void deleteMessage(String messageId);
 }
@@ -22,18 +22,30 @@
 
 package com.mayurrokade.chatapp.eventservice;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.source.local.MediaCache;
+import com.mayurrokade.chatapp.util.ListenerSlot;
+import com.mayurrokade.chatapp.util.schedulers.SchedulerProvider;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 import io.reactivex.FlowableEmitter;
 import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.socket.client.Ack;
 import io.socket.client.IO;
+import io.socket.client.Manager;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
 
@@ -44,20 +56,53 @@ import io.socket.emitter.Emitter;
 public class EventServiceImpl implements EventService {
 
     private static final String TAG = EventServiceImpl.class.getSimpleName();
-    private static final String SOCKET_URL = "https://socket-io-chat.now.sh";
+    static final String SOCKET_URL = "https://socket-io-chat.now.sh";
     private static final String EVENT_CONNECT = Socket.EVENT_CONNECT;
     private static final String EVENT_DISCONNECT = Socket.EVENT_DISCONNECT;
     private static final String EVENT_CONNECT_ERROR = Socket.EVENT_CONNECT_ERROR;
     private static final String EVENT_CONNECT_TIMEOUT = Socket.EVENT_CONNECT_TIMEOUT;
     private static final String EVENT_NEW_MESSAGE = "new message";
+    private static final String EVENT_REPLY = "reply";
     private static final String EVENT_USER_JOINED = "user joined";
     private static final String EVENT_USER_LEFT = "user left";
     private static final String EVENT_TYPING = "typing";
     private static final String EVENT_STOP_TYPING = "stop typing";
+    private static final String EVENT_READ = "read";
+    private static final String EVENT_REACTION = "reaction";
+    private static final String EVENT_EDIT_MESSAGE = "edit message";
+    private static final String EVENT_DELETE_MESSAGE = "delete message";
+    private static final String EVENT_PING = Socket.EVENT_PING;
+    private static final String EVENT_PONG = Socket.EVENT_PONG;
+    private static final String EVENT_HEARTBEAT = "heartbeat";
+
+    // Stop handing events to the websocket while this much is still
+    // waiting to be transmitted, so new messages can overtake typing
+    private static final long MAX_QUEUED_UPLINK_BYTES = 2 * 1024;
+    private static final long CONGESTED_RETRY_MILLIS = 50;
     private static EventService INSTANCE;
-    private static EventListener mEventListener;
-    private static Socket mSocket;
+    private final ListenerSlot<EventListener> mEventListener = new ListenerSlot<>();
+    private volatile Socket mSocket;
     private String mUsername;
+    private SocketConfig mSocketConfig = SocketConfig.getDefault();
+    private final ConnectionMetrics mConnectionMetrics = new ConnectionMetrics();
+    private AttachmentTransfer mAttachmentTransfer;
+
+    // Heartbeat state is only touched on the event loop
+    private final HeartbeatPolicy mHeartbeatPolicy = new HeartbeatPolicy(mConnectionMetrics);
+    private final Scheduler mEventLoop = SchedulerProvider.getInstance().eventLoop();
+    private Disposable mHeartbeatTask;
+    private int mHeartbeatCount;
+    private int mPendingHeartbeat;
+    private volatile long mLastReceivedAt;
+
+    // Outbound state is only touched on the event loop as well
+    private final OutboundQueue mOutbound = new OutboundQueue();
+    private final UplinkMonitor mUplink = new UplinkMonitor(SocketConfig.getHttpClient());
+    private Disposable mDrainTask;
+
+    // Guarded by this
+    private boolean mWantConnected;
+    private boolean mNetworkAvailable = true;
 
     // Prevent direct instantiation
     private EventServiceImpl() {}
@@ -82,9 +127,12 @@ public class EventServiceImpl implements EventService {
      * @throws URISyntaxException
      */
     @Override
-    public void connect(String username) throws URISyntaxException {
+    public synchronized void connect(String username) throws URISyntaxException {
         mUsername = username;
-        mSocket = IO.socket(SOCKET_URL);
+        mWantConnected = true;
+        IO.Options options = mSocketConfig.toOptions();
+        options.webSocketFactory = mUplink;
+        mSocket = IO.socket(SOCKET_URL, options);
 
         // Register the incoming events and their listeners
         // on the socket.
@@ -93,31 +141,117 @@ public class EventServiceImpl implements EventService {
         mSocket.on(EVENT_CONNECT_ERROR, onConnectError);
         mSocket.on(EVENT_CONNECT_TIMEOUT, onConnectError);
         mSocket.on(EVENT_NEW_MESSAGE, onNewMessage);
+        // Replies are new messages that belong to a thread
+        mSocket.on(EVENT_REPLY, onNewMessage);
         mSocket.on(EVENT_USER_JOINED, onUserJoined);
         mSocket.on(EVENT_USER_LEFT, onUserLeft);
         mSocket.on(EVENT_TYPING, onTyping);
         mSocket.on(EVENT_STOP_TYPING, onStopTyping);
+        mSocket.on(EVENT_READ, onRead);
+        mSocket.on(EVENT_REACTION, onReaction);
+        mSocket.on(EVENT_EDIT_MESSAGE, onMessageEdited);
+        mSocket.on(EVENT_DELETE_MESSAGE, onMessageDeleted);
+        mSocket.on(AttachmentTransfer.EVENT_ATTACHMENT_START, onAttachmentStart);
+        mSocket.on(AttachmentTransfer.EVENT_ATTACHMENT_CHUNK, onAttachmentChunk);
+        mSocket.on(AttachmentTransfer.EVENT_ATTACHMENT_END, onAttachmentEnd);
+        mSocket.on(EVENT_PING, onPing);
+        mSocket.on(EVENT_PONG, onPong);
+        mSocket.io().off(Manager.EVENT_PACKET, onPacket);
+        mSocket.io().on(Manager.EVENT_PACKET, onPacket);
+        updateConnectTimeout();
+
+        // Without a network the attempt would only fail and back off,
+        // it's made when a network becomes available instead
+        if (!mNetworkAvailable) {
+            Log.i(TAG, "connect: offline, waiting for a network");
+            return;
+        }
 
+        mConnectionMetrics.onConnectStarted();
         mSocket.connect();
     }
 
+    @Override
+    public synchronized boolean isConnectionWanted() {
+        return mWantConnected;
+    }
+
+    private synchronized AttachmentTransfer getAttachmentTransfer() {
+        if (mAttachmentTransfer == null) {
+            mAttachmentTransfer = new AttachmentTransfer(
+                    MediaCache.getInstance(),
+                    SchedulerProvider.getInstance().diskWriter(),
+                    new AttachmentTransfer.Callback() {
+                        @Override
+                        public void onAttachmentReceived(JSONObject data) {
+                            EventListener listener = mEventListener.get();
+                            if (listener != null) listener.onNewMessage(data);
+                        }
+                    });
+        }
+
+        return mAttachmentTransfer;
+    }
+
     /**
      * Disconnect from the server.
      *
      */
     @Override
-    public void disconnect() {
+    public synchronized void disconnect() {
+        mWantConnected = false;
+        mEventLoop.scheduleDirect(mStopHeartbeat);
+        if (mSocket != null) mSocket.disconnect();
+        if (mAttachmentTransfer != null) mAttachmentTransfer.clear();
+    }
+
+    /**
+     * Reconnect right away on a new default network. The socket may still
+     * look connected, but its TCP connection went down with the old
+     * network. Reconnecting from scratch also resets the backoff built up
+     * by failed attempts while offline.
+     */
+    @Override
+    public synchronized void onNetworkAvailable() {
+        mNetworkAvailable = true;
+        if (!mWantConnected) return;
+
+        mConnectionMetrics.onNetworkChanged();
+        reconnect();
+    }
+
+    /**
+     * Stop reconnect attempts while there's no network. They would all
+     * fail, and each failure makes the next attempt wait longer.
+     */
+    @Override
+    public synchronized void onNetworkLost() {
+        mNetworkAvailable = false;
+        mEventLoop.scheduleDirect(mStopHeartbeat);
         if (mSocket != null) mSocket.disconnect();
     }
 
+    private synchronized void reconnect() {
+        if (mSocket == null || !mNetworkAvailable) return;
+
+        mSocket.disconnect();
+        mConnectionMetrics.onConnectStarted();
+        mSocket.connect();
+    }
+
     /**
-     * Send chat message to the server.
+     * Send chat message to the server. Messages with an attachment are
+     * streamed in chunks, which blocks until the upload is done.
      *
      * @param chatMessage
      * @return
      */
     @Override
     public Flowable<ChatMessage> sendMessage(@NonNull final ChatMessage chatMessage) {
+        if (chatMessage.getAttachment() != null) {
+            return sendAttachment(chatMessage);
+        }
+
         return Flowable.create(new FlowableOnSubscribe<ChatMessage>() {
             @Override
             public void subscribe(FlowableEmitter<ChatMessage> emitter) throws Exception {
@@ -139,7 +273,39 @@ public class EventServiceImpl implements EventService {
                  *
                  * */
 
-                mSocket.emit(EVENT_NEW_MESSAGE, chatMessage.getMessage());
+                final FlowableEmitter<ChatMessage> messageEmitter = emitter;
+                String event = EVENT_NEW_MESSAGE;
+
+                // Every message carries its id, which edits, deletes,
+                // receipts and reactions refer to on the other clients
+                JSONObject payload = new JSONObject()
+                        .put("id", chatMessage.getId())
+                        .put("username", chatMessage.getUsername())
+                        .put("message", chatMessage.getMessage());
+
+                // Replies carry the id of the message their thread started on
+                if (chatMessage.getParentId() != null) {
+                    event = EVENT_REPLY;
+                    payload.put("parentId", chatMessage.getParentId());
+                }
+
+                enqueue(OutboundQueue.LANE_MESSAGE, new OutboundQueue.Packet(
+                        event, new Object[]{payload}, new Runnable() {
+                    @Override
+                    public void run() {
+                        messageEmitter.onNext(chatMessage);
+                    }
+                }));
+            }
+        }, BackpressureStrategy.BUFFER);
+    }
+
+    private Flowable<ChatMessage> sendAttachment(@NonNull final ChatMessage chatMessage) {
+        return Flowable.create(new FlowableOnSubscribe<ChatMessage>() {
+            @Override
+            public void subscribe(FlowableEmitter<ChatMessage> emitter) throws Exception {
+                mConnectionMetrics.onRadioActivity(false);
+                getAttachmentTransfer().upload(mSocket, chatMessage);
                 emitter.onNext(chatMessage);
             }
         }, BackpressureStrategy.BUFFER);
@@ -151,7 +317,7 @@ public class EventServiceImpl implements EventService {
      */
     @Override
     public void onTyping() {
-        mSocket.emit(EVENT_TYPING);
+        enqueueTyping(true, EVENT_TYPING);
     }
 
     /**
@@ -160,9 +326,130 @@ public class EventServiceImpl implements EventService {
      */
     @Override
     public void onStopTyping() {
-        mSocket.emit(EVENT_STOP_TYPING);
+        enqueueTyping(false, EVENT_STOP_TYPING);
+    }
+
+    @Override
+    public void sendReadReceipt(String messageId) {
+        final OutboundQueue.Packet packet;
+        try {
+            packet = new OutboundQueue.Packet(EVENT_READ,
+                    new Object[]{new JSONObject().put("messageId", messageId)}, null);
+        } catch (JSONException e) {
+            Log.e(TAG, "sendReadReceipt: " + e.getMessage());
+            return;
+        }
+
+        mEventLoop.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                mOutbound.offerReadReceipt(packet);
+                drainOutbound();
+            }
+        });
+    }
+
+    @Override
+    public void sendReaction(String messageId, String emoji, boolean added) {
+        try {
+            enqueue(OutboundQueue.LANE_PRESENCE, new OutboundQueue.Packet(EVENT_REACTION,
+                    new Object[]{new JSONObject()
+                            .put("messageId", messageId)
+                            .put("emoji", emoji)
+                            .put("added", added)}, null));
+        } catch (JSONException e) {
+            Log.e(TAG, "sendReaction: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void editMessage(String messageId, String message) {
+        try {
+            enqueue(OutboundQueue.LANE_MESSAGE, new OutboundQueue.Packet(EVENT_EDIT_MESSAGE,
+                    new Object[]{new JSONObject()
+                            .put("id", messageId)
+                            .put("message", message)}, null));
+        } catch (JSONException e) {
+            Log.e(TAG, "editMessage: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteMessage(String messageId) {
+        try {
+            enqueue(OutboundQueue.LANE_MESSAGE, new OutboundQueue.Packet(EVENT_DELETE_MESSAGE,
+                    new Object[]{new JSONObject().put("id", messageId)}, null));
+        } catch (JSONException e) {
+            Log.e(TAG, "deleteMessage: " + e.getMessage());
+        }
+    }
+
+    private void enqueue(final int lane, final OutboundQueue.Packet packet) {
+        mEventLoop.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                mOutbound.offer(lane, packet);
+                drainOutbound();
+            }
+        });
+    }
+
+    private void enqueueTyping(final boolean typing, String event) {
+        final OutboundQueue.Packet packet = new OutboundQueue.Packet(event, new Object[0], null);
+        mEventLoop.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                mOutbound.offerTyping(typing, packet);
+                drainOutbound();
+            }
+        });
+    }
+
+    /**
+     * Hand queued events to the socket by priority, as long as the uplink
+     * keeps up. While it's congested events wait here rather than behind
+     * each other in the websocket, so a new message still goes out before
+     * typing events queued earlier. Events queued while disconnected are
+     * sent once connected. Runs on the event loop.
+     */
+    private void drainOutbound() {
+        if (mDrainTask != null) {
+            mDrainTask.dispose();
+            mDrainTask = null;
+        }
+
+        Socket socket = mSocket;
+        if (socket == null || !socket.connected()) return;
+
+        OutboundQueue.Packet packet;
+        while (mUplink.getQueuedBytes() < MAX_QUEUED_UPLINK_BYTES
+                && (packet = mOutbound.poll()) != null) {
+            mConnectionMetrics.onRadioActivity(false);
+            socket.emit(packet.event, packet.args);
+            if (packet.onSent != null) packet.onSent.run();
+        }
+
+        // OkHttp doesn't tell when its queue drains, check back shortly
+        if (!mOutbound.isEmpty()) {
+            mDrainTask = mEventLoop.scheduleDirect(mDrainOutbound,
+                    CONGESTED_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
+    private final Runnable mOnOutboundDisconnected = new Runnable() {
+        @Override
+        public void run() {
+            mOutbound.onDisconnected();
+        }
+    };
+
+    private final Runnable mDrainOutbound = new Runnable() {
+        @Override
+        public void run() {
+            drainOutbound();
+        }
+    };
+
     /**
      * Set eventListener.
      *
@@ -170,18 +457,46 @@ public class EventServiceImpl implements EventService {
      * RemoteDataSource -> Repository -> Presenter -> View using EventListener.
      *
      * @param eventListener
+     * @return Disposable removing the listener
+     */
+    @Override
+    public Disposable setEventListener(@NonNull EventListener eventListener) {
+        return mEventListener.set(eventListener);
+    }
+
+    /**
+     * Set the transport options used from the next {@link #connect(String)}.
+     *
+     * @param socketConfig
+     */
+    @Override
+    public void setSocketConfig(@NonNull SocketConfig socketConfig) {
+        mSocketConfig = socketConfig;
+    }
+
+    /**
+     * Get connection timings, such as time from connect to connected,
+     * round trip times and radio wakeups.
+     *
+     * @return
      */
     @Override
-    public void setEventListener(EventListener eventListener) {
-        mEventListener = eventListener;
+    public ConnectionMetrics getConnectionMetrics() {
+        return mConnectionMetrics;
     }
 
     private Emitter.Listener onConnect = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
             Log.i(TAG, "call: onConnect");
+            mConnectionMetrics.onConnected();
+            mConnectionMetrics.onRadioActivity(false);
+            // Sent ahead of the queue, the server needs it before anything else
             mSocket.emit("add user", mUsername);
-            if (mEventListener != null) mEventListener.onConnect(args);
+            mEventLoop.scheduleDirect(mStartHeartbeat);
+            mEventLoop.scheduleDirect(mDrainOutbound);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onConnect(args);
         }
     };
 
@@ -189,7 +504,10 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(Object... args) {
             Log.i(TAG, "call: onDisconnect");
-            if (mEventListener != null) mEventListener.onDisconnect(args);
+            mEventLoop.scheduleDirect(mStopHeartbeat);
+            mEventLoop.scheduleDirect(mOnOutboundDisconnected);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onDisconnect(args);
         }
     };
 
@@ -197,7 +515,8 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(Object... args) {
             Log.i(TAG, "call: onConnectError");
-            if (mEventListener != null) mEventListener.onConnectError(args);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onConnectError(args);
         }
     };
 
@@ -205,7 +524,8 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(final Object... args) {
             Log.i(TAG, "call: onNewMessage");
-            if (mEventListener != null) mEventListener.onNewMessage(args);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onNewMessage(args);
         }
     };
 
@@ -213,7 +533,8 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(final Object... args) {
             Log.i(TAG, "call: onNewMessage");
-            if (mEventListener != null) mEventListener.onUserJoined(args);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onUserJoined(args);
         }
     };
 
@@ -221,7 +542,8 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(final Object... args) {
             Log.i(TAG, "call: onNewMessage");
-            if (mEventListener != null) mEventListener.onUserLeft(args);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onUserLeft(args);
         }
     };
 
@@ -229,7 +551,8 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(final Object... args) {
             Log.i(TAG, "call: onNewMessage");
-            if (mEventListener != null) mEventListener.onTyping(args);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onTyping(args);
         }
     };
 
@@ -237,7 +560,209 @@ public class EventServiceImpl implements EventService {
         @Override
         public void call(final Object... args) {
             Log.i(TAG, "call: onNewMessage");
-            if (mEventListener != null) mEventListener.onStopTyping(args);
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onStopTyping(args);
+        }
+    };
+
+    private Emitter.Listener onRead = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onRead(args);
+        }
+    };
+
+    private Emitter.Listener onReaction = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onReaction(args);
+        }
+    };
+
+    private Emitter.Listener onMessageEdited = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onMessageEdited(args);
+        }
+    };
+
+    private Emitter.Listener onMessageDeleted = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            EventListener listener = mEventListener.get();
+            if (listener != null) listener.onMessageDeleted(args);
+        }
+    };
+
+    private Emitter.Listener onAttachmentStart = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            getAttachmentTransfer().onStart((JSONObject) args[0]);
+        }
+    };
+
+    private Emitter.Listener onAttachmentChunk = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            getAttachmentTransfer().onChunk((JSONObject) args[0]);
+
+            // Ack so the sender can put the next chunk in flight
+            if (args.length > 1 && args[args.length - 1] instanceof Ack) {
+                ((Ack) args[args.length - 1]).call();
+            }
+        }
+    };
+
+    private Emitter.Listener onAttachmentEnd = new Emitter.Listener() {
+        @Override
+        public void call(final Object... args) {
+            getAttachmentTransfer().onEnd((JSONObject) args[0]);
+        }
+    };
+
+    private Emitter.Listener onPacket = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            // Anything received proves the connection is alive
+            mLastReceivedAt = SystemClock.elapsedRealtime();
+            mConnectionMetrics.onRadioActivity(false);
+        }
+    };
+
+    private Emitter.Listener onPing = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            mConnectionMetrics.onRadioActivity(true);
+        }
+    };
+
+    private Emitter.Listener onPong = new Emitter.Listener() {
+        @Override
+        public void call(Object... args) {
+            mLastReceivedAt = SystemClock.elapsedRealtime();
+            mConnectionMetrics.onRadioActivity(true);
+
+            if (args.length > 0 && args[0] instanceof Number) {
+                mConnectionMetrics.onRttSample(((Number) args[0]).longValue());
+                updateConnectTimeout();
+            }
+        }
+    };
+
+    /**
+     * Fit the timeout of connection attempts, reconnects included,
+     * to the round trip time measured so far.
+     */
+    private void updateConnectTimeout() {
+        Socket socket = mSocket;
+        if (socket == null) return;
+
+        socket.io().timeout(mHeartbeatPolicy.getConnectTimeoutMillis(
+                mSocketConfig.getTimeoutMillis()));
+    }
+
+    /*
+     * Heartbeats complement the engine.io ping, whose interval is set by
+     * the server. A probe is only sent when nothing has been received for
+     * the interval chosen by the HeartbeatPolicy, so on a good link the
+     * engine.io pongs keep the probes from ever being sent, while on a bad
+     * link a dead connection is noticed within seconds.
+     */
+
+    private final Runnable mStartHeartbeat = new Runnable() {
+        @Override
+        public void run() {
+            mHeartbeatPolicy.onConnected();
+            scheduleHeartbeat(mHeartbeatPolicy.getIntervalMillis());
+        }
+    };
+
+    private final Runnable mStopHeartbeat = new Runnable() {
+        @Override
+        public void run() {
+            cancelHeartbeat();
+            mPendingHeartbeat = 0;
+        }
+    };
+
+    private final Runnable mSendHeartbeat = new Runnable() {
+        @Override
+        public void run() {
+            Socket socket = mSocket;
+            if (socket == null || !socket.connected()) return;
+
+            long idle = SystemClock.elapsedRealtime() - mLastReceivedAt;
+            long interval = mHeartbeatPolicy.getIntervalMillis();
+            if (idle < interval) {
+                scheduleHeartbeat(interval - idle);
+                return;
+            }
+
+            final int heartbeat = ++mHeartbeatCount;
+            final long sentAt = SystemClock.elapsedRealtime();
+            mPendingHeartbeat = heartbeat;
+            mConnectionMetrics.onRadioActivity(true);
+
+            socket.emit(EVENT_HEARTBEAT, new Object[0], new Ack() {
+                @Override
+                public void call(Object... args) {
+                    final long rtt = SystemClock.elapsedRealtime() - sentAt;
+                    mEventLoop.scheduleDirect(new Runnable() {
+                        @Override
+                        public void run() {
+                            onHeartbeatAck(heartbeat, rtt);
+                        }
+                    });
+                }
+            });
+
+            cancelHeartbeat();
+            mHeartbeatTask = mEventLoop.scheduleDirect(new Runnable() {
+                @Override
+                public void run() {
+                    onHeartbeatMissed(heartbeat);
+                }
+            }, mHeartbeatPolicy.getTimeoutMillis(), TimeUnit.MILLISECONDS);
         }
     };
+
+    private void onHeartbeatAck(int heartbeat, long rttMillis) {
+        mConnectionMetrics.onRttSample(rttMillis);
+        updateConnectTimeout();
+
+        // Late acks still count as round trips, but the probe has been given up
+        if (heartbeat != mPendingHeartbeat) return;
+
+        mPendingHeartbeat = 0;
+        mHeartbeatPolicy.onAck(rttMillis);
+        scheduleHeartbeat(mHeartbeatPolicy.getIntervalMillis());
+    }
+
+    private void onHeartbeatMissed(int heartbeat) {
+        if (heartbeat != mPendingHeartbeat) return;
+
+        mPendingHeartbeat = 0;
+        if (mHeartbeatPolicy.onMissed()) {
+            Log.i(TAG, "onHeartbeatMissed: connection is dead, reconnecting");
+            reconnect();
+            return;
+        }
+
+        scheduleHeartbeat(mHeartbeatPolicy.getIntervalMillis());
+    }
+
+    private void scheduleHeartbeat(long delayMillis) {
+        cancelHeartbeat();
+        mHeartbeatTask = mEventLoop.scheduleDirect(mSendHeartbeat, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelHeartbeat() {
+        if (mHeartbeatTask != null) {
+            mHeartbeatTask.dispose();
+            mHeartbeatTask = null;
+        }
+    }
 }
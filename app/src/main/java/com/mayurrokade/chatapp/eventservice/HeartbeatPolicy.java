@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+/**
+ * Decides how often the connection is probed and when it's given up
+ * as dead, from how the link has been behaving.
+ *
+ * Every probe that's acked in time on a steady link doubles the interval,
+ * up to a few minutes, so a good connection wakes the radio rarely. A late
+ * or jittery ack halves it and a missed one drops it to the minimum, so a
+ * bad connection is checked often and a dead one is noticed in seconds.
+ *
+ * Not thread safe.
+ */
+class HeartbeatPolicy {
+
+    static final long MIN_INTERVAL_MILLIS = 15 * 1000;
+    static final long MAX_INTERVAL_MILLIS = 4 * 60 * 1000;
+    static final long MIN_TIMEOUT_MILLIS = 2000;
+    static final long MAX_TIMEOUT_MILLIS = 20000;
+    static final long MIN_CONNECT_TIMEOUT_MILLIS = 3000;
+    static final long MAX_CONNECT_TIMEOUT_MILLIS = 60000;
+
+    // Consecutive missed probes before the connection is dead
+    private static final int MAX_MISSED = 2;
+
+    // Connecting takes a few round trips: TCP, TLS, websocket upgrade
+    // and the engine.io handshake
+    private static final int CONNECT_ROUND_TRIPS = 6;
+
+    private final ConnectionMetrics mMetrics;
+    private long mIntervalMillis = MIN_INTERVAL_MILLIS;
+    private int mMissed;
+    private boolean mSupported;
+
+    /**
+     * Use this constructor to create a new HeartbeatPolicy.
+     *
+     * @param metrics {@link ConnectionMetrics} fed with every round trip measured on the connection
+     */
+    HeartbeatPolicy(ConnectionMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Returns time from the last traffic on the connection to the next
+     * probe. A missed probe is retried right away.
+     *
+     * @return milliseconds
+     */
+    long getIntervalMillis() {
+        return mMissed > 0 ? 0 : mIntervalMillis;
+    }
+
+    /**
+     * @return time to wait for the ack of a probe
+     */
+    long getTimeoutMillis() {
+        long timeout = mMetrics.getRttTimeoutMillis();
+        if (timeout < 0) return MAX_TIMEOUT_MILLIS;
+
+        return clamp(2 * timeout, MIN_TIMEOUT_MILLIS, MAX_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Returns how long a connection attempt may take before it's retried.
+     *
+     * @param defaultMillis Timeout to use until a round trip has been measured
+     * @return milliseconds
+     */
+    long getConnectTimeoutMillis(long defaultMillis) {
+        long timeout = mMetrics.getRttTimeoutMillis();
+        if (timeout < 0) return defaultMillis;
+
+        return clamp(CONNECT_ROUND_TRIPS * timeout,
+                MIN_CONNECT_TIMEOUT_MILLIS, MAX_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Call this when a probe is acked. Its round trip must
+     * have been added to the {@link ConnectionMetrics} already.
+     *
+     * @param rttMillis Round trip of the probe
+     */
+    void onAck(long rttMillis) {
+        mSupported = true;
+        mMissed = 0;
+
+        boolean steady = rttMillis <= mMetrics.getRttTimeoutMillis()
+                && 2 * mMetrics.getRttJitterMillis() <= mMetrics.getSmoothedRttMillis();
+
+        mIntervalMillis = steady
+                ? Math.min(2 * mIntervalMillis, MAX_INTERVAL_MILLIS)
+                : Math.max(mIntervalMillis / 2, MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Call this when a probe isn't acked within {@link #getTimeoutMillis()}.
+     *
+     * @return true if the connection should be considered dead
+     */
+    boolean onMissed() {
+        mMissed++;
+        mIntervalMillis = MIN_INTERVAL_MILLIS;
+
+        // A server that never acked doesn't know about probes,
+        // so missing acks says nothing about the connection
+        return mSupported && mMissed >= MAX_MISSED;
+    }
+
+    /**
+     * Call this on every new connection. Link conditions are kept,
+     * the interval starts again from the minimum.
+     */
+    void onConnected() {
+        mIntervalMillis = MIN_INTERVAL_MILLIS;
+        mMissed = 0;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
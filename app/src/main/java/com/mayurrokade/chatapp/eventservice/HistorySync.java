@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.functions.Cancellable;
+import io.socket.client.Ack;
+import io.socket.client.IO;
+import io.socket.client.Socket;
+import io.socket.emitter.Emitter;
+
+/**
+ * Fetches the messages sent while the app was in the background.
+ *
+ * Each fetch uses a short lived socket of its own, apart from
+ * {@link EventServiceImpl}. It never joins the chat, so other users
+ * don't see the app come and go. The server answers a "sync" event
+ * with the messages sent after a given id, oldest first, in one ack.
+ */
+public class HistorySync {
+
+    /**
+     * Most messages fetched at once.
+     */
+    public static final int MAX_MESSAGES = 500;
+
+    private static final String EVENT_SYNC = "sync";
+    private static final long TIMEOUT_SECONDS = 30;
+
+    // Prevent instantiation
+    private HistorySync() {
+    }
+
+    /**
+     * Connect, fetch the missed messages and disconnect.
+     *
+     * @param afterId Id of the latest message stored, or null for the latest messages
+     * @return Flowable emitting the messages as sent with "new message"
+     */
+    @NonNull
+    public static Flowable<JSONArray> fetch(@Nullable final String afterId) {
+        return Flowable.create(new FlowableOnSubscribe<JSONArray>() {
+            @Override
+            public void subscribe(final FlowableEmitter<JSONArray> emitter) throws Exception {
+                // A failed sync is retried by whoever scheduled it
+                IO.Options options = new SocketConfig.Builder()
+                        .setReconnection(false)
+                        .build()
+                        .toOptions();
+                final Socket socket = IO.socket(EventServiceImpl.SOCKET_URL, options);
+
+                final JSONObject request = new JSONObject().put("limit", MAX_MESSAGES);
+                if (afterId != null) request.put("after", afterId);
+
+                Emitter.Listener onConnectError = new Emitter.Listener() {
+                    @Override
+                    public void call(Object... args) {
+                        emitter.tryOnError(new IOException("Cannot connect to sync history"));
+                    }
+                };
+
+                socket.on(Socket.EVENT_CONNECT, new Emitter.Listener() {
+                    @Override
+                    public void call(Object... args) {
+                        socket.emit(EVENT_SYNC, new Object[]{request}, new Ack() {
+                            @Override
+                            public void call(Object... args) {
+                                if (args.length > 0 && args[0] instanceof JSONArray) {
+                                    emitter.onNext((JSONArray) args[0]);
+                                    emitter.onComplete();
+                                } else {
+                                    emitter.tryOnError(new IOException("Unexpected sync response"));
+                                }
+                            }
+                        });
+                    }
+                });
+                socket.on(Socket.EVENT_CONNECT_ERROR, onConnectError);
+                socket.on(Socket.EVENT_CONNECT_TIMEOUT, onConnectError);
+
+                emitter.setCancellable(new Cancellable() {
+                    @Override
+                    public void cancel() throws Exception {
+                        socket.off();
+                        socket.disconnect();
+                    }
+                });
+
+                socket.connect();
+            }
+        }, BackpressureStrategy.LATEST)
+                .timeout(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Outgoing events waiting for the socket, in lanes by priority:
+ * messages first, then presence, then read receipts, then typing.
+ *
+ * A read receipt carries the latest message read, so a newer one
+ * replaces the one waiting and at most one is ever queued.
+ *
+ * Typing events only tell the server the latest typing state, so the
+ * typing lane holds at most one. A typing event followed by stop typing
+ * before either was sent cancels out, and nothing is sent at all.
+ *
+ * Not thread safe. Use it from a single thread, like the event loop.
+ */
+class OutboundQueue {
+
+    static final int LANE_MESSAGE = 0;
+    static final int LANE_PRESENCE = 1;
+
+    /**
+     * An event to emit on the socket.
+     */
+    static class Packet {
+        final String event;
+        final Object[] args;
+        final Runnable onSent;
+
+        /**
+         * @param event  Name of the event
+         * @param args   Arguments of the event
+         * @param onSent Run once the event has been handed to the socket
+         */
+        Packet(@NonNull String event, @NonNull Object[] args, @Nullable Runnable onSent) {
+            this.event = event;
+            this.args = args;
+            this.onSent = onSent;
+        }
+    }
+
+    private final ArrayDeque<Packet> mMessages = new ArrayDeque<>();
+    private final ArrayDeque<Packet> mPresence = new ArrayDeque<>();
+    private Packet mReadReceipt;
+    private Packet mTyping;
+    private boolean mPendingTyping;
+    private boolean mSentTyping;
+
+    /**
+     * @param lane   {@link #LANE_MESSAGE} or {@link #LANE_PRESENCE}
+     * @param packet {@link Packet}
+     */
+    void offer(int lane, @NonNull Packet packet) {
+        if (lane == LANE_MESSAGE) {
+            mMessages.add(packet);
+        } else {
+            mPresence.add(packet);
+        }
+    }
+
+    /**
+     * Queue a read receipt, replacing one that hasn't been sent.
+     *
+     * @param packet {@link Packet} with the latest message read
+     */
+    void offerReadReceipt(@NonNull Packet packet) {
+        mReadReceipt = packet;
+    }
+
+    /**
+     * Queue a change of the typing state, replacing one that hasn't been sent.
+     *
+     * @param typing true for typing, false for stop typing
+     * @param packet {@link Packet} telling the server
+     */
+    void offerTyping(boolean typing, @NonNull Packet packet) {
+        if (typing == mSentTyping) {
+            // The server already has this state
+            mTyping = null;
+        } else {
+            mTyping = packet;
+            mPendingTyping = typing;
+        }
+    }
+
+    /**
+     * Returns the next packet to send, by priority.
+     *
+     * @return {@link Packet} or null if nothing is waiting
+     */
+    @Nullable
+    Packet poll() {
+        Packet packet = mMessages.poll();
+        if (packet != null) return packet;
+
+        packet = mPresence.poll();
+        if (packet != null) return packet;
+
+        packet = mReadReceipt;
+        if (packet != null) {
+            mReadReceipt = null;
+            return packet;
+        }
+
+        packet = mTyping;
+        if (packet != null) {
+            mTyping = null;
+            mSentTyping = mPendingTyping;
+        }
+        return packet;
+    }
+
+    boolean isEmpty() {
+        return mMessages.isEmpty() && mPresence.isEmpty()
+                && mReadReceipt == null && mTyping == null;
+    }
+
+    /**
+     * Call this when the socket disconnects. Messages and the read receipt
+     * are kept to be sent on the next connection. The typing state isn't, the server clears
+     * it along with the connection.
+     */
+    void onDisconnected() {
+        mTyping = null;
+        mSentTyping = false;
+    }
+}
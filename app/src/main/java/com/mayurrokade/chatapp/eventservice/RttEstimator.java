@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+/**
+ * Smoothed round-trip time and jitter, estimated the way TCP does it
+ * (RFC 6298). Each sample moves the average by an eighth and the jitter
+ * by a quarter of the difference, so a single slow round trip doesn't
+ * swing the estimate. All times are in milliseconds.
+ *
+ * Not thread safe.
+ */
+class RttEstimator {
+
+    // Gains from RFC 6298, as shifts so the estimate stays in integers
+    private static final int RTT_SHIFT = 3;
+    private static final int JITTER_SHIFT = 2;
+    private static final int JITTER_FACTOR = 4;
+
+    private long mSmoothedRtt = -1;
+    private long mJitter = -1;
+    private int mSampleCount;
+
+    /**
+     * Add a round trip time measurement.
+     *
+     * @param rttMillis
+     */
+    void addSample(long rttMillis) {
+        if (rttMillis < 0) return;
+
+        if (mSampleCount == 0) {
+            mSmoothedRtt = rttMillis;
+            mJitter = rttMillis / 2;
+        } else {
+            mJitter += (Math.abs(mSmoothedRtt - rttMillis) - mJitter) >> JITTER_SHIFT;
+            mSmoothedRtt += (rttMillis - mSmoothedRtt) >> RTT_SHIFT;
+        }
+
+        mSampleCount++;
+    }
+
+    /**
+     * @return smoothed round trip time, or -1 before the first sample
+     */
+    long getSmoothedRtt() {
+        return mSmoothedRtt;
+    }
+
+    /**
+     * @return mean deviation of the round trip time, or -1 before the first sample
+     */
+    long getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * Returns how long to wait for a reply before it's considered
+     * late: the smoothed round trip time plus four times the jitter.
+     *
+     * @return milliseconds, or -1 before the first sample
+     */
+    long getTimeout() {
+        return mSampleCount == 0 ? -1 : mSmoothedRtt + JITTER_FACTOR * mJitter;
+    }
+
+    int getSampleCount() {
+        return mSampleCount;
+    }
+
+    void reset() {
+        mSmoothedRtt = -1;
+        mJitter = -1;
+        mSampleCount = 0;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import io.socket.client.IO;
+import io.socket.engineio.client.transports.Polling;
+import io.socket.engineio.client.transports.WebSocket;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * Transport options used by {@link EventServiceImpl} to connect to the server.
+ *
+ * Every connection shares one {@link OkHttpClient}. Its connection pool
+ * keeps sockets alive across reconnects and its TLS session cache lets
+ * reconnects resume the previous TLS session instead of doing a full
+ * handshake.
+ */
+public class SocketConfig {
+
+    private static OkHttpClient sHttpClient;
+
+    private final boolean websocketOnly;
+    private final long timeoutMillis;
+    private final boolean reconnection;
+    private final int reconnectionAttempts;
+    private final long reconnectionDelayMillis;
+    private final long reconnectionDelayMaxMillis;
+
+    private SocketConfig(Builder builder) {
+        this.websocketOnly = builder.websocketOnly;
+        this.timeoutMillis = builder.timeoutMillis;
+        this.reconnection = builder.reconnection;
+        this.reconnectionAttempts = builder.reconnectionAttempts;
+        this.reconnectionDelayMillis = builder.reconnectionDelayMillis;
+        this.reconnectionDelayMaxMillis = builder.reconnectionDelayMaxMillis;
+    }
+
+    /**
+     * Returns the default config, which skips the long-polling
+     * handshake and connects over websocket straight away.
+     *
+     * @return {@link SocketConfig}
+     */
+    @NonNull
+    public static SocketConfig getDefault() {
+        return new Builder().build();
+    }
+
+    public boolean isWebsocketOnly() {
+        return websocketOnly;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public boolean isReconnection() {
+        return reconnection;
+    }
+
+    public int getReconnectionAttempts() {
+        return reconnectionAttempts;
+    }
+
+    public long getReconnectionDelayMillis() {
+        return reconnectionDelayMillis;
+    }
+
+    public long getReconnectionDelayMaxMillis() {
+        return reconnectionDelayMaxMillis;
+    }
+
+    /**
+     * Build socket.io options from this config.
+     *
+     * @return {@link IO.Options}
+     */
+    @NonNull
+    public IO.Options toOptions() {
+        IO.Options options = new IO.Options();
+
+        if (websocketOnly) {
+            options.transports = new String[]{WebSocket.NAME};
+        } else {
+            options.transports = new String[]{Polling.NAME, WebSocket.NAME};
+        }
+
+        options.timeout = timeoutMillis;
+        options.reconnection = reconnection;
+        options.reconnectionAttempts = reconnectionAttempts;
+        options.reconnectionDelay = reconnectionDelayMillis;
+        options.reconnectionDelayMax = reconnectionDelayMaxMillis;
+
+        OkHttpClient httpClient = getHttpClient();
+        options.callFactory = httpClient;
+        options.webSocketFactory = httpClient;
+
+        return options;
+    }
+
+    /**
+     * Returns the HTTP client shared by every socket connection,
+     * creating it if necessary.
+     *
+     * @return {@link OkHttpClient}
+     */
+    @NonNull
+    public static synchronized OkHttpClient getHttpClient() {
+        if (sHttpClient == null) {
+            sHttpClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(2, 5, TimeUnit.MINUTES))
+                    // socket.io sends its own heartbeats, long lived
+                    // websockets must not be cut by a read timeout
+                    .readTimeout(0, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        return sHttpClient;
+    }
+
+    public static class Builder {
+        private boolean websocketOnly = true;
+        private long timeoutMillis = 10000;
+        private boolean reconnection = true;
+        private int reconnectionAttempts = Integer.MAX_VALUE;
+        private long reconnectionDelayMillis = 1000;
+        private long reconnectionDelayMaxMillis = 5000;
+
+        public Builder setWebsocketOnly(boolean websocketOnly) {
+            this.websocketOnly = websocketOnly;
+            return this;
+        }
+
+        public Builder setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public Builder setReconnection(boolean reconnection) {
+            this.reconnection = reconnection;
+            return this;
+        }
+
+        public Builder setReconnectionAttempts(int reconnectionAttempts) {
+            this.reconnectionAttempts = reconnectionAttempts;
+            return this;
+        }
+
+        public Builder setReconnectionDelayMillis(long reconnectionDelayMillis) {
+            this.reconnectionDelayMillis = reconnectionDelayMillis;
+            return this;
+        }
+
+        public Builder setReconnectionDelayMaxMillis(long reconnectionDelayMaxMillis) {
+            this.reconnectionDelayMaxMillis = reconnectionDelayMaxMillis;
+            return this;
+        }
+
+        public SocketConfig build() {
+            return new SocketConfig(this);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.eventservice;
+
+import android.support.annotation.NonNull;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Creates the websockets of the socket connection and keeps the latest,
+ * to tell how much is still waiting to go out on the uplink.
+ */
+class UplinkMonitor implements WebSocket.Factory {
+
+    private final WebSocket.Factory mFactory;
+    private volatile WebSocket mWebSocket;
+
+    /**
+     * Use this constructor to create a new UplinkMonitor.
+     *
+     * @param factory Factory creating the websockets, usually the OkHttpClient
+     */
+    UplinkMonitor(@NonNull WebSocket.Factory factory) {
+        mFactory = factory;
+    }
+
+    @Override
+    public WebSocket newWebSocket(Request request, WebSocketListener listener) {
+        WebSocket webSocket = mFactory.newWebSocket(request, listener);
+        mWebSocket = webSocket;
+        return webSocket;
+    }
+
+    /**
+     * Returns the bytes handed to the websocket that haven't been
+     * transmitted yet. A slow uplink makes this grow.
+     *
+     * @return bytes, 0 if there is no websocket
+     */
+    long getQueuedBytes() {
+        WebSocket webSocket = mWebSocket;
+        return webSocket != null ? webSocket.queueSize() : 0;
+    }
+}
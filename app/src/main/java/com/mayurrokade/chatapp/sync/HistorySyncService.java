@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.source.local.LocalDataSource;
+import com.mayurrokade.chatapp.data.source.remote.EndToEndCipher;
+import com.mayurrokade.chatapp.eventservice.EventServiceImpl;
+import com.mayurrokade.chatapp.eventservice.HistorySync;
+import com.mayurrokade.chatapp.util.Injection;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+
+/**
+ * Periodic job that pulls the messages missed while the app was in the
+ * background into the local store, so the chat screen shows fresh
+ * history as soon as it opens instead of waiting for the network.
+ *
+ * The job only runs on an unmetered network and, from Android O, when
+ * the battery isn't low. It stays away while the app is in the
+ * foreground, where the live connection keeps the store up to date.
+ * Messages encrypted end-to-end are left out, the passphrase is only
+ * ever held by the foreground session.
+ *
+ * Requires Lollipop. Older releases sync when the app is opened.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class HistorySyncService extends JobService {
+
+    private static final String TAG = HistorySyncService.class.getSimpleName();
+    private static final int JOB_ID = 4501;
+    private static final long INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private Disposable mSync;
+
+    /**
+     * Schedule the periodic sync, unless it's scheduled already.
+     * Cheap enough to call from {@link android.app.Application#onCreate()}.
+     *
+     * @param context
+     */
+    public static void schedule(@NonNull Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) return;
+
+        for (JobInfo pending : jobScheduler.getAllPendingJobs()) {
+            if (pending.getId() == JOB_ID) return;
+        }
+
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, HistorySyncService.class))
+                .setPeriodic(INTERVAL_MILLIS)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setPersisted(true);
+
+        // Requiring a charger would starve devices that are rarely plugged in
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+
+        jobScheduler.schedule(builder.build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        if (EventServiceImpl.getInstance().isConnectionWanted()) return false;
+
+        final LocalDataSource localDataSource =
+                Injection.provideLocalDataSource(getApplicationContext());
+
+        mSync = localDataSource.getMessages(1)
+                .take(1)
+                .flatMap(new Function<List<ChatMessage>, Publisher<JSONArray>>() {
+                    @Override
+                    public Publisher<JSONArray> apply(List<ChatMessage> latest) throws Exception {
+                        return HistorySync.fetch(latest.isEmpty() ? null : latest.get(0).getId());
+                    }
+                })
+                .observeOn(Injection.provideSchedulerProvider().io())
+                // Blocks until the disk writer has saved the batch
+                .map(new Function<JSONArray, Integer>() {
+                    @Override
+                    public Integer apply(JSONArray messages) throws Exception {
+                        return localDataSource.saveMessages(toChatMessages(messages));
+                    }
+                })
+                .subscribe(new Consumer<Integer>() {
+                    @Override
+                    public void accept(Integer saved) throws Exception {
+                        Log.i(TAG, "onStartJob: synced " + saved + " messages");
+                        jobFinished(params, false);
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        Log.e(TAG, "onStartJob: " + throwable.getMessage());
+                        jobFinished(params, true);
+                    }
+                });
+
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mSync != null) mSync.dispose();
+        return true;
+    }
+
+    private static List<ChatMessage> toChatMessages(JSONArray messages) {
+        List<ChatMessage> chatMessages = new ArrayList<>(messages.length());
+
+        for (int i = 0; i < messages.length(); i++) {
+            JSONObject data = messages.optJSONObject(i);
+            if (data == null || EndToEndCipher.isEncrypted(data.optString("message"))) continue;
+
+            try {
+                chatMessages.add(ChatMessage.fromJson(data, ChatMessage.TYPE_MESSAGE_RECEIVED));
+            } catch (Exception e) {
+                Log.e(TAG, "toChatMessages: " + e.getMessage());
+            }
+        }
+
+        return chatMessages;
+    }
+}
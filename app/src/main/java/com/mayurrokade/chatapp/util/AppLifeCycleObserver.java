@@ -26,20 +26,40 @@ import android.arch.lifecycle.Lifecycle;
 import android.arch.lifecycle.LifecycleObserver;
 import android.arch.lifecycle.OnLifecycleEvent;
 import android.content.Context;
+import android.util.Log;
 import android.widget.Toast;
 
 import com.mayurrokade.chatapp.eventservice.EventServiceImpl;
+import com.mayurrokade.chatapp.util.schedulers.SchedulerProvider;
+import com.mayurrokade.chatapp.util.schedulers.SchedulerStats;
 
 import java.net.URISyntaxException;
 
 /**
  * Closes the socket connection when app is in background and
  * connects to socket when the app is in foreground.
+ *
+ * On cold start the connection is deferred until the first frame
+ * has been drawn, so socket setup doesn't delay the first screen.
  */
 public class AppLifeCycleObserver implements LifecycleObserver {
 
+    private static final String TAG = AppLifeCycleObserver.class.getSimpleName();
     private Context mContext;
 
+    private Runnable mConnect = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                StartupTracer.mark(StartupTracer.SOCKET_CONNECT_STARTED);
+                EventServiceImpl.getInstance().connect(User.getUsername());
+            } catch (URISyntaxException e) {
+                Toast.makeText(mContext, "Failed to connect to chat server.", Toast.LENGTH_LONG).show();
+                e.printStackTrace();
+            }
+        }
+    };
+
     /**
      * Use this constructor to create a new AppLifeCycleObserver
      *
@@ -54,12 +74,7 @@ public class AppLifeCycleObserver implements LifecycleObserver {
      */
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     public void onEnterForeground() {
-        try {
-            EventServiceImpl.getInstance().connect(User.getUsername());
-        } catch (URISyntaxException e) {
-            Toast.makeText(mContext, "Failed to connect to chat server.", Toast.LENGTH_LONG).show();
-            e.printStackTrace();
-        }
+        StartupTracer.runAfterFirstFrame(mConnect);
     }
 
     /**
@@ -67,6 +82,17 @@ public class AppLifeCycleObserver implements LifecycleObserver {
      */
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void onEnterBackground() {
+        StartupTracer.cancelAfterFirstFrame(mConnect);
         EventServiceImpl.getInstance().disconnect();
+        logSchedulerStats();
+    }
+
+    /**
+     * Log how the dedicated schedulers did while the app was in foreground.
+     */
+    private void logSchedulerStats() {
+        for (SchedulerStats stats : SchedulerProvider.getInstance().getStats()) {
+            Log.i(TAG, stats.toString());
+        }
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size Bloom filter for strings.
+ *
+ * {@link #mightContain(String)} never returns false for a string that was
+ * added, but may return true for one that wasn't. Memory use is fixed when
+ * the filter is created, however many strings are added.
+ */
+public class BloomFilter {
+
+    private final long[] mBits;
+    private final int mBitCount;
+    private final int mHashCount;
+
+    /**
+     * Use this constructor to create a new BloomFilter.
+     *
+     * @param expectedInsertions Number of strings the filter is sized for
+     * @param falsePositiveRate  Wanted false positive rate at that size, e.g. 0.01
+     */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        int bitCount = (int) Math.ceil(
+                -expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+
+        mBits = new long[(Math.max(bitCount, 64) + 63) / 64];
+        mBitCount = mBits.length * 64;
+        mHashCount = Math.max(1, (int) Math.round((double) mBitCount / expectedInsertions * ln2));
+    }
+
+    public void add(String value) {
+        int h1 = value.hashCode();
+        int h2 = mix(h1);
+
+        // Double hashing, see Kirsch and Mitzenmacher
+        for (int i = 0; i < mHashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % mBitCount;
+            mBits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String value) {
+        int h1 = value.hashCode();
+        int h2 = mix(h1);
+
+        for (int i = 0; i < mHashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % mBitCount;
+            if ((mBits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(mBits, 0);
+    }
+
+    /**
+     * Returns the size of the filter in bytes.
+     *
+     * @return bytes
+     */
+    public int sizeInBytes() {
+        return mBits.length * 8;
+    }
+
+    // Murmur3 finalizer, spreads the bits of String.hashCode()
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Lowercase hex encoding of bytes.
+ */
+public class Hex {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @NonNull
+    public static String encode(@NonNull byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    @NonNull
+    public static String encode(@NonNull byte[] bytes, int offset, int length) {
+        char[] chars = new char[length * 2];
+
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[offset + i];
+            chars[i * 2] = HEX[(b >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[b & 0xf];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Decode hex from a position in a string to its end.
+     *
+     * @param hex    String containing hex
+     * @param offset Position the hex starts at
+     * @return bytes
+     * @throws IllegalArgumentException if it isn't valid hex
+     */
+    @NonNull
+    public static byte[] decode(@NonNull String hex, int offset) {
+        int length = hex.length() - offset;
+        if (length < 0 || length % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits");
+        }
+
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(offset + i * 2), 16);
+            int low = Character.digit(hex.charAt(offset + i * 2 + 1), 16);
+            if (high == -1 || low == -1) {
+                throw new IllegalArgumentException("Invalid hex digit");
+            }
+
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        return bytes;
+    }
+}
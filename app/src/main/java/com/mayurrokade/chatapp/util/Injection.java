@@ -23,9 +23,13 @@
 package com.mayurrokade.chatapp.util;
 
 import android.content.Context;
+import android.content.res.Resources;
 
+import com.mayurrokade.chatapp.R;
+import com.mayurrokade.chatapp.chat.TextAnalyzer;
 import com.mayurrokade.chatapp.data.source.Repository;
 import com.mayurrokade.chatapp.data.source.local.LocalDataSource;
+import com.mayurrokade.chatapp.data.source.local.SqliteMessageStore;
 import com.mayurrokade.chatapp.data.source.remote.RemoteDataSource;
 import com.mayurrokade.chatapp.util.schedulers.BaseSchedulerProvider;
 import com.mayurrokade.chatapp.util.schedulers.SchedulerProvider;
@@ -33,7 +37,21 @@ import com.mayurrokade.chatapp.util.schedulers.SchedulerProvider;
 public class Injection {
     public static Repository providesRepository(Context context) {
         return Repository.getInstance(RemoteDataSource.getInstance(),
-                LocalDataSource.getInstance());
+                provideLocalDataSource(context));
+    }
+
+    public static LocalDataSource provideLocalDataSource(Context context) {
+        return LocalDataSource.getInstance(
+                SqliteMessageStore.getInstance(context),
+                provideSchedulerProvider().io(),
+                provideSchedulerProvider().diskWriter());
+    }
+
+    public static TextAnalyzer provideTextAnalyzer(Context context) {
+        Resources resources = context.getResources();
+        return TextAnalyzer.getInstance(
+                resources.getStringArray(R.array.highlighted_keywords),
+                resources.getStringArray(R.array.blocked_words));
     }
 
     public static BaseSchedulerProvider provideSchedulerProvider() {
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.functions.Action;
+
+/**
+ * Holds the single listener of a long lived object, such as a singleton,
+ * for only as long as its owner needs it.
+ *
+ * Setting a listener returns a {@link Disposable}. Disposing it, usually
+ * along with the owner's other subscriptions, drops the listener so
+ * whatever it references, like a screen, can be collected.
+ *
+ * @param <T> Type of the listener
+ */
+public class ListenerSlot<T> {
+
+    private final AtomicReference<T> mListener = new AtomicReference<>();
+
+    /**
+     * Set the listener, replacing the previous one.
+     *
+     * @param listener
+     * @return Disposable which removes the listener, unless it has been replaced since
+     */
+    @NonNull
+    public Disposable set(@NonNull final T listener) {
+        mListener.set(listener);
+
+        return Disposables.fromAction(new Action() {
+            @Override
+            public void run() throws Exception {
+                mListener.compareAndSet(listener, null);
+            }
+        });
+    }
+
+    /**
+     * @return the listener, or null if there is none
+     */
+    @Nullable
+    public T get() {
+        return mListener.get();
+    }
+}
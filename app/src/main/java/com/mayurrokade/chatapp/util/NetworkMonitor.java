@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import com.mayurrokade.chatapp.eventservice.EventService;
+import com.mayurrokade.chatapp.eventservice.EventServiceImpl;
+
+/**
+ * Tells the {@link EventService} when the device switches to another
+ * network or loses connectivity, so the socket doesn't sit on a dead
+ * connection until timeouts fire.
+ *
+ * From API 24 the default network callback is used. Before that the
+ * connectivity broadcast is, and networks are told apart by their type.
+ */
+public class NetworkMonitor {
+
+    // Until the first report the socket assumes it's online
+    private static final Object UNKNOWN = new Object();
+
+    private final ConnectivityManager mConnectivityManager;
+    private final Context mContext;
+    private Object mCurrentNetwork = UNKNOWN;
+
+    /**
+     * Use this constructor to create a new NetworkMonitor
+     *
+     * @param context
+     */
+    public NetworkMonitor(Context context) {
+        mContext = context;
+        mConnectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Start listening to network changes, for the lifetime of the app.
+     */
+    public void start() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            registerDefaultNetworkCallback();
+        } else {
+            mContext.registerReceiver(mConnectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void registerDefaultNetworkCallback() {
+        // The callback only reports networks, so tell when there is none
+        if (mConnectivityManager.getActiveNetwork() == null) onNetworkChanged(null);
+
+        mConnectivityManager.registerDefaultNetworkCallback(
+                new ConnectivityManager.NetworkCallback() {
+                    @Override
+                    public void onAvailable(Network network) {
+                        onNetworkChanged(network);
+                    }
+
+                    @Override
+                    public void onLost(Network network) {
+                        // The old default network can be lost after
+                        // the new one has taken over
+                        if (network.equals(getCurrentNetwork())) onNetworkChanged(null);
+                    }
+                });
+    }
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+            onNetworkChanged(info != null && info.isConnected() ? info.getType() : null);
+        }
+    };
+
+    private synchronized Object getCurrentNetwork() {
+        return mCurrentNetwork;
+    }
+
+    /**
+     * @param network Network, or network type before API 24, or null when offline
+     */
+    private void onNetworkChanged(Object network) {
+        Object previous;
+
+        synchronized (this) {
+            // The broadcast is sent for changes to any network,
+            // not just the default one
+            if (network == null ? mCurrentNetwork == null : network.equals(mCurrentNetwork)) return;
+
+            previous = mCurrentNetwork;
+            mCurrentNetwork = network;
+        }
+
+        EventService eventService = EventServiceImpl.getInstance();
+        if (network == null) {
+            eventService.onNetworkLost();
+        } else if (previous != UNKNOWN) {
+            eventService.onNetworkAvailable();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package com.mayurrokade.chatapp.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton finding any number of patterns in one pass
+ * over a text, however many patterns there are.
+ *
+ * Patterns are matched ignoring case, and only as whole words: the
+ * characters around a match mustn't be letters or digits. Each pattern
+ * carries tags, bit flags the caller picks, and the tags of a pattern
+ * added more than once are combined.
+ *
+ * A matcher is immutable and can be shared between threads. It's made
+ * by a {@link Builder}, which keeps its trie, so adding or removing one
+ * pattern and building again doesn't insert the others again.
+ */
+public class PatternMatcher {
+
+    /**
+     * Listens to matches, in the order they end in the text.
+     */
+    public interface OnMatchListener {
+        void onMatch(int tags, int start, int end);
+    }
+
+    private static final int ROOT = 0;
+
+    // Transitions of node n are mEdgeChars/mEdgeTargets[mEdgeStart[n], mEdgeStart[n + 1]),
+    // sorted by character
+    private final int[] mEdgeStart;
+    private final char[] mEdgeChars;
+    private final int[] mEdgeTargets;
+    // Node the automaton falls back to when a character has no transition
+    private final int[] mFail;
+    // Nearest node down the fail links that ends a pattern, or ROOT
+    private final int[] mOutput;
+    // Tags of the pattern a node ends, 0 if it ends none
+    private final int[] mTags;
+    private final int[] mDepth;
+
+    private PatternMatcher(int[] edgeStart, char[] edgeChars, int[] edgeTargets,
+                           int[] fail, int[] output, int[] tags, int[] depth) {
+        mEdgeStart = edgeStart;
+        mEdgeChars = edgeChars;
+        mEdgeTargets = edgeTargets;
+        mFail = fail;
+        mOutput = output;
+        mTags = tags;
+        mDepth = depth;
+    }
+
+    /**
+     * @return true if there are no patterns to find
+     */
+    public boolean isEmpty() {
+        return mEdgeStart[ROOT + 1] == mEdgeStart[ROOT];
+    }
+
+    /**
+     * Find every pattern in the text. Overlapping matches are all reported.
+     *
+     * @param text     Text to search
+     * @param listener {@link OnMatchListener} called for each match
+     */
+    public void match(@NonNull CharSequence text, @NonNull OnMatchListener listener) {
+        int length = text.length();
+        int node = ROOT;
+
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+
+            int next = next(node, c);
+            while (next == -1 && node != ROOT) {
+                node = mFail[node];
+                next = next(node, c);
+            }
+            node = next != -1 ? next : ROOT;
+
+            int end = i + 1;
+            for (int out = mTags[node] != 0 ? node : mOutput[node]; out != ROOT; out = mOutput[out]) {
+                int start = end - mDepth[out];
+                if (isBoundary(text, start - 1) && isBoundary(text, end)) {
+                    listener.onMatch(mTags[out], start, end);
+                }
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        int low = mEdgeStart[node];
+        int high = mEdgeStart[node + 1] - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char edge = mEdgeChars[mid];
+            if (edge < c) {
+                low = mid + 1;
+            } else if (edge > c) {
+                high = mid - 1;
+            } else {
+                return mEdgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBoundary(CharSequence text, int index) {
+        return index < 0
+                || index >= text.length()
+                || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    /**
+     * Collects patterns in a trie, and builds matchers from it.
+     * Not thread safe.
+     */
+    public static class Builder {
+
+        private final Node mRoot = new Node(0);
+        private int mNodeCount = 1;
+
+        /**
+         * Add a pattern, or more tags to a pattern already added.
+         *
+         * @param pattern Text to find, blank patterns are ignored
+         * @param tags    Bit flags reported with its matches, not 0
+         * @return this
+         */
+        public Builder add(@NonNull String pattern, int tags) {
+            if (tags == 0) throw new IllegalArgumentException("tags must not be 0");
+            if (!TextUtils.isValidString(pattern.trim())) return this;
+
+            Node node = mRoot;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                Node child = node.get(c);
+                if (child == null) {
+                    child = node.put(c, new Node(node.depth + 1));
+                    mNodeCount++;
+                }
+                node = child;
+            }
+
+            node.tags |= tags;
+            return this;
+        }
+
+        /**
+         * Remove tags from a pattern, and the pattern once it has none.
+         * Nodes only the pattern used are dropped from the trie.
+         *
+         * @param pattern Text given to {@link #add(String, int)}
+         * @param tags    Bit flags to remove
+         * @return this
+         */
+        public Builder remove(@NonNull String pattern, int tags) {
+            Node[] path = new Node[pattern.length() + 1];
+            path[0] = mRoot;
+
+            for (int i = 0; i < pattern.length(); i++) {
+                path[i + 1] = path[i].get(Character.toLowerCase(pattern.charAt(i)));
+                if (path[i + 1] == null) return this;
+            }
+
+            Node node = path[pattern.length()];
+            node.tags &= ~tags;
+
+            // Prune back up to the first node something else still needs
+            for (int i = pattern.length(); i > 0; i--) {
+                if (path[i].tags != 0 || path[i].size > 0) break;
+
+                path[i - 1].remove(Character.toLowerCase(pattern.charAt(i - 1)));
+                mNodeCount--;
+            }
+
+            return this;
+        }
+
+        /**
+         * Build a matcher of the patterns added so far. Takes time linear
+         * in the size of the trie.
+         *
+         * @return {@link PatternMatcher}
+         */
+        public PatternMatcher build() {
+            int[] edgeStart = new int[mNodeCount + 1];
+            char[] edgeChars = new char[mNodeCount - 1];
+            int[] edgeTargets = new int[mNodeCount - 1];
+            int[] fail = new int[mNodeCount];
+            int[] output = new int[mNodeCount];
+            int[] tags = new int[mNodeCount];
+            int[] depth = new int[mNodeCount];
+
+            // Number the nodes breadth first, so a node's fail target,
+            // which is never deeper, is linked before the node itself
+            Node[] nodes = new Node[mNodeCount];
+            Queue<Node> queue = new ArrayDeque<>();
+            nodes[ROOT] = mRoot;
+            mRoot.id = ROOT;
+            queue.add(mRoot);
+
+            int nextId = 1;
+            int edges = 0;
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                edgeStart[node.id] = edges;
+                tags[node.id] = node.tags;
+                depth[node.id] = node.depth;
+
+                for (int i = 0; i < node.size; i++) {
+                    Node child = node.children[i];
+                    child.id = nextId++;
+                    nodes[child.id] = child;
+                    edgeChars[edges] = node.keys[i];
+                    edgeTargets[edges] = child.id;
+                    edges++;
+                    queue.add(child);
+                }
+            }
+            edgeStart[mNodeCount] = edges;
+
+            PatternMatcher matcher = new PatternMatcher(
+                    edgeStart, edgeChars, edgeTargets, fail, output, tags, depth);
+
+            // Children of the root fall back to it, which is already set
+            for (int id = 1; id < mNodeCount; id++) {
+                Node node = nodes[id];
+                for (int i = 0; i < node.size; i++) {
+                    int child = node.children[i].id;
+                    char c = node.keys[i];
+
+                    int target = fail[id];
+                    int next = matcher.next(target, c);
+                    while (next == -1 && target != ROOT) {
+                        target = fail[target];
+                        next = matcher.next(target, c);
+                    }
+
+                    fail[child] = next != -1 ? next : ROOT;
+                    output[child] = tags[fail[child]] != 0 ? fail[child] : output[fail[child]];
+                }
+            }
+
+            return matcher;
+        }
+    }
+
+    private static class Node {
+
+        final int depth;
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int size;
+        int tags;
+        int id;
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+
+        Node get(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node put(char c, Node child) {
+            int index = -(Arrays.binarySearch(keys, 0, size, c) + 1);
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, keys.length);
+            }
+
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+            keys[index] = c;
+            children[index] = child;
+            size++;
+            return child;
+        }
+
+        void remove(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            if (index < 0) return;
+
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            size--;
+            children[size] = null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records cold start timing markers, measured in milliseconds from
+ * process start, and defers work until the first frame is drawn.
+ *
+ * Before API 24 the process start time isn't available, so markers are
+ * measured from the time this class was loaded in
+ * {@link com.mayurrokade.chatapp.BaseApplication#onCreate()}.
+ */
+public class StartupTracer {
+
+    public static final String APP_CREATED = "app_created";
+    public static final String ACTIVITY_CREATED = "activity_created";
+    public static final String FIRST_FRAME = "first_frame";
+    public static final String CACHED_MESSAGES_LOADED = "cached_messages_loaded";
+    public static final String FIRST_MESSAGE_RENDERED = "first_message_rendered";
+    public static final String SOCKET_CONNECT_STARTED = "socket_connect_started";
+
+    private static final String TAG = StartupTracer.class.getSimpleName();
+    private static final long CLASS_LOAD_ELAPSED = SystemClock.elapsedRealtime();
+    private static final Map<String, Long> sMarks = new LinkedHashMap<>();
+    private static final List<Runnable> sAfterFirstFrame = new ArrayList<>();
+
+    /**
+     * Record a marker. Only the first occurrence of each marker counts,
+     * so warm starts don't overwrite the cold start numbers.
+     *
+     * @param name Name of the marker
+     */
+    public static synchronized void mark(@NonNull String name) {
+        if (sMarks.containsKey(name)) return;
+
+        long sinceStart = SystemClock.elapsedRealtime() - getProcessStartElapsed();
+        sMarks.put(name, sinceStart);
+        Log.i(TAG, name + ": " + sinceStart + "ms");
+    }
+
+    /**
+     * Returns milliseconds from process start to the marker.
+     *
+     * @param name Name of the marker
+     * @return milliseconds, or -1 if the marker hasn't been recorded
+     */
+    public static synchronized long getMark(@NonNull String name) {
+        Long sinceStart = sMarks.get(name);
+        return sinceStart != null ? sinceStart : -1;
+    }
+
+    /**
+     * Returns all recorded markers in the order they were recorded.
+     *
+     * @return map of marker name to milliseconds from process start
+     */
+    @NonNull
+    public static synchronized Map<String, Long> getMarks() {
+        return new LinkedHashMap<>(sMarks);
+    }
+
+    /**
+     * Call this on the main thread once the first frame has been drawn.
+     * Runs the work queued with {@link #runAfterFirstFrame(Runnable)}.
+     */
+    public static void onFirstFrame() {
+        mark(FIRST_FRAME);
+
+        List<Runnable> pending = new ArrayList<>(sAfterFirstFrame);
+        sAfterFirstFrame.clear();
+
+        for (Runnable runnable : pending) {
+            runnable.run();
+        }
+    }
+
+    public static boolean isFirstFrameDrawn() {
+        return getMark(FIRST_FRAME) != -1;
+    }
+
+    /**
+     * Run work on the main thread after the first frame, right away if
+     * it has already been drawn. Must be called on the main thread.
+     *
+     * @param runnable Work to run
+     */
+    public static void runAfterFirstFrame(@NonNull Runnable runnable) {
+        if (isFirstFrameDrawn()) {
+            runnable.run();
+        } else {
+            sAfterFirstFrame.add(runnable);
+        }
+    }
+
+    /**
+     * Remove work queued with {@link #runAfterFirstFrame(Runnable)}.
+     * Must be called on the main thread.
+     *
+     * @param runnable Work to remove
+     */
+    public static void cancelAfterFirstFrame(@NonNull Runnable runnable) {
+        sAfterFirstFrame.remove(runnable);
+    }
+
+    private static long getProcessStartElapsed() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+
+        return CLASS_LOAD_ELAPSED;
+    }
+}
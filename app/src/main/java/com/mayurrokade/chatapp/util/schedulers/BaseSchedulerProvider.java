@@ -37,4 +37,30 @@ public interface BaseSchedulerProvider {
     @NonNull
     Scheduler ui();
 
+    /**
+     * Single threaded scheduler for socket work, so that events are
+     * emitted in the order they were submitted.
+     */
+    @NonNull
+    Scheduler eventLoop();
+
+    /**
+     * Scheduler bounded to a single writer thread for disk writes.
+     */
+    @NonNull
+    Scheduler diskWriter();
+
+    /**
+     * Scheduler sized to the number of cores for JSON and media decoding.
+     */
+    @NonNull
+    Scheduler decode();
+
+    /**
+     * Single threaded scheduler for end-to-end encryption, so messages
+     * are encrypted and decrypted in the order they're sent and received.
+     */
+    @NonNull
+    Scheduler crypto();
+
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util.schedulers;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool that records how long tasks wait in the queue,
+ * how long they run and how saturated the pool gets.
+ *
+ * Use {@link #getStats()} to read a snapshot of the counters.
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    private final String mName;
+    private final AtomicLong mCompleted = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+    private final AtomicLong mTotalRunNanos = new AtomicLong();
+    private final AtomicLong mMaxRunNanos = new AtomicLong();
+    private final AtomicInteger mPeakActive = new AtomicInteger();
+    private final AtomicInteger mPeakQueued = new AtomicInteger();
+
+    /**
+     * Use this constructor to create a new InstrumentedExecutor.
+     *
+     * @param name        Name used for the pool threads and in the stats
+     * @param threadCount Number of threads in the pool
+     * @param priority    {@link Thread} priority of the pool threads
+     */
+    public InstrumentedExecutor(@NonNull String name, int threadCount, int priority) {
+        super(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory(name, priority));
+        mName = name;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        try {
+            super.execute(new TimedRunnable(command));
+        } catch (RejectedExecutionException e) {
+            mRejected.incrementAndGet();
+            throw e;
+        }
+
+        updateMax(mPeakQueued, getQueue().size());
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+
+        if (r instanceof TimedRunnable) {
+            TimedRunnable timed = (TimedRunnable) r;
+            timed.startNanos = System.nanoTime();
+            long waitNanos = timed.startNanos - timed.enqueueNanos;
+            mTotalWaitNanos.addAndGet(waitNanos);
+            updateMax(mMaxWaitNanos, waitNanos);
+        }
+
+        updateMax(mPeakActive, getActiveCount());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+
+        if (r instanceof TimedRunnable) {
+            long runNanos = System.nanoTime() - ((TimedRunnable) r).startNanos;
+            mTotalRunNanos.addAndGet(runNanos);
+            updateMax(mMaxRunNanos, runNanos);
+        }
+
+        mCompleted.incrementAndGet();
+    }
+
+    /**
+     * Returns a snapshot of the queue wait, run time and saturation counters.
+     *
+     * @return {@link SchedulerStats}
+     */
+    @NonNull
+    public SchedulerStats getStats() {
+        return new SchedulerStats(mName, getMaximumPoolSize(),
+                mCompleted.get(), mRejected.get(),
+                mTotalWaitNanos.get(), mMaxWaitNanos.get(),
+                mTotalRunNanos.get(), mMaxRunNanos.get(),
+                getActiveCount(), mPeakActive.get(),
+                getQueue().size(), mPeakQueued.get());
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        do {
+            current = max.get();
+            if (value <= current) return;
+        } while (!max.compareAndSet(current, value));
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        do {
+            current = max.get();
+            if (value <= current) return;
+        } while (!max.compareAndSet(current, value));
+    }
+
+    private static class TimedRunnable implements Runnable {
+        final Runnable delegate;
+        final long enqueueNanos;
+        long startNanos;
+
+        TimedRunnable(Runnable delegate) {
+            this.delegate = delegate;
+            this.enqueueNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final int mPriority;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name, int priority) {
+            mName = name;
+            mPriority = priority;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(mPriority);
+            return thread;
+        }
+    }
+}
@@ -25,17 +25,60 @@ package com.mayurrokade.chatapp.util.schedulers;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import io.reactivex.Scheduler;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
 
 public class SchedulerProvider implements BaseSchedulerProvider {
 
+    private static final int DECODE_THREADS =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
+
     @Nullable
     private static SchedulerProvider INSTANCE;
 
+    @NonNull
+    private final InstrumentedExecutor mEventLoopExecutor;
+
+    @NonNull
+    private final InstrumentedExecutor mDiskWriterExecutor;
+
+    @NonNull
+    private final InstrumentedExecutor mDecodeExecutor;
+
+    @NonNull
+    private final InstrumentedExecutor mCryptoExecutor;
+
+    @NonNull
+    private final Scheduler mEventLoop;
+
+    @NonNull
+    private final Scheduler mDiskWriter;
+
+    @NonNull
+    private final Scheduler mDecode;
+
+    @NonNull
+    private final Scheduler mCrypto;
+
     // Prevent direct instantiation.
     private SchedulerProvider() {
+        mEventLoopExecutor = new InstrumentedExecutor(
+                "chat-event-loop", 1, Thread.NORM_PRIORITY);
+        mDiskWriterExecutor = new InstrumentedExecutor(
+                "chat-disk-writer", 1, Thread.MIN_PRIORITY);
+        mDecodeExecutor = new InstrumentedExecutor(
+                "chat-decode", DECODE_THREADS, Thread.NORM_PRIORITY - 1);
+        mCryptoExecutor = new InstrumentedExecutor(
+                "chat-crypto", 1, Thread.NORM_PRIORITY);
+
+        mEventLoop = Schedulers.from(mEventLoopExecutor);
+        mDiskWriter = Schedulers.from(mDiskWriterExecutor);
+        mDecode = Schedulers.from(mDecodeExecutor);
+        mCrypto = Schedulers.from(mCryptoExecutor);
     }
 
     public static synchronized SchedulerProvider getInstance() {
@@ -64,4 +107,44 @@ public class SchedulerProvider implements BaseSchedulerProvider {
         return AndroidSchedulers.mainThread();
     }
 
+    @NonNull
+    @Override
+    public Scheduler eventLoop() {
+        return mEventLoop;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler diskWriter() {
+        return mDiskWriter;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler decode() {
+        return mDecode;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler crypto() {
+        return mCrypto;
+    }
+
+    /**
+     * Returns queue wait, run time and saturation stats for
+     * the dedicated schedulers.
+     *
+     * @return list of {@link SchedulerStats}
+     */
+    @NonNull
+    public List<SchedulerStats> getStats() {
+        List<SchedulerStats> stats = new ArrayList<>();
+        stats.add(mEventLoopExecutor.getStats());
+        stats.add(mDiskWriterExecutor.getStats());
+        stats.add(mDecodeExecutor.getStats());
+        stats.add(mCryptoExecutor.getStats());
+        return stats;
+    }
+
 }
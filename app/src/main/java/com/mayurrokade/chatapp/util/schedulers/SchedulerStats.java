@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Mayur Rokade
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package com.mayurrokade.chatapp.util.schedulers;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of the counters recorded by an {@link InstrumentedExecutor}.
+ */
+public class SchedulerStats {
+
+    private final String name;
+    private final int poolSize;
+    private final long completedTasks;
+    private final long rejectedTasks;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long totalRunNanos;
+    private final long maxRunNanos;
+    private final int activeThreads;
+    private final int peakActiveThreads;
+    private final int queuedTasks;
+    private final int peakQueuedTasks;
+
+    SchedulerStats(String name, int poolSize, long completedTasks, long rejectedTasks,
+                   long totalWaitNanos, long maxWaitNanos,
+                   long totalRunNanos, long maxRunNanos,
+                   int activeThreads, int peakActiveThreads,
+                   int queuedTasks, int peakQueuedTasks) {
+        this.name = name;
+        this.poolSize = poolSize;
+        this.completedTasks = completedTasks;
+        this.rejectedTasks = rejectedTasks;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.totalRunNanos = totalRunNanos;
+        this.maxRunNanos = maxRunNanos;
+        this.activeThreads = activeThreads;
+        this.peakActiveThreads = peakActiveThreads;
+        this.queuedTasks = queuedTasks;
+        this.peakQueuedTasks = peakQueuedTasks;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public long getRejectedTasks() {
+        return rejectedTasks;
+    }
+
+    /**
+     * Average time a task spent in the queue before a thread picked it up.
+     *
+     * @return average queue wait in nanoseconds
+     */
+    public long getAverageWaitNanos() {
+        return completedTasks == 0 ? 0 : totalWaitNanos / completedTasks;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * Average time a task spent running on a pool thread.
+     *
+     * @return average run time in nanoseconds
+     */
+    public long getAverageRunNanos() {
+        return completedTasks == 0 ? 0 : totalRunNanos / completedTasks;
+    }
+
+    public long getMaxRunNanos() {
+        return maxRunNanos;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    public int getPeakActiveThreads() {
+        return peakActiveThreads;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public int getPeakQueuedTasks() {
+        return peakQueuedTasks;
+    }
+
+    /**
+     * Fraction of the pool's threads that are currently busy.
+     *
+     * @return saturation between 0 and 1
+     */
+    public float getSaturation() {
+        return poolSize == 0 ? 0f : (float) activeThreads / poolSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: completed=%d rejected=%d wait(avg/max)=%.2f/%.2fms "
+                        + "run(avg/max)=%.2f/%.2fms active=%d/%d (peak %d) queued=%d (peak %d)",
+                name, completedTasks, rejectedTasks,
+                getAverageWaitNanos() / 1e6, maxWaitNanos / 1e6,
+                getAverageRunNanos() / 1e6, maxRunNanos / 1e6,
+                activeThreads, poolSize, peakActiveThreads,
+                queuedTasks, peakQueuedTasks);
+    }
+}
@@ -0,0 +1,107 @@
+package com.mayurrokade.chatapp.chat;
+
+import com.mayurrokade.chatapp.data.source.FakeRemoteDataSource;
+import com.mayurrokade.chatapp.data.source.Repository;
+import com.mayurrokade.chatapp.data.source.local.InMemoryMessageStore;
+import com.mayurrokade.chatapp.data.source.local.LocalDataSource;
+import com.mayurrokade.chatapp.util.schedulers.TestSchedulerProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Goes through the presenter lifecycle of many screen rotations and
+ * checks that no screen stays reachable from the singletons once its
+ * presenter has unsubscribed.
+ */
+public class ChatPresenterLeakTest {
+
+    private static final int ROTATIONS = 200;
+    private static final int WARM_UP_ROTATIONS = 20;
+
+    // Each view holds about a megabyte, so a leaked screen shows in the heap
+    private static final int VIEW_CAPACITY = 128 * 1024;
+    private static final long MAX_HEAP_GROWTH_BYTES = 8 * 1024 * 1024;
+
+    private FakeRemoteDataSource mRemoteDataSource;
+    private Repository mRepository;
+
+    @Before
+    public void setUp() {
+        Repository.destroyInstance();
+        LocalDataSource.destroyInstance();
+        mRemoteDataSource = new FakeRemoteDataSource();
+        mRepository = Repository.getInstance(mRemoteDataSource,
+                LocalDataSource.getInstance(new InMemoryMessageStore(), Schedulers.trampoline(),
+                Schedulers.trampoline()));
+    }
+
+    @After
+    public void tearDown() {
+        Repository.destroyInstance();
+        LocalDataSource.destroyInstance();
+    }
+
+    @Test
+    public void rotations_doNotLeakViews() throws Exception {
+        List<WeakReference<FakeChatView>> views = new ArrayList<>();
+        long warmHeap = 0;
+
+        for (int i = 0; i < ROTATIONS; i++) {
+            views.add(new WeakReference<>(rotate(i)));
+
+            if (i == WARM_UP_ROTATIONS) warmHeap = usedHeapAfterGc();
+        }
+
+        long heapGrowth = usedHeapAfterGc() - warmHeap;
+        System.out.println(String.format("%d rotations: heap grew by %dKB",
+                ROTATIONS, heapGrowth / 1024));
+
+        for (WeakReference<FakeChatView> view : views) {
+            assertNull("A destroyed view is still reachable", view.get());
+        }
+        assertTrue("Heap grew by " + heapGrowth + " bytes", heapGrowth < MAX_HEAP_GROWTH_BYTES);
+    }
+
+    /**
+     * What the activity does with its presenter between onResume and
+     * onPause, with a few server events while it's shown.
+     */
+    private FakeChatView rotate(int i) throws Exception {
+        FakeChatView view = new FakeChatView(VIEW_CAPACITY);
+        ChatPresenter presenter = new ChatPresenter(view, view,
+                new TestSchedulerProvider(), mRepository,
+                new TextAnalyzer(new String[0], new String[0]));
+
+        presenter.subscribe();
+        mRemoteDataSource.onNewMessage(new JSONObject()
+                .put("username", "user")
+                .put("message", "message " + i));
+        mRemoteDataSource.onTyping(new JSONObject().put("username", "user"));
+        presenter.unsubscribe();
+
+        return view;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
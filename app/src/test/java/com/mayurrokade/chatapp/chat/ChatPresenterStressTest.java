@@ -0,0 +1,213 @@
+package com.mayurrokade.chatapp.chat;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.source.FakeRemoteDataSource;
+import com.mayurrokade.chatapp.data.source.Repository;
+import com.mayurrokade.chatapp.data.source.local.InMemoryMessageStore;
+import com.mayurrokade.chatapp.data.source.local.LocalDataSource;
+import com.mayurrokade.chatapp.data.source.local.RetentionPolicy;
+import com.mayurrokade.chatapp.util.Allocations;
+import com.mayurrokade.chatapp.util.schedulers.TestSchedulerProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fires a high rate of simulated server events through
+ * {@link Repository} into {@link ChatPresenter} and checks that nothing
+ * gets lost or reordered on the way to the list the view shows, and
+ * that the garbage and the time per event stay bounded.
+ */
+public class ChatPresenterStressTest {
+
+    private static final int EVENTS = 50000;
+    private static final int WARM_UP_EVENTS = 10000;
+    // Fewer than a page, so every list shown overlaps the one before
+    private static final int EVENTS_PER_FRAME = 25;
+
+    // Budgets are deliberately loose, they catch regressions that add
+    // work per event rather than noise from the JIT or the GC.
+    // What a received message still allocates is kept: the ChatMessage
+    // and its id, and the entries indexing it in the store and the
+    // deduplicator. Nothing on the way is garbage.
+    private static final long MAX_BYTES_PER_INBOUND_EVENT = 256;
+    // Presence events are only forwarded
+    private static final long MAX_BYTES_PER_PRESENCE_EVENT = 8;
+    private static final long MAX_BYTES_PER_SENT_MESSAGE = 4096;
+    // Several times what a slow machine takes, so only added work per
+    // event fails it, like a scan of the history
+    private static final long MAX_NANOS_PER_INBOUND_EVENT = 100000;
+
+    private FakeRemoteDataSource mRemoteDataSource;
+    private TestSchedulerProvider mSchedulerProvider;
+    private FakeChatView mView;
+    private ChatPresenter mPresenter;
+    private JSONObject[] mEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        Repository.destroyInstance();
+        mRemoteDataSource = new FakeRemoteDataSource();
+        mSchedulerProvider = new TestSchedulerProvider();
+        mView = new FakeChatView(WARM_UP_EVENTS + EVENTS);
+
+        LocalDataSource.destroyInstance();
+        // Queries run when the frame's actions do, so the saves in between
+        // are one query, as on the query thread
+        LocalDataSource localDataSource =
+                LocalDataSource.getInstance(new InMemoryMessageStore(),
+                mSchedulerProvider.getTestScheduler(), Schedulers.trampoline());
+        // Keep every message, compaction would run inline on the trampoline
+        localDataSource.setRetentionPolicy(
+                new RetentionPolicy(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE));
+        Repository repository = Repository.getInstance(mRemoteDataSource, localDataSource);
+        mPresenter = new ChatPresenter(mView, mView, mSchedulerProvider, repository,
+                new TextAnalyzer(new String[0], new String[0]));
+        mPresenter.subscribe();
+
+        mEvents = new JSONObject[WARM_UP_EVENTS + EVENTS];
+        for (int i = 0; i < mEvents.length; i++) {
+            mEvents[i] = new JSONObject()
+                    .put("username", "user" + (i % 16))
+                    .put("message", "message " + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mPresenter.unsubscribe();
+        Repository.destroyInstance();
+        LocalDataSource.destroyInstance();
+    }
+
+    @Test
+    public void inboundMessages_areShownInOrderWithoutLoss() {
+        for (int i = 0; i < mEvents.length; i++) {
+            mRemoteDataSource.onNewMessage(mEvents[i]);
+            if ((i + 1) % EVENTS_PER_FRAME == 0) {
+                mSchedulerProvider.getTestScheduler().triggerActions();
+            }
+        }
+        mSchedulerProvider.getTestScheduler().triggerActions();
+
+        assertShownInOrder(mEvents.length);
+    }
+
+    @Test
+    public void inboundMessages_stayWithinAllocationBudget() {
+        assumeTrue(Allocations.isSupported());
+
+        // Wrap the events up front, so the varargs arrays the socket
+        // would hand over are not counted against the presenter path
+        Object[][] args = new Object[mEvents.length][];
+        for (int i = 0; i < mEvents.length; i++) {
+            args[i] = new Object[]{mEvents[i]};
+        }
+
+        for (int i = 0; i < WARM_UP_EVENTS; i++) {
+            mRemoteDataSource.onNewMessage(args[i]);
+        }
+
+        long startBytes = Allocations.allocatedBytes();
+        long startNanos = System.nanoTime();
+        for (int i = WARM_UP_EVENTS; i < mEvents.length; i++) {
+            mRemoteDataSource.onNewMessage(args[i]);
+        }
+        long nanosPerEvent = (System.nanoTime() - startNanos) / EVENTS;
+        long bytesPerEvent = (Allocations.allocatedBytes() - startBytes) / EVENTS;
+
+        System.out.println(String.format("%d inbound events: %dns, %d bytes per event",
+                EVENTS, nanosPerEvent, bytesPerEvent));
+
+        mSchedulerProvider.getTestScheduler().triggerActions();
+        assertEquals(mEvents[mEvents.length - 1].optString("message"),
+                mView.mShown[mView.mShownCount - 1].getMessage());
+        assertTrue("Took " + nanosPerEvent + "ns per event",
+                nanosPerEvent <= MAX_NANOS_PER_INBOUND_EVENT);
+        assertTrue("Allocated " + bytesPerEvent + " bytes per event",
+                Allocations.isWithinBudget(bytesPerEvent, MAX_BYTES_PER_INBOUND_EVENT));
+    }
+
+    @Test
+    public void sentMessages_areDeliveredInOrderWithinAllocationBudget() {
+        assumeTrue(Allocations.isSupported());
+
+        ChatMessage[] messages = new ChatMessage[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            messages[i] = new ChatMessage("me", "message " + i, ChatMessage.TYPE_MESSAGE_SENT);
+        }
+
+        long startBytes = Allocations.allocatedBytes();
+        for (ChatMessage message : messages) {
+            mPresenter.sendMessage(message);
+        }
+        mSchedulerProvider.getTestScheduler().triggerActions();
+        long bytesPerMessage = (Allocations.allocatedBytes() - startBytes) / EVENTS;
+
+        assertEquals(EVENTS, mRemoteDataSource.getSentMessages());
+        assertEquals(EVENTS, mView.mDeliveredCount);
+        for (int i = 0; i < EVENTS; i++) {
+            assertSame(messages[i], mView.mDelivered[i]);
+        }
+        assertTrue("Allocated " + bytesPerMessage + " bytes per message",
+                Allocations.isWithinBudget(bytesPerMessage, MAX_BYTES_PER_SENT_MESSAGE));
+    }
+
+    @Test
+    public void presenceEvents_allocateNothing() throws Exception {
+        assumeTrue(Allocations.isSupported());
+
+        Object[] typing = new Object[]{new JSONObject().put("username", "user")};
+
+        for (int i = 0; i < WARM_UP_EVENTS; i++) {
+            mRemoteDataSource.onTyping(typing);
+            mRemoteDataSource.onStopTyping(typing);
+        }
+
+        long startBytes = Allocations.allocatedBytes();
+        for (int i = 0; i < EVENTS; i++) {
+            mRemoteDataSource.onTyping(typing);
+            mRemoteDataSource.onStopTyping(typing);
+        }
+        long bytesPerEvent = (Allocations.allocatedBytes() - startBytes) / (2 * EVENTS);
+
+        assertEquals(WARM_UP_EVENTS + EVENTS, mView.mTypingCount);
+        assertTrue("Allocated " + bytesPerEvent + " bytes per event",
+                Allocations.isWithinBudget(bytesPerEvent, MAX_BYTES_PER_PRESENCE_EVENT));
+    }
+
+    @Test
+    public void presenceEvents_doNotInterleaveWithMessages() throws Exception {
+        JSONObject typing = new JSONObject().put("username", "user");
+
+        for (int i = 0; i < EVENTS; i++) {
+            mRemoteDataSource.onTyping(typing);
+            mRemoteDataSource.onNewMessage(mEvents[i]);
+            mRemoteDataSource.onStopTyping(typing);
+            if ((i + 1) % EVENTS_PER_FRAME == 0) {
+                mSchedulerProvider.getTestScheduler().triggerActions();
+            }
+        }
+        mSchedulerProvider.getTestScheduler().triggerActions();
+
+        assertEquals(EVENTS, mView.mTypingCount);
+        assertEquals(EVENTS, mView.mStopTypingCount);
+        assertShownInOrder(EVENTS);
+    }
+
+    private void assertShownInOrder(int count) {
+        assertEquals(count, mView.mShownCount);
+        for (int i = 0; i < count; i++) {
+            assertEquals(mEvents[i].optString("message"), mView.mShown[i].getMessage());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.mayurrokade.chatapp.chat;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.util.List;
+
+/**
+ * View that records events into preallocated arrays, so the view
+ * itself adds no garbage to the measured path.
+ */
+class FakeChatView implements ChatContract.View {
+    final Object[] mReceived;
+    final ChatMessage[] mShown;
+    final ChatMessage[] mDelivered;
+    int mReceivedCount;
+    int mShownCount;
+    int mDeliveredCount;
+    int mTypingCount;
+    int mStopTypingCount;
+    int mReadCount;
+    int mEditedCount;
+    int mDeletedCount;
+
+    FakeChatView(int capacity) {
+        mReceived = new Object[capacity];
+        mShown = new ChatMessage[capacity];
+        mDelivered = new ChatMessage[capacity];
+    }
+
+    @Override
+    public void onMessageDelivered(ChatMessage chatMessage) {
+        mDelivered[mDeliveredCount++] = chatMessage;
+    }
+
+    /**
+     * Records the messages not shown before, in the order they're shown.
+     * Every list is the latest page, so it overlaps the one before unless
+     * messages were lost in between, and then they're recorded again.
+     */
+    @Override
+    public void showMessages(List<ChatMessage> chatMessages) {
+        int start = 0;
+        if (mShownCount > 0) {
+            String lastId = mShown[mShownCount - 1].getId();
+            for (int i = chatMessages.size() - 1; i >= 0; i--) {
+                if (chatMessages.get(i).getId().equals(lastId)) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+
+        for (int i = start; i < chatMessages.size(); i++) {
+            mShown[mShownCount++] = chatMessages.get(i);
+        }
+    }
+
+    @Override
+    public void updateUsername(String username) {
+    }
+
+    @Override
+    public void initView() {
+    }
+
+    @Override
+    public void setPresenter(ChatContract.Presenter presenter) {
+    }
+
+    @Override
+    public void showAlert(String message, boolean isError) {
+    }
+
+    @Override
+    public void hideAlert() {
+    }
+
+    @Override
+    public void showProgress() {
+    }
+
+    @Override
+    public void hideProgress() {
+    }
+
+    @Override
+    public void onConnect(Object... args) {
+    }
+
+    @Override
+    public void onDisconnect(Object... args) {
+    }
+
+    @Override
+    public void onConnectError(Object... args) {
+    }
+
+    @Override
+    public void onConnectTimeout(Object... args) {
+    }
+
+    @Override
+    public void onNewMessage(Object... args) {
+        mReceived[mReceivedCount++] = args[0];
+    }
+
+    @Override
+    public void onUserJoined(Object... args) {
+    }
+
+    @Override
+    public void onUserLeft(Object... args) {
+    }
+
+    @Override
+    public void onTyping(Object... args) {
+        mTypingCount++;
+    }
+
+    @Override
+    public void onStopTyping(Object... args) {
+        mStopTypingCount++;
+    }
+
+    @Override
+    public void onRead(Object... args) {
+        mReadCount++;
+    }
+
+    @Override
+    public void onReaction(Object... args) {
+    }
+
+    @Override
+    public void onMessageEdited(Object... args) {
+        mEditedCount++;
+    }
+
+    @Override
+    public void onMessageDeleted(Object... args) {
+        mDeletedCount++;
+    }
+}
@@ -0,0 +1,31 @@
+package com.mayurrokade.chatapp.chat;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReactionCoalescerTest {
+
+    @Test
+    public void add_collectsBurstIntoOneUpdatePerMessage() {
+        ReactionCoalescer coalescer = new ReactionCoalescer();
+
+        assertTrue(coalescer.add("1"));
+        for (int i = 0; i < 499; i++) {
+            assertFalse(coalescer.add("1"));
+        }
+        coalescer.add("2");
+
+        Set<String> pending = coalescer.drain();
+        assertEquals(2, pending.size());
+        assertTrue(pending.contains("1"));
+        assertTrue(pending.contains("2"));
+
+        // The next event asks for a new drain
+        assertTrue(coalescer.add("1"));
+    }
+}
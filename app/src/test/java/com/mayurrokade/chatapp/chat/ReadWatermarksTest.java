@@ -0,0 +1,89 @@
+package com.mayurrokade.chatapp.chat;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadWatermarksTest {
+
+    private final List<int[]> mChanges = new ArrayList<>();
+    private ReadWatermarks mReadWatermarks;
+
+    @Before
+    public void setUp() {
+        mReadWatermarks = new ReadWatermarks(new ReadWatermarks.Callback() {
+            @Override
+            public void onReadStateChanged(int position, int count) {
+                mChanges.add(new int[]{position, count});
+            }
+        });
+        mReadWatermarks.setMessages(messages(10));
+    }
+
+    @Test
+    public void update_changesOnlyRowsPassedOver() {
+        mReadWatermarks.update("alice", "3");
+        mReadWatermarks.update("alice", "6");
+
+        assertEquals(2, mChanges.size());
+        assertEquals(0, mChanges.get(0)[0]);
+        assertEquals(4, mChanges.get(0)[1]);
+        assertEquals(4, mChanges.get(1)[0]);
+        assertEquals(3, mChanges.get(1)[1]);
+    }
+
+    @Test
+    public void update_neverMovesBack() {
+        mReadWatermarks.update("alice", "6");
+        mReadWatermarks.update("alice", "3");
+
+        assertEquals(1, mChanges.size());
+        assertEquals(1, mReadWatermarks.getReadCount(6));
+        assertEquals(0, mReadWatermarks.getReadCount(7));
+    }
+
+    @Test
+    public void getReadCount_countsWatermarksAtOrAfterRow() {
+        mReadWatermarks.update("alice", "2");
+        mReadWatermarks.update("bob", "5");
+        mReadWatermarks.update("carol", "5");
+
+        assertEquals(3, mReadWatermarks.getReadCount(0));
+        assertEquals(3, mReadWatermarks.getReadCount(2));
+        assertEquals(2, mReadWatermarks.getReadCount(3));
+        assertEquals(2, mReadWatermarks.getReadCount(5));
+        assertEquals(0, mReadWatermarks.getReadCount(9));
+    }
+
+    @Test
+    public void update_unknownMessage_isAppliedOnceShown() {
+        mReadWatermarks.update("alice", "12");
+
+        assertTrue(mReadWatermarks.hasPending());
+        assertTrue(mChanges.isEmpty());
+
+        mReadWatermarks.setMessages(messages(15));
+        mReadWatermarks.applyPending();
+
+        assertFalse(mReadWatermarks.hasPending());
+        assertEquals(1, mReadWatermarks.getReadCount(12));
+        assertEquals(13, mChanges.get(0)[1]);
+    }
+
+    private static List<ChatMessage> messages(int count) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new ChatMessage(String.valueOf(i), "user", "message " + i,
+                    ChatMessage.TYPE_MESSAGE_SENT));
+        }
+        return messages;
+    }
+}
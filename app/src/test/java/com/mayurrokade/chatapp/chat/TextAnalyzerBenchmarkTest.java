@@ -0,0 +1,167 @@
+package com.mayurrokade.chatapp.chat;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.util.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures what analyzing received text costs per message with a large
+ * set of keywords and blocked words, against searching for each word in
+ * turn, and checks that changing the username only rebuilds the matcher.
+ */
+public class TextAnalyzerBenchmarkTest {
+
+    private static final int MESSAGES = 10000;
+    private static final int WORDS = 1000;
+    private static final int ROUNDS = 5;
+
+    // Deliberately loose, it catches matching that goes back to a
+    // pass per word rather than noise from the JIT or the GC
+    private static final long MAX_NANOS_PER_MESSAGE = 50000;
+
+    private String mUsername;
+    private String[] mKeywords;
+    private String[] mBlockedWords;
+    private TextAnalyzer mTextAnalyzer;
+    private ChatMessage[] mMessages;
+
+    @Before
+    public void setUp() {
+        mUsername = User.getUsername();
+        User.setUsername("alice");
+
+        Random random = new Random(42);
+        mKeywords = new String[WORDS];
+        mBlockedWords = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            mKeywords[i] = word(random) + " " + word(random);
+            mBlockedWords[i] = word(random);
+        }
+        mTextAnalyzer = new TextAnalyzer(mKeywords, mBlockedWords);
+
+        mMessages = new ChatMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 80) {
+                text.append(word(random)).append(' ');
+            }
+            if (i % 10 == 0) text.append("hey @alice");
+            if (i % 50 == 0) text.append(' ').append(mKeywords[i % WORDS]);
+
+            mMessages[i] = new ChatMessage("user" + (i % 16), text.toString(),
+                    ChatMessage.TYPE_MESSAGE_RECEIVED);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        User.setUsername(mUsername);
+    }
+
+    @Test
+    public void analyze_highlightsMentionsAndKeywords() {
+        ChatMessage chatMessage = new ChatMessage("bob", "Alice, " + mKeywords[0] + "!",
+                ChatMessage.TYPE_MESSAGE_RECEIVED);
+
+        mTextAnalyzer.analyze(chatMessage);
+
+        int end = 7 + mKeywords[0].length();
+        assertArrayEquals(new int[]{0, 5, TextAnalyzer.MATCH_MENTION,
+                7, end, TextAnalyzer.MATCH_KEYWORD}, chatMessage.getHighlights());
+        assertFalse(chatMessage.isFiltered());
+    }
+
+    @Test
+    public void analyze_filtersBlockedWordsInReceivedMessagesOnly() {
+        String text = "so " + mBlockedWords[0] + " there";
+        ChatMessage received = new ChatMessage("bob", text, ChatMessage.TYPE_MESSAGE_RECEIVED);
+        ChatMessage sent = new ChatMessage("alice", text, ChatMessage.TYPE_MESSAGE_SENT);
+
+        mTextAnalyzer.analyze(Arrays.asList(received, sent));
+
+        assertTrue(received.isFiltered());
+        assertFalse(sent.isFiltered());
+    }
+
+    @Test
+    public void analyze_afterUsernameChange_mentionsNewName() {
+        ChatMessage toAlice = new ChatMessage("carol", "hi alice", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        ChatMessage toBob = new ChatMessage("carol", "hi bob", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        List<ChatMessage> chatMessages = Arrays.asList(toAlice, toBob);
+        mTextAnalyzer.analyze(chatMessages);
+
+        User.setUsername("bob");
+        long start = System.nanoTime();
+        mTextAnalyzer.analyze(chatMessages);
+        long rebuildNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US,
+                "Rebuild after username change with %d words: %.2fms",
+                2 * WORDS, rebuildNanos / 1e6));
+
+        assertNull(toAlice.getHighlights());
+        assertArrayEquals(new int[]{3, 6, TextAnalyzer.MATCH_MENTION}, toBob.getHighlights());
+    }
+
+    @Test
+    public void analyzeCost_perMessage() {
+        long analyzerNanos = Long.MAX_VALUE;
+        long naiveNanos = Long.MAX_VALUE;
+        List<ChatMessage> chatMessages = Arrays.asList(mMessages);
+
+        // Best of a few rounds, the first ones include JIT warm-up
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            mTextAnalyzer.analyze(chatMessages);
+            analyzerNanos = Math.min(analyzerNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int found = 0;
+            for (ChatMessage chatMessage : mMessages) {
+                found += naiveMatches(chatMessage.getMessage().toLowerCase(Locale.US));
+            }
+            naiveNanos = Math.min(naiveNanos, System.nanoTime() - start);
+            assertTrue(found > 0);
+        }
+
+        System.out.println(String.format(Locale.US,
+                "Analyze %d messages against %d words: matcher %.0fns, word by word %.0fns per message",
+                MESSAGES, 2 * WORDS + 1,
+                (double) analyzerNanos / MESSAGES, (double) naiveNanos / MESSAGES));
+
+        assertTrue(analyzerNanos < naiveNanos);
+        assertTrue("Took " + analyzerNanos / MESSAGES + "ns per message",
+                analyzerNanos / MESSAGES <= MAX_NANOS_PER_MESSAGE);
+    }
+
+    private int naiveMatches(String text) {
+        int found = 0;
+        if (text.contains("alice")) found++;
+        for (int i = 0; i < WORDS; i++) {
+            if (text.contains(mKeywords[i])) found++;
+            if (text.contains(mBlockedWords[i])) found++;
+        }
+        return found;
+    }
+
+    private static String word(Random random) {
+        char[] word = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+}
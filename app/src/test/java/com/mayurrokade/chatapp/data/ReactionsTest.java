@@ -0,0 +1,77 @@
+package com.mayurrokade.chatapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReactionsTest {
+
+    @Test
+    public void add_removesEmojiOnceNobodyReactsWithIt() {
+        Reactions reactions = new Reactions();
+
+        assertTrue(reactions.add("like", 3));
+        assertTrue(reactions.add("love", 1));
+        assertTrue(reactions.add("like", -5));
+        assertFalse(reactions.add("party", -1));
+
+        assertEquals(1, reactions.size());
+        assertEquals("love", reactions.getEmoji(0));
+        assertEquals(1, reactions.getCount(0));
+    }
+
+    @Test
+    public void setOwn_keepsOwnReactionsWhenSlotsShift() {
+        Reactions reactions = new Reactions();
+        reactions.add("like", 2);
+        reactions.setOwn("love", true);
+        reactions.setOwn("party", true);
+
+        assertFalse(reactions.setOwn("love", true));
+        assertEquals(1, reactions.getCount(1));
+
+        reactions.add("like", -2);
+
+        assertEquals("love", reactions.getEmoji(0));
+        assertTrue(reactions.isOwn(0));
+        assertTrue(reactions.isOwn(1));
+
+        assertTrue(reactions.setOwn("love", false));
+        assertEquals(1, reactions.size());
+        assertTrue(reactions.hasOwn("party"));
+        assertFalse(reactions.hasOwn("love"));
+    }
+
+    @Test
+    public void add_ignoresEmojisPastLimit() {
+        Reactions reactions = new Reactions();
+        for (int i = 0; i < Reactions.MAX_EMOJIS; i++) {
+            reactions.add("emoji " + i, 1);
+        }
+        reactions.setOwn("emoji " + (Reactions.MAX_EMOJIS - 1), true);
+
+        assertFalse(reactions.add("one too many", 1));
+        assertEquals(Reactions.MAX_EMOJIS, reactions.size());
+        assertTrue(reactions.isOwn(Reactions.MAX_EMOJIS - 1));
+        assertEquals(2, reactions.getCount(Reactions.MAX_EMOJIS - 1));
+    }
+
+    @Test
+    public void copy_isNotChangedByOriginal() {
+        Reactions reactions = new Reactions();
+        reactions.add("like", 1);
+        reactions.setOwn("love", true);
+
+        Reactions copy = reactions.copy();
+        reactions.add("like", -1);
+        reactions.add("party", 1);
+
+        assertEquals(2, copy.size());
+        assertEquals("like", copy.getEmoji(0));
+        assertTrue(copy.isOwn(1));
+        assertTrue(copy.add("like", 1));
+        assertEquals(2, copy.getCount(0));
+    }
+}
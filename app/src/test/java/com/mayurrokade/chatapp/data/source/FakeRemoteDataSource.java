@@ -0,0 +1,184 @@
+package com.mayurrokade.chatapp.data.source;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.eventservice.EventListener;
+
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+
+/**
+ * Remote data source that never touches the network. Tests push server
+ * events through it with the {@link EventListener} callbacks, which are
+ * forwarded to whoever registered with {@link #setEventListener(EventListener)}.
+ */
+public class FakeRemoteDataSource implements DataSource {
+
+    private EventListener mRepoEventListener;
+    private final List<String> mReadReceipts = new ArrayList<>();
+    private final List<ChatMessage> mUpdatedMessages = new ArrayList<>();
+    private int mSentMessages;
+
+    public int getSentMessages() {
+        return mSentMessages;
+    }
+
+    public List<String> getReadReceipts() {
+        return mReadReceipts;
+    }
+
+    public List<ChatMessage> getUpdatedMessages() {
+        return mUpdatedMessages;
+    }
+
+    @Override
+    public Disposable setEventListener(EventListener eventListener) {
+        mRepoEventListener = eventListener;
+        return Disposables.disposed();
+    }
+
+    @Override
+    public void connect(String username) throws URISyntaxException {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public Flowable<ChatMessage> sendMessage(ChatMessage chatMessage) {
+        mSentMessages++;
+        return Flowable.just(chatMessage);
+    }
+
+    @Override
+    public void onTyping() {
+    }
+
+    @Override
+    public void onStopTyping() {
+    }
+
+    @Override
+    public void sendReadReceipt(String messageId) {
+        mReadReceipts.add(messageId);
+    }
+
+    @Override
+    public void sendReaction(String messageId, String emoji, boolean added) {
+    }
+
+    @Override
+    public Flowable<List<ChatMessage>> getMessages(int limit) {
+        return Flowable.empty();
+    }
+
+    @Override
+    public Flowable<List<ChatMessage>> getReplies(String parentId, int limit) {
+        return Flowable.empty();
+    }
+
+    @Override
+    public Flowable<List<String>> getRecentMessageIds(int limit) {
+        return Flowable.empty();
+    }
+
+    @Override
+    public void saveMessage(ChatMessage chatMessage) {
+    }
+
+    @Override
+    public boolean hasMessage(String id) {
+        return false;
+    }
+
+    @Override
+    public ChatMessage getMessage(String id) {
+        return null;
+    }
+
+    @Override
+    public void updateMessage(ChatMessage chatMessage) {
+        mUpdatedMessages.add(chatMessage);
+    }
+
+    @Override
+    public void setEncryptionPassphrase(String passphrase) {
+    }
+
+    @Override
+    public Flowable<Attachment> saveAttachment(InputStream in, String mimeType) {
+        return Flowable.empty();
+    }
+
+    @Override
+    public void onConnect(Object... args) {
+        mRepoEventListener.onConnect(args);
+    }
+
+    @Override
+    public void onDisconnect(Object... args) {
+        mRepoEventListener.onDisconnect(args);
+    }
+
+    @Override
+    public void onConnectError(Object... args) {
+        mRepoEventListener.onConnectError(args);
+    }
+
+    @Override
+    public void onConnectTimeout(Object... args) {
+        mRepoEventListener.onConnectTimeout(args);
+    }
+
+    @Override
+    public void onNewMessage(Object... args) {
+        mRepoEventListener.onNewMessage(args);
+    }
+
+    @Override
+    public void onUserJoined(Object... args) {
+        mRepoEventListener.onUserJoined(args);
+    }
+
+    @Override
+    public void onUserLeft(Object... args) {
+        mRepoEventListener.onUserLeft(args);
+    }
+
+    @Override
+    public void onTyping(Object... args) {
+        mRepoEventListener.onTyping(args);
+    }
+
+    @Override
+    public void onStopTyping(Object... args) {
+        mRepoEventListener.onStopTyping(args);
+    }
+
+    @Override
+    public void onRead(Object... args) {
+        mRepoEventListener.onRead(args);
+    }
+
+    @Override
+    public void onReaction(Object... args) {
+        mRepoEventListener.onReaction(args);
+    }
+
+    @Override
+    public void onMessageEdited(Object... args) {
+        mRepoEventListener.onMessageEdited(args);
+    }
+
+    @Override
+    public void onMessageDeleted(Object... args) {
+        mRepoEventListener.onMessageDeleted(args);
+    }
+}
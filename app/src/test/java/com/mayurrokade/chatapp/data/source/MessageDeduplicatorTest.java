@@ -0,0 +1,102 @@
+package com.mayurrokade.chatapp.data.source;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageDeduplicatorTest {
+
+    private Set<String> mHistory;
+    private MessageDeduplicator mDeduplicator;
+
+    @Before
+    public void setUp() {
+        mHistory = new HashSet<>();
+        mDeduplicator = new MessageDeduplicator(new MessageDeduplicator.History() {
+            @Override
+            public boolean hasMessage(String id) {
+                return mHistory.contains(id);
+            }
+        });
+    }
+
+    @Test
+    public void recentDuplicate_isRejected() {
+        assertTrue(mDeduplicator.add("a"));
+        assertFalse(mDeduplicator.add("a"));
+        assertTrue(mDeduplicator.add("b"));
+    }
+
+    @Test
+    public void duplicateOutOfRecentIds_isRejectedThroughHistory() {
+        for (int i = 0; i < 5000; i++) {
+            String id = "id" + i;
+            assertTrue(mDeduplicator.add(id));
+            mHistory.add(id);
+        }
+
+        assertFalse(mDeduplicator.add("id0"));
+    }
+
+    @Test
+    public void loadedHistory_isRejected() {
+        mHistory.add("old");
+        mDeduplicator.seen("old");
+
+        assertFalse(mDeduplicator.add("old"));
+    }
+
+    @Test
+    public void seededIds_areRejectedAfterRestart() {
+        List<String> stored = new ArrayList<>();
+        for (int i = MessageDeduplicator.SEED_IDS - 1; i >= 0; i--) {
+            stored.add("id" + i);
+            mHistory.add("id" + i);
+        }
+        mDeduplicator.seed(stored);
+
+        // The newest are known exactly, older ones are confirmed by the history
+        mHistory.remove(stored.get(0));
+        assertFalse(mDeduplicator.add(stored.get(0)));
+        assertFalse(mDeduplicator.add("id0"));
+        assertTrue(mDeduplicator.add("new"));
+    }
+
+    @Test
+    public void manyIds_rarelyReachTheHistory() {
+        final int[] lookups = new int[1];
+        MessageDeduplicator deduplicator = new MessageDeduplicator(new MessageDeduplicator.History() {
+            @Override
+            public boolean hasMessage(String id) {
+                lookups[0]++;
+                return false;
+            }
+        });
+
+        for (int i = 0; i < 100000; i++) {
+            deduplicator.add("message" + i);
+        }
+
+        // Far past the size of one filter, lookups stay near the false positive rate
+        assertTrue("lookups: " + lookups[0], lookups[0] < 3000);
+    }
+
+    @Test
+    public void newIds_areNeverRejected() {
+        // Nothing is in the history, so filter false positives must not drop anything
+        int accepted = 0;
+        for (int i = 0; i < 50000; i++) {
+            if (mDeduplicator.add("message" + i)) accepted++;
+        }
+
+        assertEquals(50000, accepted);
+    }
+}
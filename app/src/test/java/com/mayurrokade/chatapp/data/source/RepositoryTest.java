@@ -0,0 +1,148 @@
+package com.mayurrokade.chatapp.data.source;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+import com.mayurrokade.chatapp.data.Reactions;
+import com.mayurrokade.chatapp.data.source.local.InMemoryMessageStore;
+import com.mayurrokade.chatapp.data.source.local.LocalDataSource;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RepositoryTest {
+
+    private FakeRemoteDataSource mRemoteDataSource;
+    private LocalDataSource mLocalDataSource;
+    private Repository mRepository;
+    private ChatMessage mChatMessage;
+
+    @Before
+    public void setUp() {
+        Repository.destroyInstance();
+        LocalDataSource.destroyInstance();
+        mRemoteDataSource = new FakeRemoteDataSource();
+        mLocalDataSource = LocalDataSource.getInstance(
+                new InMemoryMessageStore(), Schedulers.trampoline(),
+                Schedulers.trampoline());
+        mRepository = Repository.getInstance(mRemoteDataSource, mLocalDataSource);
+
+        mChatMessage = new ChatMessage("friend", "hello", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        mLocalDataSource.saveMessage(mChatMessage);
+    }
+
+    @After
+    public void tearDown() {
+        Repository.destroyInstance();
+        LocalDataSource.destroyInstance();
+    }
+
+    @Test
+    public void onMessageEdited_bySender_updatesStoredMessage() throws Exception {
+        mRemoteDataSource.onMessageEdited(new JSONObject()
+                .put("username", "friend")
+                .put("id", mChatMessage.getId())
+                .put("message", "hello again"));
+
+        ChatMessage stored = mLocalDataSource.getMessage(mChatMessage.getId());
+        assertEquals("hello again", stored.getMessage());
+        assertTrue(stored.isEdited());
+    }
+
+    @Test
+    public void onMessageEdited_bySomeoneElse_isDropped() throws Exception {
+        mRemoteDataSource.onMessageEdited(new JSONObject()
+                .put("username", "stranger")
+                .put("id", mChatMessage.getId())
+                .put("message", "spoofed"));
+
+        ChatMessage stored = mLocalDataSource.getMessage(mChatMessage.getId());
+        assertEquals("hello", stored.getMessage());
+        assertFalse(stored.isEdited());
+    }
+
+    @Test
+    public void onMessageDeleted_leavesPlaceholderThatCantBeEdited() throws Exception {
+        mRemoteDataSource.onMessageDeleted(new JSONObject()
+                .put("username", "friend")
+                .put("id", mChatMessage.getId()));
+        mRemoteDataSource.onMessageEdited(new JSONObject()
+                .put("username", "friend")
+                .put("id", mChatMessage.getId())
+                .put("message", "back again"));
+
+        ChatMessage stored = mLocalDataSource.getMessage(mChatMessage.getId());
+        assertTrue(stored.isDeleted());
+        assertNull(stored.getMessage());
+    }
+
+    @Test
+    public void onNewMessage_relayedWithId_canBeEditedById() throws Exception {
+        mRemoteDataSource.onNewMessage(new JSONObject()
+                .put("username", "friend")
+                .put("message", new JSONObject()
+                        .put("id", "remote-1")
+                        .put("username", "friend")
+                        .put("message", "first")));
+        mRemoteDataSource.onMessageEdited(new JSONObject()
+                .put("username", "friend")
+                .put("id", "remote-1")
+                .put("message", "first, edited"));
+
+        ChatMessage stored = mLocalDataSource.getMessage("remote-1");
+        assertEquals("first, edited", stored.getMessage());
+        assertTrue(stored.isEdited());
+    }
+
+    @Test
+    public void updateMessage_savesAndSendsChange() {
+        ChatMessage chatMessage = mRepository.getMessage(mChatMessage.getId());
+        chatMessage.setMessage("edited");
+        chatMessage.setEdited(true);
+
+        mRepository.updateMessage(chatMessage);
+
+        assertEquals("edited", mLocalDataSource.getMessage(mChatMessage.getId()).getMessage());
+        assertSame(chatMessage, mRemoteDataSource.getUpdatedMessages().get(0));
+    }
+
+    @Test
+    public void onRead_withoutListener_keepsLatestWatermarkPerUser() throws Exception {
+        mRemoteDataSource.onRead(new JSONObject().put("username", "friend").put("messageId", "1"));
+        mRemoteDataSource.onRead(new JSONObject().put("username", "friend").put("messageId", "2"));
+        mRemoteDataSource.onRead(new JSONObject().put("username", "other").put("messageId", "1"));
+
+        Map<String, String> watermarks = mRepository.getReadWatermarks();
+        assertEquals(2, watermarks.size());
+        assertEquals("2", watermarks.get("friend"));
+        assertEquals("1", watermarks.get("other"));
+    }
+
+    @Test
+    public void onReaction_withoutListener_keepsReactionsUntilMessageDeleted() throws Exception {
+        String messageId = mChatMessage.getId();
+        mRemoteDataSource.onReaction(new JSONObject().put("username", "friend")
+                .put("messageId", messageId).put("emoji", "like").put("added", true));
+        mRepository.sendReaction(messageId, "like", true);
+
+        Reactions reactions = mRepository.getReactions(messageId);
+        assertEquals(2, reactions.getCount(0));
+        assertTrue(reactions.isOwn(0));
+
+        mRemoteDataSource.onMessageDeleted(new JSONObject()
+                .put("username", "friend")
+                .put("id", messageId));
+
+        assertNull(mRepository.getReactions(messageId));
+    }
+}
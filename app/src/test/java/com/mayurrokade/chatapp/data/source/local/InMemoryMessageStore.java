@@ -0,0 +1,171 @@
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link MessageStore} for JVM tests, where SQLite isn't available.
+ */
+public class InMemoryMessageStore implements MessageStore {
+
+    private final List<ChatMessage> mMessages = new ArrayList<>();
+    private final Set<String> mIds = new HashSet<>();
+    // Store time of each message, in the same order
+    private long[] mCreatedAt = new long[16];
+
+    @Override
+    public synchronized boolean insert(@NonNull ChatMessage chatMessage) {
+        if (!mIds.add(chatMessage.getId())) return false;
+
+        if (mMessages.size() == mCreatedAt.length) {
+            mCreatedAt = Arrays.copyOf(mCreatedAt, mCreatedAt.length * 2);
+        }
+        mCreatedAt[mMessages.size()] = System.currentTimeMillis();
+        mMessages.add(chatMessage);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(@NonNull String id) {
+        return mIds.contains(id);
+    }
+
+    @Override
+    public synchronized ChatMessage get(@NonNull String id) {
+        int index = indexOf(id);
+        return index != -1 ? mMessages.get(index) : null;
+    }
+
+    @Override
+    public synchronized boolean update(@NonNull ChatMessage chatMessage) {
+        int index = indexOf(chatMessage.getId());
+        if (index == -1) return false;
+
+        mMessages.set(index, chatMessage);
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<ChatMessage> getLatest(int limit) {
+        List<ChatMessage> latest = latest(null, limit);
+        // One pass over the history, like the parent index does for SQLite
+        Map<String, Integer> replyCounts = new HashMap<>();
+        for (ChatMessage chatMessage : latest) {
+            replyCounts.put(chatMessage.getId(), 0);
+        }
+        for (ChatMessage chatMessage : mMessages) {
+            Integer replyCount = replyCounts.get(chatMessage.getParentId());
+            if (replyCount != null) replyCounts.put(chatMessage.getParentId(), replyCount + 1);
+        }
+        for (ChatMessage chatMessage : latest) {
+            chatMessage.setReplyCount(replyCounts.get(chatMessage.getId()));
+        }
+        return latest;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<String> getLatestIds(int limit) {
+        List<String> ids = new ArrayList<>();
+        for (int i = mMessages.size() - 1; i >= 0 && ids.size() < limit; i--) {
+            ids.add(mMessages.get(i).getId());
+        }
+        return ids;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<ChatMessage> getReplies(@NonNull String parentId, int limit) {
+        return latest(parentId, limit);
+    }
+
+    private List<ChatMessage> latest(String parentId, int limit) {
+        List<ChatMessage> latest = new ArrayList<>();
+        for (int i = mMessages.size() - 1; i >= 0 && latest.size() < limit; i--) {
+            ChatMessage chatMessage = mMessages.get(i);
+            String messageParentId = chatMessage.getParentId();
+            if (parentId == null ? messageParentId == null : parentId.equals(messageParentId)) {
+                latest.add(chatMessage);
+            }
+        }
+        Collections.reverse(latest);
+        return latest;
+    }
+
+    @Override
+    public synchronized int insertAll(@NonNull List<ChatMessage> chatMessages) {
+        int inserted = 0;
+        for (ChatMessage chatMessage : chatMessages) {
+            if (insert(chatMessage)) inserted++;
+        }
+        return inserted;
+    }
+
+    @Override
+    public synchronized void forEach(@NonNull Visitor visitor) throws IOException {
+        for (ChatMessage chatMessage : mMessages) {
+            if (!visitor.visit(chatMessage)) return;
+        }
+    }
+
+    @Override
+    public synchronized int count() {
+        return mMessages.size();
+    }
+
+    /**
+     * Two bytes for every character of text.
+     */
+    @Override
+    public synchronized long getSizeBytes() {
+        long bytes = 0;
+        for (ChatMessage chatMessage : mMessages) {
+            bytes += 2 * (chatMessage.getId().length() + length(chatMessage.getUsername())
+                    + length(chatMessage.getMessage()));
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized int deleteOldest(long createdBefore, int limit) {
+        int size = mMessages.size();
+        int deleted = 0;
+        while (deleted < Math.min(limit, size) && mCreatedAt[deleted] < createdBefore) {
+            mIds.remove(mMessages.get(deleted).getId());
+            deleted++;
+        }
+
+        mMessages.subList(0, deleted).clear();
+        System.arraycopy(mCreatedAt, deleted, mCreatedAt, 0, size - deleted);
+        return deleted;
+    }
+
+    @Override
+    public void reclaimSpace() {
+    }
+
+    private int indexOf(String id) {
+        if (!mIds.contains(id)) return -1;
+
+        for (int i = mMessages.size() - 1; i >= 0; i--) {
+            if (mMessages.get(i).getId().equals(id)) return i;
+        }
+        return -1;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+}
@@ -0,0 +1,125 @@
+package com.mayurrokade.chatapp.data.source.local;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalDataSourceTest {
+
+    private LocalDataSource mLocalDataSource;
+
+    @Before
+    public void setUp() {
+        LocalDataSource.destroyInstance();
+        mLocalDataSource = LocalDataSource.getInstance(
+                new InMemoryMessageStore(), Schedulers.trampoline(),
+                Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() {
+        LocalDataSource.destroyInstance();
+    }
+
+    @Test
+    public void getMessages_emitsAgainWhenMessageSaved() {
+        TestSubscriber<List<ChatMessage>> subscriber = mLocalDataSource.getMessages(10).test();
+        subscriber.assertValueCount(1);
+        assertTrue(subscriber.values().get(0).isEmpty());
+
+        ChatMessage chatMessage = new ChatMessage("user", "hello", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        mLocalDataSource.saveMessage(chatMessage);
+
+        subscriber.assertValueCount(2);
+        assertEquals(chatMessage.getId(), subscriber.values().get(1).get(0).getId());
+    }
+
+    @Test
+    public void getMessages_returnsLatestMessagesOldestFirst() {
+        for (int i = 0; i < 20; i++) {
+            mLocalDataSource.saveMessage(
+                    new ChatMessage("user", "message " + i, ChatMessage.TYPE_MESSAGE_RECEIVED));
+        }
+
+        List<ChatMessage> chatMessages = mLocalDataSource.getMessages(5).blockingFirst();
+
+        assertEquals(5, chatMessages.size());
+        assertEquals("message 15", chatMessages.get(0).getMessage());
+        assertEquals("message 19", chatMessages.get(4).getMessage());
+    }
+
+    @Test
+    public void saveMessage_withKnownId_doesNotEmit() {
+        ChatMessage chatMessage = new ChatMessage("user", "hello", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        mLocalDataSource.saveMessage(chatMessage);
+
+        TestSubscriber<List<ChatMessage>> subscriber = mLocalDataSource.getMessages(10).test();
+        mLocalDataSource.saveMessage(chatMessage);
+
+        subscriber.assertValueCount(1);
+        assertTrue(mLocalDataSource.hasMessage(chatMessage.getId()));
+    }
+
+    @Test
+    public void getMessages_emitsAgainWhenMessageUpdated() {
+        ChatMessage chatMessage = new ChatMessage("user", "hello", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        mLocalDataSource.saveMessage(chatMessage);
+
+        TestSubscriber<List<ChatMessage>> subscriber = mLocalDataSource.getMessages(10).test();
+        ChatMessage edited = chatMessage.copy();
+        edited.setMessage("hello again");
+        edited.setEdited(true);
+        mLocalDataSource.updateMessage(edited);
+
+        subscriber.assertValueCount(2);
+        assertEquals("hello again", subscriber.values().get(1).get(0).getMessage());
+        assertEquals("hello", subscriber.values().get(0).get(0).getMessage());
+    }
+
+    @Test
+    public void getMessages_collapsesRepliesIntoTheirThread() {
+        ChatMessage parent = new ChatMessage("user", "question", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        mLocalDataSource.saveMessage(parent);
+        mLocalDataSource.saveMessage(reply(parent, "answer 1"));
+        mLocalDataSource.saveMessage(reply(parent, "answer 2"));
+
+        List<ChatMessage> chatMessages = mLocalDataSource.getMessages(10).blockingFirst();
+
+        assertEquals(1, chatMessages.size());
+        assertEquals(parent.getId(), chatMessages.get(0).getId());
+        assertEquals(2, chatMessages.get(0).getReplyCount());
+    }
+
+    @Test
+    public void getReplies_emitsAgainWhenReplySaved() {
+        ChatMessage parent = new ChatMessage("user", "question", ChatMessage.TYPE_MESSAGE_RECEIVED);
+        mLocalDataSource.saveMessage(parent);
+        mLocalDataSource.saveMessage(new ChatMessage("user", "other", ChatMessage.TYPE_MESSAGE_RECEIVED));
+
+        TestSubscriber<List<ChatMessage>> subscriber =
+                mLocalDataSource.getReplies(parent.getId(), 10).test();
+        assertTrue(subscriber.values().get(0).isEmpty());
+
+        mLocalDataSource.saveMessage(reply(parent, "answer"));
+
+        subscriber.assertValueCount(2);
+        assertEquals(1, subscriber.values().get(1).size());
+        assertEquals("answer", subscriber.values().get(1).get(0).getMessage());
+    }
+
+    private static ChatMessage reply(ChatMessage parent, String message) {
+        ChatMessage reply = new ChatMessage("user", message, ChatMessage.TYPE_MESSAGE_RECEIVED);
+        reply.setParentId(parent.getId());
+        return reply;
+    }
+}
@@ -0,0 +1,272 @@
+package com.mayurrokade.chatapp.data.source.local;
+
+import android.support.annotation.NonNull;
+
+import com.mayurrokade.chatapp.data.Attachment;
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageArchiveTest {
+
+    // Enough to show neither direction holds the history in memory
+    private static final int LARGE_HISTORY = 250000;
+
+    @Test
+    public void exportThenImport_gzipped_keepsMessages() throws Exception {
+        InMemoryMessageStore source = new InMemoryMessageStore();
+        ChatMessage text = new ChatMessage("user", "hello\nworld", ChatMessage.TYPE_MESSAGE_SENT);
+        text.setEdited(true);
+        ChatMessage photo = new ChatMessage("friend", null, ChatMessage.TYPE_MESSAGE_RECEIVED);
+        photo.setAttachment(new Attachment("abc123", "image/jpeg", 2048));
+        source.insert(text);
+        source.insert(photo);
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        new MessageArchive(source, Schedulers.trampoline())
+                .export(archive, true)
+                .test()
+                .assertResult(2L);
+
+        InMemoryMessageStore target = new InMemoryMessageStore();
+        new MessageArchive(target, Schedulers.trampoline())
+                .importFrom(new ByteArrayInputStream(archive.toByteArray()))
+                .test()
+                .assertResult(2L);
+
+        List<ChatMessage> imported = target.getLatest(10);
+        assertEquals(text.getId(), imported.get(0).getId());
+        assertEquals("hello\nworld", imported.get(0).getMessage());
+        assertEquals(ChatMessage.TYPE_MESSAGE_SENT, imported.get(0).getType());
+        assertTrue(imported.get(0).isEdited());
+        assertNull(imported.get(1).getMessage());
+        assertEquals("abc123", imported.get(1).getAttachment().getContentHash());
+        assertEquals(2048, imported.get(1).getAttachment().getSize());
+    }
+
+    @Test
+    public void importFrom_largeArchive_insertsInBatches() {
+        CountingStore store = new CountingStore();
+
+        TestSubscriber<Long> subscriber = new MessageArchive(store, Schedulers.trampoline())
+                .importFrom(new GeneratedArchive(LARGE_HISTORY))
+                .test();
+
+        subscriber.assertComplete();
+        assertEquals(LARGE_HISTORY, store.mInserted);
+        assertEquals(MessageArchive.BATCH_SIZE, store.mLargestBatch);
+        assertEquals(LARGE_HISTORY / MessageArchive.BATCH_SIZE, store.mTransactions);
+        assertEquals(Long.valueOf(LARGE_HISTORY),
+                subscriber.values().get(subscriber.valueCount() - 1));
+    }
+
+    @Test
+    public void importFrom_insertsEachBatchAsItsOwnWrite() {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        final Scheduler writeScheduler = Schedulers.from(writer);
+        final List<String> writes = Collections.synchronizedList(new ArrayList<String>());
+
+        CountingStore store = new CountingStore() {
+            @Override
+            public int insertAll(@NonNull List<ChatMessage> chatMessages) {
+                writes.add("batch");
+                if (mTransactions == 0) {
+                    // A save queued while the first batch is inserted
+                    writeScheduler.scheduleDirect(new Runnable() {
+                        @Override
+                        public void run() {
+                            writes.add("save");
+                        }
+                    });
+                }
+                return super.insertAll(chatMessages);
+            }
+        };
+
+        try {
+            new MessageArchive(store, writeScheduler)
+                    .importFrom(new GeneratedArchive(3 * MessageArchive.BATCH_SIZE))
+                    .test()
+                    .assertComplete();
+        } finally {
+            writer.shutdown();
+        }
+
+        assertEquals(3, store.mTransactions);
+        assertEquals("save", writes.get(1));
+    }
+
+    @Test
+    public void export_largeHistory_streamsEveryMessage() {
+        CountingOutputStream out = new CountingOutputStream();
+
+        new MessageArchive(new CountingStore(), Schedulers.trampoline())
+                .export(out, false)
+                .test()
+                .assertComplete();
+
+        assertEquals(LARGE_HISTORY, out.mLines);
+        assertTrue(out.mClosed);
+    }
+
+    @Test
+    public void importFrom_malformedLine_failsWithLineNumber() {
+        String archive = "{\"id\":\"1\",\"username\":\"user\",\"message\":\"hi\",\"type\":529}\n"
+                + "not json\n";
+
+        new MessageArchive(new InMemoryMessageStore(), Schedulers.trampoline())
+                .importFrom(new ByteArrayInputStream(archive.getBytes()))
+                .test()
+                .assertError(new Predicate<Throwable>() {
+                    @Override
+                    public boolean test(Throwable throwable) {
+                        return throwable instanceof IOException
+                                && throwable.getMessage().startsWith("Line 2:");
+                    }
+                });
+    }
+
+    /**
+     * Keeps nothing but counts, and visits a generated history.
+     */
+    private static class CountingStore implements MessageStore {
+        int mInserted;
+        int mLargestBatch;
+        int mTransactions;
+
+        @Override
+        public boolean insert(@NonNull ChatMessage chatMessage) {
+            mInserted++;
+            return true;
+        }
+
+        @Override
+        public boolean contains(@NonNull String id) {
+            return false;
+        }
+
+        @Override
+        public ChatMessage get(@NonNull String id) {
+            return null;
+        }
+
+        @Override
+        public boolean update(@NonNull ChatMessage chatMessage) {
+            return false;
+        }
+
+        @NonNull
+        @Override
+        public List<ChatMessage> getLatest(int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> getLatestIds(int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ChatMessage> getReplies(String parentId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int insertAll(@NonNull List<ChatMessage> chatMessages) {
+            mInserted += chatMessages.size();
+            mLargestBatch = Math.max(mLargestBatch, chatMessages.size());
+            mTransactions++;
+            return chatMessages.size();
+        }
+
+        @Override
+        public void forEach(@NonNull Visitor visitor) throws IOException {
+            for (int i = 0; i < LARGE_HISTORY; i++) {
+                ChatMessage chatMessage = new ChatMessage(
+                        String.valueOf(i), "user", "message " + i, ChatMessage.TYPE_MESSAGE_RECEIVED);
+                if (!visitor.visit(chatMessage)) return;
+            }
+        }
+
+        @Override
+        public int count() {
+            return LARGE_HISTORY;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            return 0;
+        }
+
+        @Override
+        public int deleteOldest(long createdBefore, int limit) {
+            return 0;
+        }
+
+        @Override
+        public void reclaimSpace() {
+        }
+    }
+
+    /**
+     * Archive made up line by line as it's read.
+     */
+    private static class GeneratedArchive extends InputStream {
+        private final int mLines;
+        private int mLine;
+        private byte[] mBuffer = new byte[0];
+        private int mPosition;
+
+        GeneratedArchive(int lines) {
+            mLines = lines;
+        }
+
+        @Override
+        public int read() {
+            if (mPosition == mBuffer.length) {
+                if (mLine == mLines) return -1;
+                mBuffer = ("{\"id\":\"" + mLine + "\",\"username\":\"user\",\"message\":\"message "
+                        + mLine + "\",\"type\":529}\n").getBytes();
+                mPosition = 0;
+                mLine++;
+            }
+
+            return mBuffer[mPosition++];
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        int mLines;
+        boolean mClosed;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') mLines++;
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mayurrokade.chatapp.data.source.local;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares loading 10k messages from plaintext and encrypted payloads,
+ * and checks that decrypting the first page doesn't depend on the
+ * size of the history.
+ */
+public class MessageCodecBenchmarkTest {
+
+    private static final int MESSAGES = 10000;
+    private static final int PAGE_SIZE = 50;
+    private static final int ROUNDS = 5;
+
+    private MessageCodec mPlainCodec;
+    private MessageCodec mEncryptedCodec;
+    private ChatMessage[] mMessages;
+
+    @Before
+    public void setUp() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+
+        mPlainCodec = new PlainMessageCodec();
+        mEncryptedCodec = new EncryptedMessageCodec(mPlainCodec, new SecretKeySpec(key, "AES"));
+
+        mMessages = new ChatMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            mMessages[i] = new ChatMessage("user" + (i % 16),
+                    "message " + i + " with some more text to make it a realistic length",
+                    ChatMessage.TYPE_MESSAGE_RECEIVED);
+        }
+    }
+
+    @Test
+    public void encryptedPayload_roundTrips() throws Exception {
+        ChatMessage chatMessage = mMessages[0];
+        byte[] payload = mEncryptedCodec.encode(chatMessage);
+        ChatMessage decoded = mEncryptedCodec.decode(
+                chatMessage.getId(), chatMessage.getType(), payload);
+
+        assertEquals(chatMessage.getUsername(), decoded.getUsername());
+        assertEquals(chatMessage.getMessage(), decoded.getMessage());
+    }
+
+    @Test
+    public void encryptedPayload_isBoundToItsRow() throws Exception {
+        byte[] payload = mEncryptedCodec.encode(mMessages[0]);
+
+        try {
+            mEncryptedCodec.decode(mMessages[1].getId(), ChatMessage.TYPE_MESSAGE_RECEIVED, payload);
+            fail("Payload decrypted under another message id");
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void loadTimes_encryptedVersusPlaintext() throws Exception {
+        byte[][] plain = encodeAll(mPlainCodec);
+        byte[][] encrypted = encodeAll(mEncryptedCodec);
+
+        long plainNanos = Long.MAX_VALUE;
+        long encryptedNanos = Long.MAX_VALUE;
+        long encryptedPageNanos = Long.MAX_VALUE;
+
+        // Best of a few rounds, the first ones include JIT warm-up
+        for (int round = 0; round < ROUNDS; round++) {
+            plainNanos = Math.min(plainNanos, decode(mPlainCodec, plain, MESSAGES));
+            encryptedNanos = Math.min(encryptedNanos, decode(mEncryptedCodec, encrypted, MESSAGES));
+            encryptedPageNanos = Math.min(encryptedPageNanos,
+                    decode(mEncryptedCodec, encrypted, PAGE_SIZE));
+        }
+
+        System.out.println(String.format(
+                "Load %d messages: plaintext %.1fms, encrypted %.1fms; first page encrypted %.2fms",
+                MESSAGES, plainNanos / 1e6, encryptedNanos / 1e6, encryptedPageNanos / 1e6));
+
+        // Only the displayed page is decrypted on a cold start, which
+        // must cost less than reading the whole history in plaintext
+        assertTrue(encryptedPageNanos < plainNanos);
+    }
+
+    private byte[][] encodeAll(MessageCodec codec) throws Exception {
+        byte[][] payloads = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            payloads[i] = codec.encode(mMessages[i]);
+        }
+
+        return payloads;
+    }
+
+    private long decode(MessageCodec codec, byte[][] payloads, int count) throws Exception {
+        long start = System.nanoTime();
+
+        // The most recent messages, like the store's queries
+        for (int i = MESSAGES - count; i < MESSAGES; i++) {
+            ChatMessage chatMessage = codec.decode(
+                    mMessages[i].getId(), ChatMessage.TYPE_MESSAGE_RECEIVED, payloads[i]);
+            if (chatMessage.getMessage() == null) fail();
+        }
+
+        return System.nanoTime() - start;
+    }
+}
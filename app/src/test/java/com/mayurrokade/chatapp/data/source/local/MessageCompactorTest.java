@@ -0,0 +1,100 @@
+package com.mayurrokade.chatapp.data.source.local;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageCompactorTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final int MESSAGES = 1000;
+
+    private InMemoryMessageStore mMessageStore;
+    private StoreMetrics mMetrics;
+    private MessageCompactor mCompactor;
+
+    @Before
+    public void setUp() {
+        mMessageStore = new InMemoryMessageStore();
+        mMetrics = new StoreMetrics();
+        mCompactor = new MessageCompactor(mMessageStore, mMetrics);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            mMessageStore.insert(
+                    new ChatMessage("user", "message " + i, ChatMessage.TYPE_MESSAGE_RECEIVED));
+        }
+    }
+
+    @Test
+    public void compact_withinPolicy_deletesNothing() {
+        int deleted = mCompactor.compact(RetentionPolicy.DEFAULT, System.currentTimeMillis());
+
+        assertEquals(0, deleted);
+        assertEquals(MESSAGES, mMetrics.getMessageCount());
+        assertEquals(mMessageStore.getSizeBytes(), mMetrics.getSizeBytes());
+        assertEquals(1, mMetrics.getCompactionCount());
+    }
+
+    @Test
+    public void compact_deletesMessagesPastMaxAge_inBatches() {
+        RetentionPolicy policy = new RetentionPolicy(DAY, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+        int deleted = mCompactor.compact(policy, System.currentTimeMillis() + 2 * DAY);
+
+        assertTrue(MESSAGES > MessageCompactor.BATCH_SIZE);
+        assertEquals(MESSAGES, deleted);
+        assertEquals(0, mMessageStore.count());
+        assertEquals(MESSAGES, mMetrics.getDeletedMessages());
+    }
+
+    @Test
+    public void compact_keepsNewestMessagesWithinMaxCount() {
+        RetentionPolicy policy = new RetentionPolicy(DAY, 300, Long.MAX_VALUE);
+
+        int deleted = mCompactor.compact(policy, System.currentTimeMillis());
+
+        List<ChatMessage> kept = mMessageStore.getLatest(MESSAGES);
+        assertEquals(700, deleted);
+        assertEquals(300, kept.size());
+        assertEquals("message 700", kept.get(0).getMessage());
+    }
+
+    @Test
+    public void compact_deletesOldestMessagesUntilWithinMaxBytes() {
+        long maxBytes = mMessageStore.getSizeBytes() / 2;
+        RetentionPolicy policy = new RetentionPolicy(DAY, Integer.MAX_VALUE, maxBytes);
+
+        mCompactor.compact(policy, System.currentTimeMillis());
+
+        List<ChatMessage> kept = mMessageStore.getLatest(MESSAGES);
+        assertTrue(mMessageStore.getSizeBytes() <= maxBytes);
+        assertEquals("message 999", kept.get(kept.size() - 1).getMessage());
+        assertEquals(mMessageStore.getSizeBytes(), mMetrics.getSizeBytes());
+    }
+
+    @Test
+    public void runBatch_deletesOneBatchAtATime_soSavesCanRunBetween() {
+        RetentionPolicy policy = new RetentionPolicy(DAY, Integer.MAX_VALUE, Long.MAX_VALUE);
+        MessageCompactor.Compaction compaction =
+                mCompactor.start(policy, System.currentTimeMillis() + 2 * DAY);
+
+        assertTrue(compaction.runBatch());
+        assertEquals(MessageCompactor.BATCH_SIZE, compaction.getDeleted());
+        assertEquals(MESSAGES - MessageCompactor.BATCH_SIZE, mMessageStore.count());
+
+        int batches = 1;
+        while (compaction.runBatch()) batches++;
+
+        assertEquals((MESSAGES + MessageCompactor.BATCH_SIZE - 1) / MessageCompactor.BATCH_SIZE,
+                batches);
+        assertEquals(MESSAGES, compaction.getDeleted());
+        assertEquals(1, mMetrics.getCompactionCount());
+    }
+}
@@ -0,0 +1,129 @@
+package com.mayurrokade.chatapp.data.source.remote;
+
+import com.mayurrokade.chatapp.data.ChatMessage;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares the steady state throughput of messages going through the
+ * socket path in plaintext and end-to-end encrypted.
+ */
+public class EndToEndCipherBenchmarkTest {
+
+    private static final int MESSAGES = 20000;
+    private static final int PEERS = 16;
+    private static final int ROUNDS = 5;
+
+    // Encryption adds an AES-GCM pass and hex on each side. A few
+    // microseconds per message is invisible next to the network and
+    // the database, the budget catches regressions like deriving keys
+    // or stretching the passphrase per message, which cost milliseconds
+    private static final double MAX_OVERHEAD_MICROS = 25;
+
+    private static EndToEndCipher sSender;
+    private static EndToEndCipher sReceiver;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        // Stretching the passphrase is the slow part, done once per cipher
+        sSender = new EndToEndCipher("correct horse battery staple");
+        sReceiver = new EndToEndCipher("correct horse battery staple");
+    }
+
+    @Test
+    public void peerWithSamePassphrase_decrypts() throws Exception {
+        String encrypted = sSender.encrypt("alice", "hello");
+
+        assertTrue(EndToEndCipher.isEncrypted(encrypted));
+        assertEquals("hello", sReceiver.decrypt("alice", encrypted));
+    }
+
+    @Test
+    public void peerWithOtherPassphrase_cannotDecrypt() throws Exception {
+        EndToEndCipher other = new EndToEndCipher("another passphrase");
+
+        try {
+            other.decrypt("alice", sSender.encrypt("alice", "hello"));
+            fail("Decrypted with the wrong passphrase");
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void spoofedUsername_cannotDecrypt() throws Exception {
+        try {
+            sReceiver.decrypt("mallory", sSender.encrypt("alice", "hello"));
+            fail("Decrypted under another username");
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void throughput_staysCloseToPlaintext() throws Exception {
+        String[] usernames = new String[PEERS];
+        for (int i = 0; i < PEERS; i++) {
+            usernames[i] = "user" + i;
+        }
+
+        long plainNanos = Long.MAX_VALUE;
+        long encryptedNanos = Long.MAX_VALUE;
+
+        // Best of a few rounds, the first ones include JIT warm-up
+        for (int round = 0; round < ROUNDS; round++) {
+            plainNanos = Math.min(plainNanos, run(usernames, null, null));
+            encryptedNanos = Math.min(encryptedNanos, run(usernames, sSender, sReceiver));
+        }
+
+        double overheadMicros = (encryptedNanos - plainNanos) / 1e3 / MESSAGES;
+        System.out.println(String.format(
+                "%d messages: plaintext %.1fms, encrypted %.1fms (+%.1fus per message)",
+                MESSAGES, plainNanos / 1e6, encryptedNanos / 1e6, overheadMicros));
+
+        // Session keys are derived once per sender, not per message
+        assertTrue(sReceiver.getDerivedKeyCount() <= PEERS + 2);
+        assertTrue("Encryption added " + overheadMicros + "us per message",
+                overheadMicros <= MAX_OVERHEAD_MICROS);
+    }
+
+    /**
+     * Sends each message through the steps the app runs for it: the text
+     * is put in a JSON event and serialized for the wire, then parsed on
+     * the receiving side into a {@link ChatMessage}.
+     */
+    private long run(String[] usernames, EndToEndCipher sender, EndToEndCipher receiver)
+            throws Exception {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < MESSAGES; i++) {
+            String username = usernames[i % PEERS];
+            String text = "message " + i + " with some more text to make it a realistic length";
+
+            // Every peer sends with its own session, the test sender
+            // stands in for all of them
+            String sent = sender != null ? sender.encrypt(username, text) : text;
+            String wire = new JSONObject()
+                    .put("username", username)
+                    .put("message", sent)
+                    .toString();
+
+            JSONObject event = new JSONObject(wire);
+            if (receiver != null) {
+                event.put("message", receiver.decrypt(
+                        event.getString("username"), event.getString("message")));
+            }
+
+            ChatMessage chatMessage = ChatMessage.fromJson(event, ChatMessage.TYPE_MESSAGE_RECEIVED);
+            if (chatMessage.getMessage().length() != text.length()) fail();
+        }
+
+        return System.nanoTime() - start;
+    }
+}
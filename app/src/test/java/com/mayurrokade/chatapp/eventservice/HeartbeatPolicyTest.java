@@ -0,0 +1,92 @@
+package com.mayurrokade.chatapp.eventservice;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HeartbeatPolicyTest {
+
+    private ConnectionMetrics mMetrics;
+    private HeartbeatPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mMetrics = new ConnectionMetrics();
+        mPolicy = new HeartbeatPolicy(mMetrics);
+    }
+
+    @Test
+    public void rtt_isSmoothedAndTracksJitter() {
+        for (int i = 0; i < 50; i++) {
+            mMetrics.onRttSample(100);
+        }
+        assertEquals(100, mMetrics.getSmoothedRttMillis());
+        assertTrue(mMetrics.getRttJitterMillis() <= 5);
+
+        // One slow round trip moves the estimate by an eighth
+        mMetrics.onRttSample(900);
+        assertEquals(200, mMetrics.getSmoothedRttMillis());
+        assertTrue(mMetrics.getRttJitterMillis() >= 200);
+    }
+
+    @Test
+    public void steadyLink_backsOffToMaxInterval() {
+        for (int i = 0; i < 20; i++) {
+            ack(100);
+        }
+
+        assertEquals(HeartbeatPolicy.MAX_INTERVAL_MILLIS, mPolicy.getIntervalMillis());
+        assertEquals(HeartbeatPolicy.MIN_TIMEOUT_MILLIS, mPolicy.getTimeoutMillis());
+    }
+
+    @Test
+    public void jitteryLink_staysAtMinInterval() {
+        for (int i = 0; i < 20; i++) {
+            ack(i % 2 == 0 ? 50 : 3000);
+        }
+
+        assertEquals(HeartbeatPolicy.MIN_INTERVAL_MILLIS, mPolicy.getIntervalMillis());
+        assertTrue(mPolicy.getTimeoutMillis() > HeartbeatPolicy.MIN_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void missedAcks_declareConnectionDead() {
+        for (int i = 0; i < 5; i++) {
+            ack(100);
+        }
+
+        assertFalse(mPolicy.onMissed());
+        assertEquals(0, mPolicy.getIntervalMillis());
+        assertTrue(mPolicy.onMissed());
+    }
+
+    @Test
+    public void serverWithoutHeartbeats_isNeverDeclaredDead() {
+        for (int i = 0; i < 10; i++) {
+            assertFalse(mPolicy.onMissed());
+        }
+    }
+
+    @Test
+    public void connectTimeout_followsRtt() {
+        assertEquals(10000, mPolicy.getConnectTimeoutMillis(10000));
+
+        for (int i = 0; i < 20; i++) {
+            mMetrics.onRttSample(100);
+        }
+        assertEquals(HeartbeatPolicy.MIN_CONNECT_TIMEOUT_MILLIS, mPolicy.getConnectTimeoutMillis(10000));
+
+        for (int i = 0; i < 50; i++) {
+            mMetrics.onRttSample(i % 2 == 0 ? 500 : 4000);
+        }
+        assertTrue(mPolicy.getConnectTimeoutMillis(10000) > 10000);
+    }
+
+    private void ack(long rttMillis) {
+        mMetrics.onRttSample(rttMillis);
+        mPolicy.onAck(rttMillis);
+    }
+}
@@ -0,0 +1,100 @@
+package com.mayurrokade.chatapp.eventservice;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundQueueTest {
+
+    private OutboundQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue = new OutboundQueue();
+    }
+
+    @Test
+    public void poll_sendsMessagesBeforePresenceBeforeTyping() {
+        mQueue.offerTyping(true, packet("typing"));
+        mQueue.offer(OutboundQueue.LANE_PRESENCE, packet("presence"));
+        mQueue.offer(OutboundQueue.LANE_MESSAGE, packet("message 1"));
+        mQueue.offer(OutboundQueue.LANE_MESSAGE, packet("message 2"));
+
+        assertEquals("message 1", mQueue.poll().event);
+        assertEquals("message 2", mQueue.poll().event);
+        assertEquals("presence", mQueue.poll().event);
+        assertEquals("typing", mQueue.poll().event);
+        assertNull(mQueue.poll());
+    }
+
+    @Test
+    public void typingThenStopTyping_cancelOut() {
+        mQueue.offerTyping(true, packet("typing"));
+        mQueue.offerTyping(false, packet("stop typing"));
+
+        assertTrue(mQueue.isEmpty());
+    }
+
+    @Test
+    public void typingChanges_collapseToLatestState() {
+        mQueue.offerTyping(true, packet("typing"));
+        assertEquals("typing", mQueue.poll().event);
+
+        mQueue.offerTyping(false, packet("stop typing"));
+        mQueue.offerTyping(true, packet("typing"));
+        mQueue.offerTyping(false, packet("stop typing"));
+
+        assertEquals("stop typing", mQueue.poll().event);
+        assertNull(mQueue.poll());
+    }
+
+    @Test
+    public void disconnect_dropsTypingButKeepsMessages() {
+        mQueue.offerTyping(true, packet("typing"));
+        mQueue.offer(OutboundQueue.LANE_MESSAGE, packet("message"));
+
+        mQueue.onDisconnected();
+
+        assertEquals("message", mQueue.poll().event);
+        assertNull(mQueue.poll());
+    }
+
+    /**
+     * A link that transmits one packet per tick while typing events
+     * arrive every tick. Messages never wait behind typing events.
+     */
+    @Test
+    public void congestedLink_messageLatencyStaysFlat() {
+        long[] offeredAt = new long[100];
+        int sent = 0;
+        long maxLatency = 0;
+
+        for (int tick = 0; tick < 10000; tick++) {
+            mQueue.offerTyping(tick % 2 == 0, packet("typing"));
+            mQueue.offerTyping(tick % 3 != 0, packet("typing"));
+
+            if (tick % 100 == 0) {
+                int id = tick / 100;
+                offeredAt[id] = tick;
+                mQueue.offer(OutboundQueue.LANE_MESSAGE, packet(String.valueOf(id)));
+            }
+
+            OutboundQueue.Packet packet = mQueue.poll();
+            if (packet != null && !packet.event.equals("typing")) {
+                int id = Integer.parseInt(packet.event);
+                maxLatency = Math.max(maxLatency, tick - offeredAt[id]);
+                sent++;
+            }
+        }
+
+        assertEquals(100, sent);
+        assertEquals(0, maxLatency);
+    }
+
+    private static OutboundQueue.Packet packet(String event) {
+        return new OutboundQueue.Packet(event, new Object[0], null);
+    }
+}
@@ -0,0 +1,196 @@
+package com.mayurrokade.chatapp.eventservice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import okhttp3.ConnectionSpec;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.TlsVersion;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reconnects through the shared client to a local TLS server. The server
+ * certificate is self-signed, so the client is derived from the shared
+ * one with {@link OkHttpClient#newBuilder()}, which keeps its connection
+ * pool and timeouts and only swaps the trust.
+ */
+public class SocketConfigTest {
+
+    private static final String KEY_STORE = "localhost.p12";
+    private static final char[] PASSWORD = "password".toCharArray();
+    private static final int RECONNECTS = 3;
+
+    private MockWebServer mServer;
+    private CountingSocketFactory mSocketFactory;
+    private OkHttpClient mHttpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = getClass().getClassLoader().getResourceAsStream(KEY_STORE);
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+
+        KeyManagerFactory keyManagers =
+                KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        TrustManagerFactory trustManagers =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        X509TrustManager trustManager = (X509TrustManager) trustManagers.getTrustManagers()[0];
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new X509TrustManager[]{trustManager}, null);
+
+        mServer = new MockWebServer();
+        mServer.useHttps(serverContext.getSocketFactory(), false);
+        mServer.start();
+
+        mSocketFactory = new CountingSocketFactory(clientContext.getSocketFactory());
+        // TLS 1.2 keeps the session id across a resumption, 1.3 issues a new one
+        ConnectionSpec tls12 = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
+                .tlsVersions(TlsVersion.TLS_1_2)
+                .build();
+        mHttpClient = SocketConfig.getHttpClient().newBuilder()
+                .sslSocketFactory(mSocketFactory, trustManager)
+                .connectionSpecs(Collections.singletonList(tls12))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mHttpClient.connectionPool().evictAll();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void reconnects_reuseThePooledConnection() throws Exception {
+        for (int i = 0; i < RECONNECTS; i++) {
+            mServer.enqueue(new MockResponse().setBody("ok"));
+        }
+
+        for (int i = 0; i < RECONNECTS; i++) {
+            poll();
+        }
+
+        assertEquals(RECONNECTS, mServer.getRequestCount());
+        for (int i = 0; i < RECONNECTS; i++) {
+            assertEquals(i, mServer.takeRequest().getSequenceNumber());
+        }
+        assertEquals(1, mSocketFactory.mSockets.size());
+        assertEquals(1, mHttpClient.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void reconnects_afterTheConnectionDrops_resumeTheTlsSession() throws Exception {
+        for (int i = 0; i < RECONNECTS; i++) {
+            mServer.enqueue(new MockResponse().setBody("ok"));
+        }
+
+        for (int i = 0; i < RECONNECTS; i++) {
+            poll();
+            // Like a websocket closing, the socket is not pooled anymore
+            mHttpClient.connectionPool().evictAll();
+        }
+
+        assertEquals(RECONNECTS, mServer.getRequestCount());
+        for (int i = 0; i < RECONNECTS; i++) {
+            assertEquals(0, mServer.takeRequest().getSequenceNumber());
+        }
+        assertEquals(RECONNECTS, mSocketFactory.mSockets.size());
+        byte[] sessionId = mSocketFactory.mSockets.get(0).getSession().getId();
+        for (SSLSocket socket : mSocketFactory.mSockets) {
+            assertArrayEquals(sessionId, socket.getSession().getId());
+        }
+    }
+
+    private void poll() throws IOException {
+        Request request = new Request.Builder().url(mServer.url("/socket.io/")).build();
+        Response response = mHttpClient.newCall(request).execute();
+        try {
+            assertEquals("ok", response.body().string());
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Keeps every TLS socket the client opens, one per handshake.
+     */
+    private static class CountingSocketFactory extends SSLSocketFactory {
+        final List<SSLSocket> mSockets = new ArrayList<>();
+        private final SSLSocketFactory mDelegate;
+
+        CountingSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+                throws IOException {
+            SSLSocket socket = (SSLSocket) mDelegate.createSocket(s, host, port, autoClose);
+            mSockets.add(socket);
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                   int localPort) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.mayurrokade.chatapp.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Reads the number of bytes allocated by the current thread, so tests can
+ * put a budget on the garbage produced by a hot path.
+ *
+ * The counter is a HotSpot extension. On a JVM without it
+ * {@link #isSupported()} returns false and tests should skip their
+ * allocation checks.
+ */
+public class Allocations {
+
+    // Budgets are compared with this much slack, so a JVM or library
+    // update that shifts a few bytes doesn't fail the build. A regression
+    // that adds an allocation per event still goes well past it.
+    private static final double TOLERANCE = 0.25;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final Method GET_THREAD_ALLOCATED_BYTES = findAllocatedBytesMethod();
+
+    private static Method findAllocatedBytesMethod() {
+        try {
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (!type.isInstance(THREAD_MX_BEAN)) return null;
+
+            type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class)
+                    .invoke(THREAD_MX_BEAN, true);
+            return type.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if this JVM counts the bytes allocated per thread
+     */
+    public static boolean isSupported() {
+        return GET_THREAD_ALLOCATED_BYTES != null;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far
+     */
+    public static long allocatedBytes() {
+        try {
+            return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(
+                    THREAD_MX_BEAN, Thread.currentThread().getId());
+        } catch (Exception e) {
+            throw new IllegalStateException("Allocation counting not supported", e);
+        }
+    }
+
+    /**
+     * @param bytes  bytes allocated
+     * @param budget bytes expected at most
+     * @return true if bytes is within budget, give or take the tolerance
+     */
+    public static boolean isWithinBudget(long bytes, long budget) {
+        return bytes <= budget + Math.max(1, (long) (budget * TOLERANCE));
+    }
+}
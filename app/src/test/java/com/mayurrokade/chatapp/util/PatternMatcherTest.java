@@ -0,0 +1,86 @@
+package com.mayurrokade.chatapp.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PatternMatcherTest {
+
+    private static final int TAG_A = 1;
+    private static final int TAG_B = 2;
+
+    @Test
+    public void match_findsOverlappingPatternsIgnoringCase() {
+        PatternMatcher matcher = new PatternMatcher.Builder()
+                .add("new york", TAG_A)
+                .add("york", TAG_B)
+                .build();
+
+        List<String> matches = match(matcher, "Flying to NEW YORK today");
+
+        assertEquals(2, matches.size());
+        assertEquals("1:10-18", matches.get(0));
+        assertEquals("2:14-18", matches.get(1));
+    }
+
+    @Test
+    public void match_onlyFindsWholeWords() {
+        PatternMatcher matcher = new PatternMatcher.Builder()
+                .add("bob", TAG_A)
+                .build();
+
+        List<String> matches = match(matcher, "bobby, @bob and bob2, Bob!");
+
+        assertEquals(2, matches.size());
+        assertEquals("1:8-11", matches.get(0));
+        assertEquals("1:22-25", matches.get(1));
+    }
+
+    @Test
+    public void match_followsFailLinksAfterPartialMatch() {
+        PatternMatcher matcher = new PatternMatcher.Builder()
+                .add("abcd", TAG_A)
+                .add("bc", TAG_B)
+                .add("c", TAG_A)
+                .build();
+
+        // "abc" fails on the space through its fail link to "bc"
+        List<String> matches = match(matcher, "abc bc c abcd");
+
+        assertEquals(3, matches.size());
+        assertEquals("2:4-6", matches.get(0));
+        assertEquals("1:7-8", matches.get(1));
+        assertEquals("1:9-13", matches.get(2));
+    }
+
+    @Test
+    public void remove_dropsOnlyThatPatternAndItsTags() {
+        PatternMatcher.Builder builder = new PatternMatcher.Builder()
+                .add("alice", TAG_A)
+                .add("alice", TAG_B)
+                .add("alicia", TAG_A);
+
+        PatternMatcher matcher = builder.remove("alice", TAG_A).build();
+        assertEquals("2:0-5", match(matcher, "alice alicia").get(0));
+        assertEquals("1:6-12", match(matcher, "alice alicia").get(1));
+
+        matcher = builder.remove("alice", TAG_B).remove("alicia", TAG_A).build();
+        assertTrue(matcher.isEmpty());
+        assertTrue(match(matcher, "alice alicia").isEmpty());
+    }
+
+    private static List<String> match(PatternMatcher matcher, String text) {
+        final List<String> matches = new ArrayList<>();
+        matcher.match(text, new PatternMatcher.OnMatchListener() {
+            @Override
+            public void onMatch(int tags, int start, int end) {
+                matches.add(tags + ":" + start + "-" + end);
+            }
+        });
+        return matches;
+    }
+}
@@ -0,0 +1,72 @@
+package com.mayurrokade.chatapp.util.schedulers;
+
+import android.support.annotation.NonNull;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.TestScheduler;
+
+/**
+ * Implementation of {@link BaseSchedulerProvider} backed by a single
+ * {@link TestScheduler}, so tests can advance virtual time and run
+ * queued work deterministically with {@link TestScheduler#triggerActions()}.
+ */
+public class TestSchedulerProvider implements BaseSchedulerProvider {
+
+    @NonNull
+    private final TestScheduler mScheduler;
+
+    public TestSchedulerProvider() {
+        this(new TestScheduler());
+    }
+
+    public TestSchedulerProvider(@NonNull TestScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    @NonNull
+    public TestScheduler getTestScheduler() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler computation() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler io() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler ui() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler eventLoop() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler diskWriter() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler decode() {
+        return mScheduler;
+    }
+
+    @NonNull
+    @Override
+    public Scheduler crypto() {
+        return mScheduler;
+    }
+}